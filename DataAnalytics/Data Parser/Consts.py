@@ -23,3 +23,6 @@ IMAGES_DATA_DIR = "./../../Networks_Assignment/Images_Saved_Data/"
 # File names
 ECHO_FILE_NAME = "echo_packets *"
 ERR_ECHO_FILE_NAME = "err_echo_packets *"
+
+# Binary columns exported next to the data files
+MANIFEST_EXT = ".json"
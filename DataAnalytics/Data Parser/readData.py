@@ -1,4 +1,8 @@
 import glob
+import gzip
+import json
+import os
+import re
 from collections import Counter
 from io import TextIOWrapper
 
@@ -9,13 +13,84 @@ from plotly.offline import iplot
 
 import Consts as Con
 
+# The segment number and the extensions of a data file e.g. "echo_packets 2021-01-01 10-00-00.0001.txt.gz"
+DATA_FILE_SUFFIX = re.compile(r'(\.\d{4,})?\.txt(\.gz)?$')
+
 
 def findFiles(path: str, name: str, ext: str):
-    files = []
-    for file_path in glob.glob(path + name + ext):
-        files.append(open(file_path, 'r'))
+    # Only the paths are returned. Open each one with openFile in a with statement so that it is closed
+    return sorted(glob.glob(path + name + ext) + glob.glob(path + name + ext + '.gz'))
+
+
+def openFile(file_path: str):
+    # Compressed files are concatenated gzip members that gzip reads as one text stream
+    if file_path.endswith('.gz'):
+        return gzip.open(file_path, 'rt')
+
+    return open(file_path, 'r')
+
+
+def readColumns(manifest_path: str, memory_map: bool = False):
+    """
+    Loads the binary columns exported next to a data file. Every column is loaded with one numpy call.
+
+    :param manifest_path: the path of the .json manifest
+    :param memory_map: if True the columns are memory mapped instead of read
+    :return: dictionary column name -> numpy array
+    """
+    with open(manifest_path, 'r') as manifest_file:
+        manifest = json.load(manifest_file)
+
+    directory = os.path.dirname(manifest_path)
+    columns = {}
+
+    for column in manifest['columns']:
+        column_path = os.path.join(directory, column['file'])
+        dtype = np.dtype(column['dtype'])
+
+        if manifest['rows'] == 0:
+            columns[column['name']] = np.empty(0, dtype=dtype)
+        elif memory_map:
+            columns[column['name']] = np.memmap(column_path, dtype=dtype, mode='r', shape=(manifest['rows'],))
+        else:
+            columns[column['name']] = np.fromfile(column_path, dtype=dtype, count=manifest['rows'])
+
+    return columns
+
+
+def dataBaseName(file_path: str):
+    # The same rule as ColumnarExport.getBaseName: the segment number of a soak run and the extensions are removed
+    return DATA_FILE_SUFFIX.sub('', file_path)
+
+
+def loadColumn(path: str, name: str, column: str, read_text):
+    """
+    Loads a column from every data file. The binary columns are used when a file has a manifest, otherwise the text
+    file is parsed with the read_text function. The segments of a soak run share one manifest and without it they are
+    parsed together as one file.
+
+    :return: list with a numpy array for every file
+    """
+    segments = {}
+
+    for file_path in findFiles(path, name, '.txt'):
+        segments.setdefault(dataBaseName(file_path), []).append(file_path)
+
+    data = []
+
+    for base, file_paths in segments.items():
+        if os.path.exists(base + Con.MANIFEST_EXT):
+            data.append(readColumns(base + Con.MANIFEST_EXT)[column])
+        else:
+            values = []
+
+            for file_path in file_paths:
+                with openFile(file_path) as file:
+                    values.extend(read_text(file))
+
+            data.append(np.array(values))
 
-    return files
+    return data
 
 
 def readEchoData(file: TextIOWrapper):
@@ -55,7 +130,8 @@ def readSessionCodes(file: TextIOWrapper):
             break
 
         else:
-            codes.append(line[0:5])
+            # All the modules write the codes in one line separated with spaces
+            codes.extend(code[0:5] for code in line.split())
 
     # print(codes)
     return codes
@@ -91,11 +167,10 @@ def plotBarGraph(data: dict):
 
 
 if __name__ == '__main__':
-    fs = findFiles(Con.ERR_ECHO_DATA_DIR, Con.ERR_ECHO_FILE_NAME, '.txt')
+    responses = loadColumn(Con.ERR_ECHO_DATA_DIR, Con.ERR_ECHO_FILE_NAME, 'response_time_ms', readEchoResponseTimes)
 
-    for f in fs:
-        response = readEchoResponseTimes(f)
-        data_dict = Counter(response)
+    for response in responses:
+        data_dict = Counter(response.tolist())
         print(data_dict)
         plotBarGraph(data_dict)
 
@@ -0,0 +1,34 @@
+package Benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <h1>BenchmarkRunner Class</h1>
+ * The main class of benchmarks.jar. Takes the normal JMH command line options and adds the GC profiler when no
+ * profiler is given, so every benchmark reports the bytes allocated per operation (gc.alloc.rate.norm) next to the
+ * time.
+ * <br>
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options] [benchmark regex]
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions command_line = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(command_line);
+
+        if (command_line.getProfilers().isEmpty())
+            options.addProfiler(GCProfiler.class);
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,58 @@
+package Benchmark;
+
+import Structure.Constants;
+import Structure.Transport;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h1>CannedTransport Class</h1>
+ * A {@link Structure.Transport} that answers the opening of the connection with a fixed banner and then reads -1. Used
+ * to create the {@link Structure.Connection} the modules need without a server.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class CannedTransport implements Transport {
+
+    /**
+     * A banner like the one of the server, ending with {@link Structure.Constants#SM_END}
+     */
+    public static final String BANNER = "Welcome to the Ithaki server.\r\nBenchmark connection." +
+            Constants.SM_END.getStr();
+
+    private final byte[] banner = BANNER.getBytes(StandardCharsets.US_ASCII);
+    private int position = 0;
+
+    @Override
+    public boolean setSpeed(int speed) {
+        return true;
+    }
+
+    @Override
+    public boolean setTimeout(int timeout) {
+        return true;
+    }
+
+    @Override
+    public boolean open(String mode) {
+        this.position = 0;
+        return true;
+    }
+
+    @Override
+    public int read() {
+        return this.position < this.banner.length ? this.banner[this.position++] & 0xFF : -1;
+    }
+
+    @Override
+    public boolean write(byte[] data) {
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        return true;
+    }
+}
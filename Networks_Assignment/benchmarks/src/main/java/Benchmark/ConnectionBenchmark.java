@@ -0,0 +1,67 @@
+package Benchmark;
+
+import Structure.Connection;
+import Structure.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>ConnectionBenchmark Class</h1>
+ * Benchmarks the end detection of the banner by {@link Structure.Connection#isMessageOver(String, String)}. The
+ * connection calls it for every byte with the whole message received so far, so the cost of the banner grows with the
+ * square of its length.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionBenchmark {
+
+    private final String pattern = Constants.SM_END.getStr();
+    private final String banner = CannedTransport.BANNER;
+    private Connection connection;
+
+    @Setup
+    public void setup() {
+        this.connection = new Connection(CannedTransport::new, "E0000", "M0000", "G0000", "P0000", "Q0000", "R0000",
+                80000, 1000);
+    }
+
+    /**
+     * One call with the complete banner
+     */
+    @Benchmark
+    public boolean isMessageOver() {
+        return this.connection.isMessageOver(this.banner, this.pattern);
+    }
+
+    /**
+     * The calls of a whole banner as they are made while the bytes arrive
+     */
+    @Benchmark
+    public void bannerByteByByte(Blackhole blackhole) {
+        StringBuilder packet = new StringBuilder();
+
+        for (int i = 0; i < this.banner.length(); i++) {
+            packet.append(this.banner.charAt(i));
+            blackhole.consume(this.connection.isMessageOver(packet.toString(), this.pattern));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package Echo;
+
+import Benchmark.CannedTransport;
+import Structure.Connection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>EchoBenchmark Class</h1>
+ * Benchmarks the work done for every echo packet: the end detection of {@link Echo.EchoPackets} and
+ * {@link Echo.EchoErrors} called for every byte as the packet arrives and the checksum of the packets with errors.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EchoBenchmark {
+
+    private static final String ECHO_PACKET = "PSTART 18-03-2021 12:20:44 37 PSTOP";
+    private static final String ERROR_PACKET = "PSTART 18-03-2021 12:20:44 37 <KtBvmyaUZUpWXJYb> 042 PSTOP";
+
+    private EchoPackets echoPackets;
+    private EchoErrors echoErrors;
+
+    @Setup
+    public void setup() {
+        Connection connection = new Connection(CannedTransport::new, "E0000", "M0000", "G0000", "P0000", "Q0000",
+                "R0000", 80000, 1000);
+
+        this.echoPackets = new EchoPackets(connection, 0);
+        this.echoErrors = new EchoErrors(connection, 0);
+    }
+
+    /**
+     * The end detection of a whole echo packet
+     */
+    @Benchmark
+    public void echoPacketByteByByte(Blackhole blackhole) {
+        StringBuilder packet = this.echoPackets.getPacket();
+
+        for (int i = 0; i < ECHO_PACKET.length(); i++) {
+            packet.append(ECHO_PACKET.charAt(i));
+            blackhole.consume(this.echoPackets.isTransmissionOver());
+        }
+
+        packet.setLength(0);
+    }
+
+    /**
+     * The end detection of a whole echo packet with errors
+     */
+    @Benchmark
+    public void errorPacketByteByByte(Blackhole blackhole) {
+        StringBuilder packet = this.echoErrors.getPacket();
+
+        for (int i = 0; i < ERROR_PACKET.length(); i++) {
+            packet.append(ERROR_PACKET.charAt(i));
+            blackhole.consume(this.echoErrors.isTransmissionOver());
+        }
+
+        packet.setLength(0);
+    }
+
+    @Benchmark
+    public boolean isCheckSumOk() {
+        return EchoErrors.isCheckSumOk(ERROR_PACKET);
+    }
+}
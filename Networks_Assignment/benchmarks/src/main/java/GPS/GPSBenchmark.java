@@ -0,0 +1,107 @@
+package GPS;
+
+import Benchmark.CannedTransport;
+import Structure.Connection;
+import Structure.Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>GPSBenchmark Class</h1>
+ * Benchmarks the parsing of the NMEA lines: the constructors of {@link GPS.gpsGPGGA}, {@link GPS.gpsGPGSA} and
+ * {@link GPS.gpsGPRMC}, {@link GPS.gpsGPGGA#getCoordinates()}, the conversion to a {@link GPS.GPSPoint} (that
+ * replaced the time difference calculations of the GPS module) and the end detection of {@link GPS.GPSPackets} called
+ * for every byte of a transmission, which also categorises every line.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GPSBenchmark {
+
+    private static final String GPGGA = "$GPGGA,045208.000,4037.6331,N,02257.5633,E,1,07,1.5,57.8,M,36.1,M,,0000*6C";
+    private static final String GPGSA = "$GPGSA,A,3,13,23,10,20,16,04,07,,,,,,2.5,1.5,2.0*37";
+    private static final String GPRMC = "$GPRMC,045208.000,A,4037.6331,N,02257.5633,E,0.07,309.50,180321,,,A*62";
+
+    /**
+     * The number of GPGGA lines of the transmission
+     */
+    private static final int TRANSMISSION_LINES = 20;
+
+    private gpsGPGGA gpgga;
+    private GPSPackets gpsPackets;
+    private String transmission;
+
+    @Setup
+    public void setup() {
+        this.gpgga = new gpsGPGGA(GPGGA);
+
+        Connection connection = new Connection(CannedTransport::new, "E0000", "M0000", "G0000", "P0000", "Q0000",
+                "R0000", 80000, 1000);
+        this.gpsPackets = new GPSPackets(connection);
+
+        StringBuilder transmission = new StringBuilder(Constants.GPS_TRANSMISSION_START.getStr());
+        for (int i = 0; i < TRANSMISSION_LINES; i++)
+            transmission.append(GPGGA).append(Constants.GPS_DATA_LINE_END.getStr());
+
+        this.transmission = transmission.append(Constants.GPS_TRANSMISSION_END.getStr()).toString();
+    }
+
+    @Benchmark
+    public gpsGPGGA parseGPGGA() {
+        return new gpsGPGGA(GPGGA);
+    }
+
+    @Benchmark
+    public gpsGPGSA parseGPGSA() {
+        return new gpsGPGSA(GPGSA);
+    }
+
+    @Benchmark
+    public gpsGPRMC parseGPRMC() {
+        return new gpsGPRMC(GPRMC);
+    }
+
+    @Benchmark
+    public String getCoordinates() {
+        return this.gpgga.getCoordinates();
+    }
+
+    @Benchmark
+    public GPSPoint pointFromGPGGA() {
+        return GPSPoint.fromGPGGA(this.gpgga, 18704);
+    }
+
+    /**
+     * The end detection and categorisation of a whole transmission
+     */
+    @Benchmark
+    public void transmissionByteByByte(Blackhole blackhole) {
+        StringBuilder line = this.gpsPackets.getGps_line();
+
+        for (int i = 0; i < this.transmission.length(); i++) {
+            line.append(this.transmission.charAt(i));
+            blackhole.consume(this.gpsPackets.isTransmissionOver());
+        }
+
+        line.setLength(0);
+        this.gpsPackets.clearData();
+    }
+}
@@ -0,0 +1,108 @@
+package Image;
+
+import Benchmark.CannedTransport;
+import Structure.Connection;
+import Structure.FileOutputSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>ImageBenchmark Class</h1>
+ * Benchmarks the handling of an image by {@link Image.ImagePackets}: every byte is added to the image list and checked
+ * for the end of the JPEG file, and the complete image is saved to a file through a {@link Structure.FileOutputSink}.
+ * The images are random bytes between the JPEG start and end markers.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageBenchmark {
+
+    /**
+     * The size of the image in bytes
+     */
+    @Param({"8192", "65536"})
+    public int size;
+
+    private byte[] image;
+    private ImagePackets imagePackets;
+    private File directory;
+    private String file_name;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        this.image = new byte[this.size];
+
+        // No 0xFF inside the image so that the end is found only at the end
+        for (int i = 0; i < this.size; i++)
+            this.image[i] = (byte) random.nextInt(255);
+
+        this.image[0] = (byte) 0xFF;
+        this.image[1] = (byte) 0xD8;
+        this.image[this.size - 2] = (byte) 0xFF;
+        this.image[this.size - 1] = (byte) 0xD9;
+
+        Connection connection = new Connection(CannedTransport::new, "E0000", "M0000", "G0000", "P0000", "Q0000",
+                "R0000", 80000, 1000);
+        connection.setOutputSink(new FileOutputSink());
+
+        this.imagePackets = new ImagePackets(connection, false);
+        this.directory = Files.createTempDirectory("image_benchmark").toFile();
+        this.file_name = new File(this.directory, "image.jpeg").getPath();
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(this.file_name).delete();
+        this.directory.delete();
+    }
+
+    /**
+     * Adds every byte of the image to the list and checks for the end after every byte
+     */
+    @Benchmark
+    public void accumulate(Blackhole blackhole) {
+        for (byte k : this.image) {
+            this.imagePackets.addToImageList(k);
+            blackhole.consume(this.imagePackets.isTransmissionOver());
+        }
+
+        this.imagePackets.clearImageList();
+    }
+
+    /**
+     * Adds the image to the list and saves it to a file
+     */
+    @Benchmark
+    public void accumulateAndSave() {
+        for (byte k : this.image)
+            this.imagePackets.addToImageList(k);
+
+        this.imagePackets.saveToFile(this.file_name);
+        this.imagePackets.clearImageList();
+    }
+}
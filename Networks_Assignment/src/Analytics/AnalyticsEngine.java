@@ -0,0 +1,269 @@
+package Analytics;
+
+import Structure.Constants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <h1>AnalyticsEngine Class</h1>
+ * Computes the aggregates of all the saved session files. The files are split between the workers of a fork join
+ * pool: every worker memory maps its files, scans the bytes into its own {@link Analytics.FileSummary} and the
+ * summaries are merged as the tasks join. Nothing is shared between the workers, so the scan scales with the number of
+ * cores for thousands of files.
+ * <br>
+ * Run it from the directory the data were saved (the working directory of the {@link UserApp.userApplication}). The
+ * reports are saved in {@link Structure.Constants#ANALYTICS_DIR}:
+ * <ul>
+ *     <li>echo_summary: {@link Analytics.EchoSummary} of the normal echo packets</li>
+ *     <li>err_echo_summary: {@link Analytics.EchoSummary} of the echo packets with errors, including the BER</li>
+ *     <li>gps_summary: {@link Analytics.GPSSummary} of the GPS data</li>
+ * </ul>
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class AnalyticsEngine {
+
+    /**
+     * The pool that scans the files
+     */
+    private final ForkJoinPool pool;
+
+
+    /**
+     * Constructor
+     *
+     * @param parallelism the number of workers
+     */
+    public AnalyticsEngine(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Scans the data saved by the user application and saves the reports. Optional arguments: the directory the data
+     * were saved (default the working directory) and the number of workers (default the number of cores).
+     *
+     * @param args program arguments
+     */
+    public static void main(String[] args) {
+        String directory = args.length > 0 ? args[0] : "";
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        if (!directory.isEmpty() && !directory.endsWith("/"))
+            directory += "/";
+
+        AnalyticsEngine engine = new AnalyticsEngine(parallelism);
+
+        try {
+            engine.analyse(directory + Constants.ECHO_DATA_DIR.getStr(), Constants.ECHO_FILE_NAME.getStr(),
+                    EchoSummary::new, directory + Constants.ANALYTICS_DIR.getStr(), "echo_summary ");
+
+            engine.analyse(directory + Constants.ERR_ECHO_DATA_DIR.getStr(), Constants.ERR_ECHO_FILE_NAME.getStr(),
+                    EchoSummary::new, directory + Constants.ANALYTICS_DIR.getStr(), "err_echo_summary ");
+
+            engine.analyse(directory + Constants.GPS_DATA_DIR.getStr(), Constants.GPS_FILE_NAME.getStr(),
+                    GPSSummary::new, directory + Constants.ANALYTICS_DIR.getStr(), "gps_summary ");
+        } finally {
+            engine.shutdown();
+        }
+    }
+
+    /**
+     * Scans all the files of a type and saves the report
+     *
+     * @param data_directory   the directory of the saved files
+     * @param prefix           the start of the names of the files
+     * @param factory          creates an empty summary
+     * @param report_directory the directory of the report
+     * @param report_name      the start of the name of the report
+     * @param <T>              the type of the summary
+     * @return the summary of all the files
+     */
+    public <T extends FileSummary<T>> T analyse(String data_directory, String prefix, Supplier<T> factory,
+                                                String report_directory, String report_name) {
+        List<File> files = findFiles(data_directory, prefix);
+
+        long start = System.nanoTime();
+        T summary = scan(files, factory);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(report_name.trim() + ": " + files.size() + " files in " + elapsed / 1000000 + " ms");
+
+        if (!files.isEmpty())
+            saveReport(createFileName(report_directory, report_name), summary, files.size(), elapsed);
+
+        return summary;
+    }
+
+    /**
+     * Scans files in parallel
+     *
+     * @param files   the files to scan
+     * @param factory creates an empty summary
+     * @param <T>     the type of the summary
+     * @return the merged summary of all the files
+     */
+    public <T extends FileSummary<T>> T scan(List<File> files, Supplier<T> factory) {
+        return this.pool.invoke(new ScanTask<>(files, 0, files.size(), factory));
+    }
+
+    /**
+     * Stops the workers of the pool
+     */
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Finds the saved text files (.txt and .txt.gz) of a directory whose name starts with a prefix
+     *
+     * @param directory the directory
+     * @param prefix    the start of the names
+     * @return the files sorted by name
+     */
+    public static List<File> findFiles(String directory, String prefix) {
+        File[] files = new File(directory).listFiles((dir, name) -> name.startsWith(prefix) &&
+                (name.endsWith(".txt") || name.endsWith(".txt.gz")));
+
+        if (files == null)
+            return new ArrayList<>();
+
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Gets the contents of a file. Plain files are memory mapped and compressed files are decompressed to memory.
+     *
+     * @param file the file
+     * @return the contents
+     * @throws IOException if the file can not be read
+     */
+    static ByteBuffer readFile(File file) throws IOException {
+        if (file.getName().endsWith(".gz")) {
+            try (InputStream in = new GZIPInputStream(new FileInputStream(file), 1 << 16)) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE / 2,
+                        file.length() * 4));
+                byte[] buffer = new byte[1 << 16];
+                int length;
+
+                while ((length = in.read(buffer)) > 0)
+                    out.write(buffer, 0, length);
+
+                return ByteBuffer.wrap(out.toByteArray());
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File too large: " + channel.size() + " bytes");
+
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Saves a report. The file starts with the number of files and the time of the scan followed by the report of the
+     * summary.
+     */
+    private static void saveReport(String file_name, FileSummary<?> summary, int files, long elapsed) {
+        File file = new File(file_name);
+
+        try {
+            file.getParentFile().mkdirs();
+        } catch (SecurityException e) {
+            System.out.println("Failed to create file with exception: " + e.toString());
+            return;
+        }
+
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("scanned_files=" + files + " scan_ms=" + elapsed / 1000000 + System.lineSeparator());
+            writer.write(summary.getReport());
+
+        } catch (IOException e) {
+            System.out.println("Failed to write to file with exception: " + e.toString());
+        }
+    }
+
+    /**
+     * Gets the current date time and formats it in this form "yyyy-MM-dd HH-mm-ss". The final name of the file derives
+     * from the directory + name + yyyy-MM-dd HH-mm-ss.txt
+     *
+     * @param directory The directory the file will be saved.
+     * @param name      The start of the name of the file
+     * @return directory + name + date + .txt
+     */
+    private static String createFileName(String directory, String name) {
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss");
+
+        return directory + name + df.format(Calendar.getInstance().getTime()) + ".txt";
+    }
+
+    /**
+     * Scans a range of files. Ranges of more than one file are split in half and scanned in parallel.
+     */
+    private static class ScanTask<T extends FileSummary<T>> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<File> files;
+        private final int from;
+        private final int to;
+        private final transient Supplier<T> factory;
+
+        ScanTask(List<File> files, int from, int to, Supplier<T> factory) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+            this.factory = factory;
+        }
+
+        @Override
+        protected T compute() {
+            if (this.to - this.from <= 1) {
+                T summary = this.factory.get();
+
+                if (this.from < this.to) {
+                    File file = this.files.get(this.from);
+
+                    try {
+                        summary.scan(readFile(file));
+                    } catch (IOException e) {
+                        System.out.println("Failed to read " + file.getPath() + " with exception: " + e.toString());
+                    }
+                }
+
+                return summary;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+
+            ScanTask<T> left = new ScanTask<>(this.files, this.from, middle, this.factory);
+            left.fork();
+
+            T summary = new ScanTask<>(this.files, middle, this.to, this.factory).compute();
+            summary.merge(left.join());
+
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package Analytics;
+
+import Echo.BitErrorEstimator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * <h1>EchoSummary Class</h1>
+ * Aggregates of the saved echo files (normal or with errors):
+ * <ul>
+ *     <li>the distribution and the percentiles of the response times,</li>
+ *     <li>the distribution of the retransmissions per packet,</li>
+ *     <li>the bit error rate estimated from the retransmissions.</li>
+ * </ul>
+ * Every packet is sent until it passes the checksum, so the probability a transmission has errors is
+ * p = retransmissions / transmissions. With independent bit errors a packet of
+ * {@link Echo.BitErrorEstimator#PACKET_BITS} bits is correct with probability (1 - BER)^bits, so
+ * BER = 1 - (1 - p)^(1 / bits). The same formulas give the live estimates of {@link Echo.BitErrorEstimator}.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class EchoSummary implements FileSummary<EchoSummary> {
+
+    private static final byte[] PACKET_START = "PSTART".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESPONSE_TIME = "response_time: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RETRANSMISSIONS = "retransmissions: ".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Response times in ms with 1 ms buckets
+     */
+    private final Histogram response_times = new Histogram(1);
+
+    /**
+     * Retransmissions per packet
+     */
+    private final Histogram retransmissions = new Histogram(1);
+
+    private long files = 0;
+
+
+    @Override
+    public void scan(ByteBuffer data) {
+        this.files++;
+
+        int position = data.position();
+
+        while (position < data.limit()) {
+            int end = LineScanner.lineEnd(data, position);
+
+            // Only the packet lines are used. The header lines with the request codes never start with PSTART
+            if (LineScanner.startsWith(data, position, end, PACKET_START))
+                scanPacket(data, position, end);
+
+            position = end + 1;
+        }
+    }
+
+    /**
+     * Parses the measurements of a packet line
+     */
+    private void scanPacket(ByteBuffer data, int from, int to) {
+        int time = LineScanner.indexOf(data, from, to, RESPONSE_TIME);
+
+        if (time < 0)
+            return;
+
+        long response_time = LineScanner.parseLong(data, time + RESPONSE_TIME.length, to);
+
+        if (response_time < 0)
+            return;
+
+        this.response_times.add(response_time);
+
+        // The normal echo packets have no retransmissions
+        int retrans = LineScanner.indexOf(data, time, to, RETRANSMISSIONS);
+        this.retransmissions.add(retrans < 0 ? 0 : Math.max(0, LineScanner.parseLong(data,
+                retrans + RETRANSMISSIONS.length, to)));
+    }
+
+    @Override
+    public void merge(EchoSummary other) {
+        this.response_times.merge(other.response_times);
+        this.retransmissions.merge(other.retransmissions);
+        this.files += other.files;
+    }
+
+    public Histogram getResponseTimes() {
+        return response_times;
+    }
+
+    public Histogram getRetransmissions() {
+        return retransmissions;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    /**
+     * Estimates the probability that a transmission had errors
+     *
+     * @return retransmissions / transmissions
+     */
+    public double getPacketErrorRate() {
+        return BitErrorEstimator.packetError(this.retransmissions.getCount(), this.retransmissions.getSum());
+    }
+
+    /**
+     * Estimates the bit error rate from the packet error rate
+     *
+     * @return the estimated BER
+     */
+    public double getBitErrorRate() {
+        return BitErrorEstimator.bitErrorRate(getPacketErrorRate());
+    }
+
+    @Override
+    public String getReport() {
+        String separator = System.lineSeparator();
+
+        return "files=" + this.files + " packets=" + this.response_times.getCount() + separator +
+                String.format(Locale.US, "packet_error_rate=%.6f bit_error_rate=%.3e", getPacketErrorRate(),
+                        getBitErrorRate()) + separator +
+                "response_time_ms " + this.response_times.getSummary() + separator +
+                "retransmissions " + this.retransmissions.getSummary() + separator +
+                "# retransmissions packets" + separator + this.retransmissions.getBuckets() +
+                "# response_time_ms packets" + separator + this.response_times.getBuckets();
+    }
+}
@@ -0,0 +1,37 @@
+package Analytics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This interface dictates the methods needed for the aggregates computed by {@link Analytics.AnalyticsEngine}. Every
+ * worker scans its files into its own summary and the summaries are merged when the workers join, so the
+ * implementations need no synchronization.
+ *
+ * @param <T> the type of the summary
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public interface FileSummary<T extends FileSummary<T>> {
+
+    /**
+     * Adds the data of a saved file
+     *
+     * @param data the contents of the file from position to limit
+     */
+    void scan(ByteBuffer data);
+
+    /**
+     * Adds the aggregates of another summary of the same type
+     *
+     * @param other the other summary
+     */
+    void merge(T other);
+
+    /**
+     * Creates the report that is saved in the summary file
+     *
+     * @return the report
+     */
+    String getReport();
+}
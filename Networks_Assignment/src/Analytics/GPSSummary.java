@@ -0,0 +1,140 @@
+package Analytics;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h1>GPSSummary Class</h1>
+ * Aggregates of the saved GPS files: the number of sentences of every type, the distribution of the satellites used
+ * and of the HDOP, the position fix indicators of the GPGGA sentences and the status of the GPRMC sentences.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class GPSSummary implements FileSummary<GPSSummary> {
+
+    private static final byte[] GPGGA = "$GPGGA".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GPGSA = "$GPGSA".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GPRMC = "$GPRMC".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The GPGGA position fix indicator values 0 - 8. Unknown values are counted in the last place.
+     */
+    private final long[] fix_types = new long[10];
+
+    /**
+     * Satellites used per GPGGA sentence
+     */
+    private final Histogram satellites = new Histogram(1);
+
+    /**
+     * HDOP in tenths (1.2 is counted as 12)
+     */
+    private final Histogram hdop = new Histogram(1);
+
+    private long files = 0;
+    private long gpgga = 0;
+    private long gpgsa = 0;
+    private long gprmc = 0;
+    private long valid_rmc = 0;
+
+
+    @Override
+    public void scan(ByteBuffer data) {
+        this.files++;
+
+        int position = data.position();
+
+        while (position < data.limit()) {
+            int end = LineScanner.lineEnd(data, position);
+
+            if (LineScanner.startsWith(data, position, end, GPGGA)) {
+                scanGPGGA(data, position, end);
+            } else if (LineScanner.startsWith(data, position, end, GPRMC)) {
+                this.gprmc++;
+
+                int status = LineScanner.field(data, position, end, 2);
+                if (status >= 0 && status < end && data.get(status) == 'A')
+                    this.valid_rmc++;
+            } else if (LineScanner.startsWith(data, position, end, GPGSA)) {
+                this.gpgsa++;
+            }
+
+            position = end + 1;
+        }
+    }
+
+    /**
+     * Parses the fix indicator (field 6), the satellites used (field 7) and the HDOP (field 8) of a GPGGA line
+     */
+    private void scanGPGGA(ByteBuffer data, int from, int to) {
+        this.gpgga++;
+
+        int field = LineScanner.field(data, from, to, 6);
+        long fix = field < 0 ? -1 : LineScanner.parseLong(data, field, to);
+        this.fix_types[fix >= 0 && fix < this.fix_types.length - 1 ? (int) fix : this.fix_types.length - 1]++;
+
+        field = LineScanner.field(data, from, to, 7);
+        long used = field < 0 ? -1 : LineScanner.parseLong(data, field, to);
+        if (used >= 0)
+            this.satellites.add(used);
+
+        field = LineScanner.field(data, from, to, 8);
+        long tenths = field < 0 ? -1 : LineScanner.parseScaled(data, field, to, 1);
+        if (tenths >= 0)
+            this.hdop.add(tenths);
+    }
+
+    @Override
+    public void merge(GPSSummary other) {
+        for (int i = 0; i < this.fix_types.length; i++)
+            this.fix_types[i] += other.fix_types[i];
+
+        this.satellites.merge(other.satellites);
+        this.hdop.merge(other.hdop);
+
+        this.files += other.files;
+        this.gpgga += other.gpgga;
+        this.gpgsa += other.gpgsa;
+        this.gprmc += other.gprmc;
+        this.valid_rmc += other.valid_rmc;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    public Histogram getSatellites() {
+        return satellites;
+    }
+
+    public Histogram getHdop() {
+        return hdop;
+    }
+
+    @Override
+    public String getReport() {
+        String separator = System.lineSeparator();
+        StringBuilder report = new StringBuilder();
+
+        report.append("files=").append(this.files).append(" gpgga=").append(this.gpgga).append(" gpgsa=")
+                .append(this.gpgsa).append(" gprmc=").append(this.gprmc).append(" rmc_valid=").append(this.valid_rmc)
+                .append(separator);
+
+        report.append("fix_types");
+        for (int i = 0; i < this.fix_types.length; i++) {
+            if (this.fix_types[i] != 0)
+                report.append(' ').append(i < this.fix_types.length - 1 ? String.valueOf(i) : "unknown").append('=')
+                        .append(this.fix_types[i]);
+        }
+        report.append(separator);
+
+        report.append("satellites ").append(this.satellites.getSummary()).append(separator);
+        report.append("hdop_x10 ").append(this.hdop.getSummary()).append(separator);
+        report.append("# satellites sentences").append(separator).append(this.satellites.getBuckets());
+        report.append("# hdop_x10 sentences").append(separator).append(this.hdop.getBuckets());
+
+        return report.toString();
+    }
+}
@@ -0,0 +1,161 @@
+package Analytics;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <h1>Histogram Class</h1>
+ * Histogram of non negative integer values with buckets of fixed width. The buckets grow with the largest value added,
+ * so the memory depends on the range of the values and not on their number. Two histograms with the same bucket width
+ * can be merged, which is what the parallel scan of {@link Analytics.AnalyticsEngine} needs to combine the results of
+ * every file.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class Histogram {
+
+    /**
+     * The width of every bucket. Bucket i counts the values from i * width to (i + 1) * width - 1.
+     */
+    private final long bucket_width;
+
+    private long[] buckets = new long[64];
+
+    // Aggregates of the exact values
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+
+    /**
+     * Constructor
+     *
+     * @param bucket_width {@link #bucket_width}
+     */
+    public Histogram(long bucket_width) {
+        this.bucket_width = bucket_width;
+    }
+
+    /**
+     * Adds a value. Negative values are counted in the first bucket.
+     *
+     * @param value the value
+     */
+    public void add(long value) {
+        int bucket = (int) (Math.max(0, value) / this.bucket_width);
+
+        if (bucket >= this.buckets.length)
+            this.buckets = Arrays.copyOf(this.buckets, Math.max(bucket + 1, this.buckets.length * 2));
+
+        this.buckets[bucket]++;
+        this.count++;
+        this.sum += value;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+    }
+
+    /**
+     * Adds all the values of another histogram with the same bucket width
+     *
+     * @param other the other histogram
+     */
+    public void merge(Histogram other) {
+        if (other.bucket_width != this.bucket_width)
+            throw new IllegalArgumentException("Different bucket width: " + other.bucket_width);
+
+        if (other.buckets.length > this.buckets.length)
+            this.buckets = Arrays.copyOf(this.buckets, other.buckets.length);
+
+        for (int i = 0; i < other.buckets.length; i++)
+            this.buckets[i] += other.buckets[i];
+
+        this.count += other.count;
+        this.sum += other.sum;
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return this.count == 0 ? 0 : this.min;
+    }
+
+    public long getMax() {
+        return this.count == 0 ? 0 : this.max;
+    }
+
+    public double getMean() {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * Gets the value below which a percentage of the values fall. The result is the upper limit of the bucket, so the
+     * error is at most one bucket width.
+     *
+     * @param percentile the percentile from 0 to 100
+     * @return the value of the percentile
+     */
+    public long getPercentile(double percentile) {
+        if (this.count == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(percentile / 100.0 * this.count);
+        long seen = 0;
+
+        for (int i = 0; i < this.buckets.length; i++) {
+            seen += this.buckets[i];
+
+            if (seen >= Math.max(1, rank))
+                return Math.min(this.max, (i + 1) * this.bucket_width - 1);
+        }
+
+        return this.max;
+    }
+
+    /**
+     * Gets the number of values in a bucket
+     *
+     * @param bucket the bucket number
+     * @return the count
+     */
+    public long getBucket(int bucket) {
+        return bucket < this.buckets.length ? this.buckets[bucket] : 0;
+    }
+
+    /**
+     * Creates the summary of the histogram: count, min, mean, max and the usual percentiles
+     *
+     * @return the summary as name=value pairs
+     */
+    public String getSummary() {
+        return String.format(Locale.US, "count=%d min=%d mean=%.2f max=%d p50=%d p90=%d p95=%d p99=%d p99.9=%d",
+                getCount(), getMin(), getMean(), getMax(), getPercentile(50), getPercentile(90),
+                getPercentile(95), getPercentile(99), getPercentile(99.9));
+    }
+
+    /**
+     * Creates the lines of the non empty buckets in the form "bucket_start count"
+     *
+     * @return the lines
+     */
+    public String getBuckets() {
+        StringBuilder lines = new StringBuilder();
+
+        for (int i = 0; i < this.buckets.length; i++) {
+            if (this.buckets[i] != 0)
+                lines.append(i * this.bucket_width).append(' ').append(this.buckets[i]).append(System.lineSeparator());
+        }
+
+        return lines.toString();
+    }
+}
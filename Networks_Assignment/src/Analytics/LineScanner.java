@@ -0,0 +1,133 @@
+package Analytics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helper functions that work directly on the bytes of a mapped file so that the lines are scanned without creating a
+ * String for each one. All the positions are absolute positions of the buffer.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+class LineScanner {
+
+    private LineScanner() {
+    }
+
+    /**
+     * Finds the end of the line that starts at a position
+     *
+     * @return the position of the '\n' or the limit of the buffer
+     */
+    static int lineEnd(ByteBuffer data, int from) {
+        int limit = data.limit();
+
+        while (from < limit && data.get(from) != '\n')
+            from++;
+
+        return from;
+    }
+
+    /**
+     * Checks if the bytes from a position match a pattern
+     */
+    static boolean startsWith(ByteBuffer data, int from, int to, byte[] pattern) {
+        if (to - from < pattern.length)
+            return false;
+
+        for (int i = 0; i < pattern.length; i++) {
+            if (data.get(from + i) != pattern[i])
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Finds the first occurrence of a pattern between two positions
+     *
+     * @return the position of the pattern or -1
+     */
+    static int indexOf(ByteBuffer data, int from, int to, byte[] pattern) {
+        for (int i = from; i <= to - pattern.length; i++) {
+            if (startsWith(data, i, to, pattern))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the start of a comma separated field
+     *
+     * @param field the number of the field. The field 0 starts at the start of the line
+     * @return the position of the first byte of the field or -1 if the line has fewer fields
+     */
+    static int field(ByteBuffer data, int from, int to, int field) {
+        for (int i = from; i < to && field > 0; i++) {
+            if (data.get(i) == ',') {
+                field--;
+                from = i + 1;
+            }
+        }
+
+        return field == 0 ? from : -1;
+    }
+
+    /**
+     * Parses the digits of a number. Parsing stops at the first byte that is not a digit.
+     *
+     * @return the number or -1 if there are no digits
+     */
+    static long parseLong(ByteBuffer data, int from, int to) {
+        long value = 0;
+        int digits = 0;
+
+        for (int i = from; i < to; i++) {
+            byte b = data.get(i);
+
+            if (b < '0' || b > '9')
+                break;
+
+            value = value * 10 + (b - '0');
+            digits++;
+        }
+
+        return digits == 0 ? -1 : value;
+    }
+
+    /**
+     * Parses a decimal number scaled by 10^decimals e.g. "1.25" with 1 decimal is 12. Extra decimals are truncated.
+     *
+     * @return the scaled number or -1 if there are no digits
+     */
+    static long parseScaled(ByteBuffer data, int from, int to, int decimals) {
+        long value = 0;
+        int digits = 0;
+        int fraction = -1;
+
+        for (int i = from; i < to; i++) {
+            byte b = data.get(i);
+
+            if (b == '.' && fraction < 0) {
+                fraction = 0;
+                continue;
+            }
+
+            if (b < '0' || b > '9' || fraction == decimals)
+                break;
+
+            value = value * 10 + (b - '0');
+            digits++;
+
+            if (fraction >= 0)
+                fraction++;
+        }
+
+        for (int i = Math.max(0, fraction); i < decimals; i++)
+            value *= 10;
+
+        return digits == 0 ? -1 : value;
+    }
+}
@@ -0,0 +1,136 @@
+package Benchmark;
+
+import GPS.GPSIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * <h1>GPSIndexBenchmark Class</h1>
+ * Benchmark for the {@link GPS.GPSIndex} class. Synthetic tracks are generated as random walks around Thessaloniki
+ * (one point per second like the routes of the server) and the time needed to build, save, load and query the index is
+ * printed to the console. Every query is also checked against a linear scan of all the points.
+ * <br>
+ * Usage: GPSIndexBenchmark [number of tracks] [points per track]
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class GPSIndexBenchmark {
+
+    /**
+     * The number of queries of each type
+     */
+    private static final int QUERIES = 1000;
+
+    public static void main(String[] args) throws IOException {
+        int tracks = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int points_per_track = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        Random random = new Random(42);
+        GPSIndex index = new GPSIndex();
+
+        System.out.println("Generating " + tracks + " tracks with " + points_per_track + " points each ...");
+
+        long start = System.nanoTime();
+        for (int t = 0; t < tracks; t++) {
+            double lat = 40.60 + random.nextDouble() * 0.10;
+            double lon = 22.90 + random.nextDouble() * 0.15;
+            long time = 1609459200L + random.nextInt(365) * 86400L + random.nextInt(86400);
+
+            for (int p = 0; p < points_per_track; p++) {
+                // About 10 m per second in a random direction
+                lat += (random.nextDouble() - 0.5) * 0.0002;
+                lon += (random.nextDouble() - 0.5) * 0.0002;
+
+                index.add(time + p, lat, lon);
+            }
+        }
+        print("Add", index.size(), System.nanoTime() - start);
+
+        start = System.nanoTime();
+        index.build();
+        print("Build", index.size(), System.nanoTime() - start);
+
+        // Save and load round trip
+        File file = File.createTempFile("gps_index", ".bin");
+        file.deleteOnExit();
+
+        start = System.nanoTime();
+        index.save(file.getPath());
+        print("Save", index.size(), System.nanoTime() - start);
+
+        start = System.nanoTime();
+        index = GPSIndex.load(file.getPath());
+        index.build();
+        print("Load", index.size(), System.nanoTime() - start);
+
+        // Box queries of about 500 m x 500 m
+        long found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            double lat = 40.60 + random.nextDouble() * 0.10;
+            double lon = 22.90 + random.nextDouble() * 0.15;
+            found += index.queryBox(lat, lon, lat + 0.0045, lon + 0.006).length;
+        }
+        print("Box query", QUERIES, System.nanoTime() - start);
+        System.out.println("    average points per query: " + found / QUERIES);
+
+        // Radius queries of 250 m
+        found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            double lat = 40.60 + random.nextDouble() * 0.10;
+            double lon = 22.90 + random.nextDouble() * 0.15;
+            found += index.queryRadius(lat, lon, 250).length;
+        }
+        print("Radius query", QUERIES, System.nanoTime() - start);
+        System.out.println("    average points per query: " + found / QUERIES);
+
+        // Time queries of one hour
+        found = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            long from = 1609459200L + random.nextInt(365) * 86400L + random.nextInt(86400);
+            found += index.queryTime(from, from + 3600).length;
+        }
+        print("Time query", QUERIES, System.nanoTime() - start);
+        System.out.println("    average points per query: " + found / QUERIES);
+
+        // Verify a few queries against a linear scan
+        for (int i = 0; i < 10; i++) {
+            double lat = 40.60 + random.nextDouble() * 0.10;
+            double lon = 22.90 + random.nextDouble() * 0.15;
+            int expected = 0;
+
+            start = System.nanoTime();
+            for (int id = 0; id < index.size(); id++) {
+                double p_lat = index.getLatitude(id);
+                double p_lon = index.getLongitude(id);
+
+                if (p_lat >= lat && p_lat <= lat + 0.0045 && p_lon >= lon && p_lon <= lon + 0.006)
+                    expected++;
+            }
+            long scan = System.nanoTime() - start;
+
+            int actual = index.queryBox(lat, lon, lat + 0.0045, lon + 0.006).length;
+
+            if (actual != expected)
+                throw new IllegalStateException("Box query returned " + actual + " points, expected " + expected);
+
+            if (i == 0)
+                print("Linear scan", 1, scan);
+        }
+
+        System.out.println("All verified queries match the linear scan.");
+    }
+
+    /**
+     * Prints the total and the per operation time
+     */
+    private static void print(String name, long operations, long nanos) {
+        System.out.printf("%-14s %10.2f ms total %12.3f us/op%n", name, nanos / 1e6, nanos / 1e3 / Math.max(1, operations));
+    }
+}
@@ -0,0 +1,313 @@
+package Benchmark;
+
+import Echo.EchoErrors;
+import Echo.EchoPackets;
+import GPS.GPSPackets;
+import Image.ImagePackets;
+import Simulator.IthakiSimulator;
+import Simulator.LinkImpairment;
+import Structure.Connection;
+import Structure.Constants;
+import Structure.OutputSink;
+import Structure.RunLimit;
+import Structure.SocketTransport;
+import Structure.TrafficMeter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <h1>ThroughputHarness Class</h1>
+ * End to end benchmark of the modules against the local {@link Simulator.IthakiSimulator}. Every module runs with a
+ * sweep of connection speeds and payload sizes (image size, GPS lines) and for every run the harness measures:
+ * <ul>
+ *     <li>the bytes and packets (responses) per second achieved and the utilisation of the connection speed</li>
+ *     <li>the CPU time of the receiving thread per byte</li>
+ *     <li>the bytes allocated by the receiving thread per byte</li>
+ * </ul>
+ * When the CPU time per byte approaches the time of a byte at the speed (8e9 / speed ns) the application overhead and
+ * not the connection is the bottleneck. The results are printed and saved as CSV in
+ * {@link Structure.Constants#BENCHMARK_DIR}.
+ * <br>
+ * The speeds run from the fastest (0 is no limit) to the slowest and a run that would take longer than the maximum
+ * time at its speed (estimated from the bytes of the unlimited run) is skipped. The modules save their data files as
+ * usual, so run the harness from a scratch directory. The text outputs are discarded.
+ * <br>
+ * Usage: ThroughputHarness [speeds e.g. 0,1000000,80000,9600,3800] [maximum seconds of a run]
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class ThroughputHarness {
+
+    /**
+     * The CSV columns
+     */
+    private static final String CSV_HEADER = "module,payload,speed_bps,packets,bytes,elapsed_ms,bytes_per_s," +
+            "packets_per_s,link_utilisation,cpu_ns_per_byte,alloc_bytes_per_byte";
+
+    private final IthakiSimulator simulator;
+    private final Connection connection;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The bytes of every workload at the unlimited speed, used to skip slow runs
+     */
+    private final Map<String, Long> unlimited_bytes = new HashMap<>();
+
+    private final List<String> rows = new ArrayList<>();
+
+
+    /**
+     * Constructor. Starts the simulator and connects to it.
+     */
+    public ThroughputHarness() {
+        this.simulator = new IthakiSimulator(0, LinkImpairment.none());
+
+        if (!this.simulator.start())
+            throw new IllegalStateException("Failed to start the simulator");
+
+        this.connection = new Connection(() -> new SocketTransport("localhost", this.simulator.getPort()), "E0000",
+                "M0000", "G0000", "P0000", "Q0000", "R0000", 0, 10000);
+        this.connection.setOutputSink(new DiscardingSink());
+
+        if (!this.connection.isConnected())
+            throw new IllegalStateException("Failed to connect to the simulator");
+    }
+
+    public static void main(String[] args) {
+        int[] speeds = {0, 1000000, 80000, 9600, 3800};
+        long max_run = 20000;
+
+        if (args.length > 0) {
+            String[] values = args[0].split(",");
+            speeds = new int[values.length];
+
+            for (int i = 0; i < values.length; i++)
+                speeds[i] = Integer.parseInt(values[i].trim());
+        }
+
+        if (args.length > 1)
+            max_run = Long.parseLong(args[1]) * 1000;
+
+        ThroughputHarness harness = new ThroughputHarness();
+        List<Workload> workloads = harness.createWorkloads();
+
+        // Warm up every workload once so that the runs measure compiled code
+        System.out.println("Warming up ...");
+        harness.connection.setModemSpeed(0);
+        for (Workload workload : workloads)
+            workload.run();
+
+        for (Workload workload : workloads) {
+            for (int speed : sortSpeeds(speeds))
+                harness.measure(workload, speed, max_run);
+        }
+
+        System.out.println(CSV_HEADER);
+        for (String row : harness.rows)
+            System.out.println(row);
+
+        harness.save(createFileName(Constants.BENCHMARK_DIR.getStr()));
+        harness.simulator.stop();
+    }
+
+    /**
+     * Creates the workloads of all the modules
+     *
+     * @return the workloads
+     */
+    private List<Workload> createWorkloads() {
+        List<Workload> workloads = new ArrayList<>();
+
+        workloads.add(new Workload("echo", "packet", () -> {
+            EchoPackets echoPackets = new EchoPackets(this.connection, 0);
+            echoPackets.setRunLimit(RunLimit.packets(100));
+            echoPackets.getPackets();
+        }));
+
+        workloads.add(new Workload("echo_errors", "packet", () -> {
+            EchoErrors echoErrors = new EchoErrors(this.connection, 0);
+            echoErrors.setRunLimit(RunLimit.packets(100));
+            echoErrors.setReport_interval(0);
+            echoErrors.getPackets();
+        }));
+
+        for (int[] size : new int[][]{{160, 120}, {640, 480}}) {
+            workloads.add(new Workload("image", size[0] + "x" + size[1], () -> {
+                this.simulator.setImage_size(size[0], size[1]);
+
+                ImagePackets image = new ImagePackets(this.connection, false);
+                for (int i = 0; i < 3; i++)
+                    image.getPackets();
+            }));
+        }
+
+        for (int lines : new int[]{20, 99}) {
+            workloads.add(new Workload("gps", lines + " lines", () -> {
+                GPSPackets gps = new GPSPackets(this.connection, String.format(Locale.US, "R=10000%02d", lines));
+                for (int i = 0; i < 3; i++)
+                    gps.getPackets();
+            }));
+        }
+
+        return workloads;
+    }
+
+    /**
+     * Runs a workload at a speed and adds the row of the results
+     */
+    private void measure(Workload workload, int speed, long max_run) {
+        String key = workload.module + " " + workload.payload;
+        Long bytes = this.unlimited_bytes.get(key);
+
+        if (speed > 0 && bytes != null && bytes * 8000L / speed > max_run) {
+            System.out.println("Skipping " + key + " at " + speed + " bps (about " + bytes * 8 / speed + " s)");
+            return;
+        }
+
+        System.out.println("Running " + key + " at " + (speed > 0 ? speed + " bps" : "unlimited speed") + " ...");
+        this.connection.setModemSpeed(speed);
+
+        TrafficMeter meter = this.connection.getTrafficMeter();
+        long start_bytes = meter.getBytes_read();
+        long start_packets = meter.getWrites();
+        long start_allocated = allocatedBytes();
+        long start_cpu = this.threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+
+        workload.run();
+
+        long elapsed = System.nanoTime() - start;
+        long cpu = this.threads.getCurrentThreadCpuTime() - start_cpu;
+        long allocated = allocatedBytes() - start_allocated;
+        long received = meter.getBytes_read() - start_bytes;
+        long packets = meter.getWrites() - start_packets;
+
+        if (speed == 0)
+            this.unlimited_bytes.put(key, received);
+
+        double seconds = elapsed / 1e9;
+        double bytes_per_second = received / seconds;
+
+        this.rows.add(String.format(Locale.US, "%s,%s,%d,%d,%d,%.1f,%.0f,%.1f,%s,%.1f,%s", workload.module,
+                workload.payload, speed, packets, received, elapsed / 1e6, bytes_per_second, packets / seconds,
+                speed > 0 ? String.format(Locale.US, "%.3f", bytes_per_second * 8 / speed) : "",
+                (double) cpu / Math.max(1, received),
+                start_allocated < 0 ? "" : String.format(Locale.US, "%.1f", (double) allocated / Math.max(1, received))));
+    }
+
+    /**
+     * Gets the bytes allocated by the current thread if the JVM supports it
+     *
+     * @return the bytes or -1
+     */
+    private long allocatedBytes() {
+        if (this.threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) this.threads).getCurrentThreadAllocatedBytes();
+
+        return -1;
+    }
+
+    /**
+     * Sorts the speeds from the fastest to the slowest. 0 (no limit) is the fastest.
+     */
+    private static int[] sortSpeeds(int[] speeds) {
+        return Arrays.stream(speeds).boxed()
+                .sorted((a, b) -> Long.compare(b == 0 ? Long.MAX_VALUE : b, a == 0 ? Long.MAX_VALUE : a))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Saves the results as CSV
+     *
+     * @param file_name the name of the file
+     */
+    private void save(String file_name) {
+        File file = new File(file_name);
+
+        try {
+            file.getParentFile().mkdirs();
+        } catch (SecurityException e) {
+            System.out.println("Failed to create file with exception: " + e.toString());
+            return;
+        }
+
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(CSV_HEADER + System.lineSeparator());
+
+            for (String row : this.rows)
+                writer.write(row + System.lineSeparator());
+
+            System.out.println("Results saved to " + file_name);
+        } catch (IOException e) {
+            System.out.println("Failed to write to file with exception: " + e.toString());
+        }
+    }
+
+    /**
+     * Gets the current date time and formats it in this form "yyyy-MM-dd HH-mm-ss". The final name of the file derives
+     * from the directory + throughput yyyy-MM-dd HH-mm-ss.csv
+     *
+     * @param directory The directory the file will be saved.
+     * @return directory + name + date + .csv
+     */
+    private static String createFileName(String directory) {
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss");
+
+        return directory + "throughput " + df.format(Calendar.getInstance().getTime()) + ".csv";
+    }
+
+    /**
+     * A module run with a payload
+     */
+    private static class Workload {
+        private final String module;
+        private final String payload;
+        private final Runnable run;
+
+        Workload(String module, String payload, Runnable run) {
+            this.module = module;
+            this.payload = payload;
+            this.run = run;
+        }
+
+        void run() {
+            this.run.run();
+        }
+    }
+
+    /**
+     * Drops the text outputs of the modules
+     */
+    private static class DiscardingSink implements OutputSink {
+        @Override
+        public void write(String file_name, byte[] record) {
+        }
+
+        @Override
+        public void finish(String file_name) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package Echo;
+
+import java.util.Locale;
+
+/**
+ * <h1>BitErrorEstimator Class</h1>
+ * Streaming estimator of the quality of the channel used by {@link Echo.EchoErrors}. Every packet is requested again
+ * (NACK) until it passes the checksum, so the number of retransmissions of a packet follows a geometric distribution
+ * with the probability p that a transmission has errors. Over a window of packets the estimate is
+ * <p>
+ * p = retransmissions / (packets + retransmissions)
+ * <p>
+ * and with independent bit errors on the {@link #PACKET_BITS} bits checked by the FCS
+ * <p>
+ * BER = 1 - (1 - p)^(1 / {@link #PACKET_BITS})
+ * <p>
+ * The estimates are calculated over a sliding window of the last packets so that changes of the channel quality are
+ * visible during the run, and over all the packets of the run. The window is a ring buffer with running sums, so every
+ * packet is added in O(1). The confidence intervals are Wilson score intervals of p, mapped to the BER.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class BitErrorEstimator {
+
+    /**
+     * The bits checked by the FCS: the 16 characters of the packet between the &lt;&gt;
+     */
+    public static final int PACKET_BITS = 16 * 8;
+
+    /**
+     * The z value of the 95% confidence interval
+     */
+    public static final double Z_95 = 1.959964;
+
+    /**
+     * The retransmissions of the packets in the window
+     */
+    private final int[] window;
+
+    /**
+     * The z value of the confidence intervals
+     */
+    private final double z;
+
+    /**
+     * The next position of the ring buffer and the packets in the window
+     */
+    private int next = 0;
+    private int window_packets = 0;
+    private long window_retransmissions = 0;
+
+    // Totals of the run
+    private long total_packets = 0;
+    private long total_retransmissions = 0;
+
+
+    /**
+     * Constructor
+     *
+     * @param window_size the number of packets in the sliding window
+     * @param z           {@link #z}
+     */
+    public BitErrorEstimator(int window_size, double z) {
+        this.window = new int[window_size];
+        this.z = z;
+    }
+
+    /**
+     * Constructor with 95% confidence intervals
+     *
+     * @param window_size the number of packets in the sliding window
+     */
+    public BitErrorEstimator(int window_size) {
+        this(window_size, Z_95);
+    }
+
+    /**
+     * Adds a packet that passed the checksum
+     *
+     * @param retransmissions the NACK requests needed for the packet
+     */
+    public void addPacket(int retransmissions) {
+        if (this.window_packets == this.window.length)
+            this.window_retransmissions -= this.window[this.next];
+        else
+            this.window_packets++;
+
+        this.window[this.next] = retransmissions;
+        this.window_retransmissions += retransmissions;
+        this.next = (this.next + 1) % this.window.length;
+
+        this.total_packets++;
+        this.total_retransmissions += retransmissions;
+    }
+
+    /**
+     * Clears the estimator for a new run
+     */
+    public void reset() {
+        this.next = 0;
+        this.window_packets = 0;
+        this.window_retransmissions = 0;
+        this.total_packets = 0;
+        this.total_retransmissions = 0;
+    }
+
+    public long getTotalPackets() {
+        return total_packets;
+    }
+
+    /**
+     * Gets the packet error probability over the window
+     *
+     * @return the estimated p
+     */
+    public double getWindowPacketError() {
+        return packetError(this.window_packets, this.window_retransmissions);
+    }
+
+    /**
+     * Gets the bit error rate over the window
+     *
+     * @return the estimated BER
+     */
+    public double getWindowBitErrorRate() {
+        return bitErrorRate(getWindowPacketError());
+    }
+
+    /**
+     * Gets the packet error probability over all the packets of the run
+     *
+     * @return the estimated p
+     */
+    public double getTotalPacketError() {
+        return packetError(this.total_packets, this.total_retransmissions);
+    }
+
+    /**
+     * Gets the bit error rate over all the packets of the run
+     *
+     * @return the estimated BER
+     */
+    public double getTotalBitErrorRate() {
+        return bitErrorRate(getTotalPacketError());
+    }
+
+    /**
+     * Creates a report of the window and total estimates with their confidence intervals
+     *
+     * @return the report in one line
+     */
+    public String getReport() {
+        return "window(" + this.window_packets + ") " +
+                format(this.window_packets, this.window_retransmissions) + " total(" + this.total_packets + ") " +
+                format(this.total_packets, this.total_retransmissions);
+    }
+
+    @Override
+    public String toString() {
+        return getReport();
+    }
+
+    private String format(long packets, long retransmissions) {
+        long transmissions = packets + retransmissions;
+        double p = packetError(packets, retransmissions);
+        double[] interval = wilson(retransmissions, transmissions, this.z);
+
+        return String.format(Locale.US, "p=%.4f [%.4f, %.4f] BER=%.3e [%.3e, %.3e]", p, interval[0], interval[1],
+                bitErrorRate(p), bitErrorRate(interval[0]), bitErrorRate(interval[1]));
+    }
+
+    /**
+     * Estimates the probability that a transmission has errors
+     *
+     * @param packets         the packets received correctly
+     * @param retransmissions the total retransmissions of the packets
+     * @return retransmissions / transmissions or 0 if there are no packets
+     */
+    public static double packetError(long packets, long retransmissions) {
+        long transmissions = packets + retransmissions;
+
+        return transmissions == 0 ? 0 : (double) retransmissions / transmissions;
+    }
+
+    /**
+     * Converts the probability a packet has errors to the bit error rate
+     *
+     * @param packet_error the packet error probability
+     * @return the bit error rate
+     */
+    public static double bitErrorRate(double packet_error) {
+        return 1 - Math.pow(1 - packet_error, 1.0 / PACKET_BITS);
+    }
+
+    /**
+     * Calculates the Wilson score interval of a proportion
+     *
+     * @param successes the number of successes
+     * @param trials    the number of trials
+     * @param z         the z value of the confidence level
+     * @return the lower and upper limit. [0, 1] if there are no trials
+     */
+    public static double[] wilson(long successes, long trials, double z) {
+        if (trials == 0)
+            return new double[]{0, 1};
+
+        double p = (double) successes / trials;
+        double z2 = z * z;
+        double denominator = 1 + z2 / trials;
+        double center = (p + z2 / (2.0 * trials)) / denominator;
+        double margin = z * Math.sqrt(p * (1 - p) / trials + z2 / (4.0 * trials * trials)) / denominator;
+
+        return new double[]{Math.max(0, center - margin), Math.min(1, center + margin)};
+    }
+}
@@ -1,11 +1,16 @@
 package Echo;
 
+import Structure.ColumnarExport;
 import Structure.Connection;
 import Structure.Constants;
 import Structure.DataPackets;
+import Structure.OutputSink;
+import Structure.ReconnectPolicy;
+import Structure.RequestTimer;
+import Structure.RunLimit;
+import Structure.SpeedController;
+import Structure.SteadyStateDetector;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -42,7 +47,8 @@ public class EchoErrors implements DataPackets {
      */
     private final List<String> echo_packets;  // List to save all the packets
     /**
-     * The number of packets to be requested
+     * The maximum number of packets of the default run or 0 for no maximum. The default run ends after 5 minutes or
+     * after this number of packets, whichever comes first.
      * {@link #getRequest_packet_number()}
      * {@link #setRequest_packet_number(int)}
      */
@@ -52,6 +58,60 @@ public class EchoErrors implements DataPackets {
      */
     private final StringBuilder packet = new StringBuilder();
 
+    /**
+     * Decides when {@link #getPackets()} stops requesting packets. By default the run lasts 5 minutes or
+     * {@link #request_packet_number} packets.
+     */
+    private RunLimit runLimit;
+
+    /**
+     * If true every packet line is emitted to the output sink as soon as it is received instead of being kept in the
+     * {@link #echo_packets} List until the end of the run. Used for soak runs so that the memory stays bounded.
+     */
+    private boolean streaming = false;
+
+    /**
+     * The file the packet lines are emitted to while streaming
+     */
+    private String stream_file_name = null;
+
+    /**
+     * The measurements of the run. Exported next to the text file as binary columns for the analysis scripts.
+     */
+    private final ColumnarExport measurements = new ColumnarExport();
+    private final ColumnarExport.Column packet_numbers =
+            measurements.addColumn("packet_number", ColumnarExport.Type.INT32);
+    private final ColumnarExport.Column receive_times =
+            measurements.addColumn("receive_time_ms", ColumnarExport.Type.INT64);
+    private final ColumnarExport.Column response_times =
+            measurements.addColumn("response_time_ms", ColumnarExport.Type.INT32);
+    private final ColumnarExport.Column retransmission_counts =
+            measurements.addColumn("retransmissions", ColumnarExport.Type.INT32);
+    private final ColumnarExport.Column window_bers =
+            measurements.addColumn("window_ber", ColumnarExport.Type.FLOAT64);
+    private final ColumnarExport.Column phases =
+            measurements.addColumn("phase", ColumnarExport.Type.INT32);
+
+    /**
+     * Excludes the warm up packets and finds where the response times become steady
+     */
+    private SteadyStateDetector steadyStateDetector = new SteadyStateDetector(10, 20);
+
+    /**
+     * Estimates the packet error probability and the BER of the channel while the packets are received
+     */
+    private final BitErrorEstimator bitErrorEstimator = new BitErrorEstimator(100);
+
+    /**
+     * Times the phases of every ACK and NACK request. Exported next to the results.
+     */
+    private final RequestTimer requestTimer = new RequestTimer();
+
+    /**
+     * The estimates of the {@link #bitErrorEstimator} are printed every this many packets. 0 prints only at the end.
+     */
+    private int report_interval = 50;
+
 
     /**
      * Constructor
@@ -64,6 +124,7 @@ public class EchoErrors implements DataPackets {
         this.connection = connection;
         this.echo_packets = new ArrayList<>();
         this.request_packet_number = request_packet_number;
+        this.runLimit = new RunLimit(RunLimit.DEFAULT_DURATION, request_packet_number);
     }
 
 
@@ -86,12 +147,88 @@ public class EchoErrors implements DataPackets {
     }
 
     /**
-     * Sets the number of packets to be requested
+     * Sets the number of packets to be requested. The duration of the current {@link #runLimit} is kept.
      *
-     * @param request_packet_number int number of packets
+     * @param request_packet_number int number of packets or 0 for no maximum
      */
     public void setRequest_packet_number(int request_packet_number) {
         this.request_packet_number = request_packet_number;
+        this.runLimit = new RunLimit(this.runLimit.getDuration(), request_packet_number);
+    }
+
+    /**
+     * Sets the limit of the runs
+     *
+     * @param runLimit {@link #runLimit}
+     */
+    public void setRunLimit(RunLimit runLimit) {
+        this.runLimit = runLimit;
+    }
+
+    /**
+     * Enables or disables streaming of the packet lines
+     *
+     * @param streaming {@link #streaming}
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Gets the channel quality estimator of the last run
+     *
+     * @return {@link #bitErrorEstimator}
+     */
+    public BitErrorEstimator getBitErrorEstimator() {
+        return bitErrorEstimator;
+    }
+
+    /**
+     * Sets how often the channel quality is printed
+     *
+     * @param report_interval {@link #report_interval}
+     */
+    public void setReport_interval(int report_interval) {
+        this.report_interval = report_interval;
+    }
+
+    /**
+     * Sets the warm up and the steady state detection of the runs
+     *
+     * @param steadyStateDetector {@link #steadyStateDetector}
+     */
+    public void setSteadyStateDetector(SteadyStateDetector steadyStateDetector) {
+        this.steadyStateDetector = steadyStateDetector;
+    }
+
+    /**
+     * Gets the line under construction. Package private for the benchmarks of the end detection.
+     *
+     * @return {@link #packet}
+     */
+    StringBuilder getPacket() {
+        return packet;
+    }
+
+    /**
+     * Gets the timings of the requests of the current run
+     *
+     * @return {@link #requestTimer}
+     */
+    public RequestTimer getRequestTimer() {
+        return requestTimer;
+    }
+
+    /**
+     * Configures a soak run: the run lasts until one of the limits is reached and the packet lines are streamed to the
+     * output sink. Use a {@link Structure.RollingOutputSink} as the output of the connection to rotate the files.
+     *
+     * @param duration the duration of the run in milliseconds or 0 for no limit
+     * @param packets  the number of packets or 0 for no limit
+     */
+    public void setSoakMode(long duration, long packets) {
+        this.runLimit = new RunLimit(duration, packets);
+        this.streaming = true;
     }
 
 
@@ -117,65 +254,201 @@ public class EchoErrors implements DataPackets {
     public void getPackets() {
         int response_time = -1;  // The response_time of the request
         int packet_count = 1;
+        long response_nanos = 0;  // The response_time of the request in nanoseconds
+        long receive_time = 0;  // The time the last packet was received correctly
+        boolean connection_lost = false;  // The connection could not be recovered
 
         System.out.println("Receiving echo packets with errors ...");
 
-        long time = System.currentTimeMillis();  // The time used to measure the duration of the complete request
-
-        //for (int i = 0; i < this.request_packet_number; i++) {  // DEBUG comment requests specific amount of packets
-        while ((System.currentTimeMillis() - time) < 300000) {  // comment if you uncomment the above line
+        // Request packets until the limit of the run is reached
+        this.connection.getSpeedController().apply(SpeedController.ECHO_ERRORS);
+        this.bitErrorEstimator.reset();
+        this.steadyStateDetector.reset();
+        SteadyStateDetector.Series response_series = this.steadyStateDetector.newSeries();
+        this.requestTimer.setCapacity(RequestTimer.getCapacity(this.runLimit));
+        this.runLimit.start();
+        while (!this.runLimit.isReached(packet_count - 1)) {
 
-            System.out.println("Receiving packet: " + packet_count++);
+            int packet_number = packet_count++;
+            System.out.println("Receiving packet: " + packet_number);
 
             String requestCode = this.connection.getAck_code();  // The ACK code for the packet request
             int retransmissions = 0;  // The number each individual packet is retransmitted. Zero means the packet was received correctly the first time.
 
 
             // Request the packet
-            long start_time = readPacket(requestCode);  // The starting time of the request
+            boolean received = readPacket(requestCode, packet_number, retransmissions);
+            long start_time = this.requestTimer.getStart();  // The starting time of the first request in nanoseconds
 
             // Loop for every packet until it is received with no errors
             while (true) {
-                if (start_time != -1) {
+                if (received) {
                     //System.out.println(this.packet);  // DEBUG comment
 
-                    if (isCheckSumOk(this.packet.toString())) {
-                        // If the check sum is correct we take a second time measurement ...
-                        long end_time = System.currentTimeMillis();
-                        // ...and calculate the time that took the packet to arrive after the request was sent in ms.
+                    boolean checksum_ok = isCheckSumOk(this.packet.toString());
+                    long end_time = this.requestTimer.getLastByte();
+
+                    // Log every request of the ARQ mechanism
+                    this.connection.getSessionLog().logArqAttempt(packet_number, retransmissions, checksum_ok,
+                            end_time - this.requestTimer.getStart());
+
+                    if (checksum_ok) {
+                        // If the check sum is correct we calculate the time that took the packet to arrive after the
+                        // first request was sent in ms.
                         long duration = (end_time - start_time);
 
-                        response_time = Math.round(duration);
+                        response_nanos = duration;
+                        response_time = (int) Math.round(duration / 1e6);
+                        receive_time = System.currentTimeMillis();
                         break;
                     } else {
                         // If we enter the else block the packet was not received correctly so we must...
                         requestCode = this.connection.getNack_code();  // ...change the request code to the NACK code...
                         this.packet.setLength(0);  // ...drop the previously received packet...
-                        readPacket(requestCode);  // ...and request the packet one more
                         retransmissions++;
+                        received = readPacket(requestCode, packet_number, retransmissions);  // ...and request the packet one more
                     }
                 } else {
-                    /* If the start_time is returned -1 from the readPacket function some error has occurred.
+                    /* If readPacket returns false some error has occurred.
                      * Either the connection timed out or dropped, or an exception was thrown.
                      * In the last case the exception will be printed to the console.
                      */
-                    System.out.println("Connection error!! Terminating...");
-                    return;
+                    ReconnectPolicy.Status status = this.connection.recover();
+
+                    if (status != ReconnectPolicy.Status.RECOVERED) {
+                        System.out.println("Connection error!! Reconnection " + status +
+                                ". Saving the packets received so far...");
+
+                        // Drop the incomplete packet so that it does not start the next run
+                        this.packet.setLength(0);
+                        connection_lost = true;
+                        break;
+                    }
+
+                    // The new session has no packet to retransmit so the packet is requested again from the start.
+                    // The time of the timeout and the reconnection is not part of the response time.
+                    requestCode = this.connection.getAck_code();
+                    this.packet.setLength(0);
+                    retransmissions = 0;
+                    received = readPacket(requestCode, packet_number, retransmissions);
+                    start_time = this.requestTimer.getStart();
                 }
             }
 
+            if (connection_lost)
+                break;
+
             if (this.packet.length() != 0) {
-                // Add packet the response_time and the count of retransmissions to the packet List
-                this.echo_packets.add(this.packet.toString() + " response_time: " + response_time + " ms " +
+                // Add packet the response_time and the count of retransmissions to the results
+                addPacketLine(this.packet.toString() + " response_time: " + response_time + " ms " +
                         "retransmissions: " + retransmissions);
 
+                this.connection.getSessionLog().logEchoResult(packet_number, response_nanos, retransmissions,
+                        this.packet.toString());
+
+                this.packet_numbers.add(packet_number);
+                this.receive_times.add(receive_time);
+                this.response_times.add(response_time);
+                this.retransmission_counts.add(retransmissions);
+
+                this.steadyStateDetector.update(response_time);
+                response_series.add(response_time);
+
+                // Update the channel quality and show it every report_interval packets
+                this.bitErrorEstimator.addPacket(retransmissions);
+                this.window_bers.add(this.bitErrorEstimator.getWindowBitErrorRate());
+
+                if (this.report_interval > 0 && packet_number % this.report_interval == 0)
+                    System.out.println("Channel quality: " + this.bitErrorEstimator.getReport());
+
+                this.connection.getSpeedController().observe(SpeedController.ECHO_ERRORS);
+
                 // Reset packet line
                 this.packet.setLength(0);
             }
         }
 
+        System.out.println("Channel quality: " + this.bitErrorEstimator.getReport());
+        System.out.println("Request phases: " + this.requestTimer.getSummary());
+        this.steadyStateDetector.fillPhases(this.phases);
+
+        System.out.println("Steady state: " + this.steadyStateDetector.getReport());
+        System.out.println("Response time ms " + response_series.getSummary());
+
+        // Mark the start of the steady state at the end of the file
+        addPacketLine("Steady state: " + this.steadyStateDetector.getReport());
+
         // Save all received packets to a file
-        saveToFile(createFileName(Constants.ERR_ECHO_DATA_DIR.getStr(), ".txt"));
+        completeRun();
+    }
+
+    /**
+     * Adds a complete packet line to the results. The line is either kept in the {@link #echo_packets} List or emitted
+     * directly to the output sink if {@link #streaming} is enabled.
+     *
+     * @param line the packet line with the measurements
+     */
+    private void addPacketLine(String line) {
+        if (!this.streaming) {
+            this.echo_packets.add(line);
+            return;
+        }
+
+        OutputSink sink = this.connection.getOutputSink();
+
+        try {
+            if (this.stream_file_name == null) {
+                // The first line of the run. Create the file and write the request codes
+                this.stream_file_name = createFileName(Constants.ERR_ECHO_DATA_DIR.getStr(), ".txt");
+                sink.write(this.stream_file_name, this.connection.getSessionHeader());
+
+                // Emit the measurements with the packets so that a long run does not keep them in memory
+                this.measurements.open(sink, ColumnarExport.getBaseName(this.stream_file_name));
+            }
+
+            sink.write(this.stream_file_name, line + System.lineSeparator());
+        } catch (IOException e) {
+            System.out.println("Failed to write to file with exception: " + e.toString());
+        }
+    }
+
+    /**
+     * Completes the output of a run. The streamed file is finished or the packets of the {@link #echo_packets} List are
+     * saved to a new file. The {@link #measurements} are exported next to the file.
+     */
+    private void completeRun() {
+        String file_name;
+
+        if (!this.streaming) {
+            file_name = createFileName(Constants.ERR_ECHO_DATA_DIR.getStr(), ".txt");
+            saveToFile(file_name);
+        } else if (this.stream_file_name != null) {
+            file_name = this.stream_file_name;
+
+            try {
+                this.connection.getOutputSink().finish(this.stream_file_name);
+            } catch (IOException e) {
+                System.out.println("Failed to close file with exception: " + e.toString());
+            }
+
+            this.stream_file_name = null;
+        } else {
+            return;
+        }
+
+        // Export the measurements and the request phases with the same name as the text file
+        String base_name = ColumnarExport.getBaseName(file_name);
+        OutputSink sink = this.connection.getOutputSink();
+
+        try {
+            this.measurements.save(sink, base_name, this.connection.getSessionCodes());
+            this.requestTimer.save(sink, base_name + " phases", this.connection.getSessionCodes());
+        } catch (IOException e) {
+            System.out.println("Failed to export measurements with exception: " + e.toString());
+        }
+
+        this.measurements.clear();
+        this.requestTimer.clear();
     }
 
     /**
@@ -197,45 +470,34 @@ public class EchoErrors implements DataPackets {
      * response time and the number of retransmissions are saved to a new line.
      * <br>
      * Use the {@link #createFileName(String, String)} method to obtain the correct file name.
+     * <br>
+     * The lines are emitted to the {@link Structure.OutputSink} of the {@link #connection} that does the actual file
+     * writing.
      *
      * @param file_name The name of the file.
      */
     @Override
     public void saveToFile(String file_name) {
-        File file = new File(file_name);
+        OutputSink sink = this.connection.getOutputSink();
 
         try {
-            file.getParentFile().mkdirs();
-
-        } catch (SecurityException e) {
-            System.out.println("Failed to create file with exception: " + e.toString());
-        }
-
-        try (FileWriter writer = new FileWriter(file)) {
             // Write the request codes
-            writer.write(
-                    "####" + System.lineSeparator() +
-                            this.connection.getEcho_code().substring(0, 5) + " " +
-                            this.connection.getImage_code().substring(0, 5) + " " +
-                            this.connection.getImage_code_error().substring(0, 5) + " " +
-                            this.connection.getGps_code().substring(0, 5) + " " +
-                            this.connection.getAck_code().substring(0, 5) + " " +
-                            this.connection.getNack_code().substring(0, 5) +
-                            System.lineSeparator() + "###" + System.lineSeparator()
-            );
+            sink.write(file_name, this.connection.getSessionHeader());
 
             // For each entry in the packets List...
             for (String str : this.echo_packets) {
-                // ... write a new line
-                writer.write(str + System.lineSeparator());
+                // ... emit a new line
+                sink.write(file_name, str + System.lineSeparator());
             }
 
-            // Clear the list so that there are no double writes in multiple files
-            this.echo_packets.clear();
+            sink.finish(file_name);
 
         } catch (IOException e) {
             System.out.println("Failed to write to file with exception: " + e.toString());
         }
+
+        // Clear the list so that there are no double writes in multiple files
+        this.echo_packets.clear();
     }
 
     /**
@@ -246,7 +508,7 @@ public class EchoErrors implements DataPackets {
      *
      * @param directory      The directory the file will be saved.
      * @param file_extension The type of the file e.g.  .txt
-     * @return directory + name + date + file_extension
+     * @return directory + name + date + file tag + file_extension
      */
     @Override
     public String createFileName(String directory, String file_extension) {
@@ -261,57 +523,67 @@ public class EchoErrors implements DataPackets {
         // Get the today date using Calendar object.
         Date today = Calendar.getInstance().getTime();
 
-        return directory + name + df.format(today) + file_extension;
+        return directory + name + df.format(today) + this.connection.getFile_tag() + file_extension;
     }
 
     /**
      * The readPacket function is responsible for requesting and reading a packet from the server. The packet is saved in
-     * the {@link #packet} StringBuilder. The packet is guaranteed to be complete once this function returns anything
-     * except -1. In the case the return value is -1 the connection has probably timed out.
+     * the {@link #packet} StringBuilder. The packet is guaranteed to be complete once this function returns true. In
+     * the case the return value is false the connection has probably timed out.
      * <br>
-     * <b>NOTE: </b>The returned time must be correctly handled because in the case the connection drops or times out
-     * this is the only way to know.
+     * The phases of the request are recorded by the {@link #requestTimer}. After a successful call
+     * {@link RequestTimer#getStart()} and {@link RequestTimer#getLastByte()} give the start and the end of the request.
      *
-     * @param request_code the request code (ACK or NACK)
-     * @return the request starting time in nanoseconds or -1 if there was an error
+     * @param request_code  the request code (ACK or NACK)
+     * @param packet_number the number of the packet in the run
+     * @param attempt       0 for the ACK request and the number of the retransmission for the NACK requests
+     * @return true if the packet was received or false if there was an error
      */
-    private long readPacket(String request_code) {
+    private boolean readPacket(String request_code, int packet_number, int attempt) {
         int k;  // Each input byte
 
-        long start_time = System.currentTimeMillis();  // Take a time measurement before the packet is sent
+        this.requestTimer.start(packet_number, attempt);  // Take a time measurement before the packet is sent
 
         // Request the packet with the code provided as an argument
-        if (this.connection.getModem().write(request_code.getBytes())) {
+        if (this.connection.getTransport().write(request_code.getBytes())) {
+            this.requestTimer.writeReturned();
 
             while (true) {
                 try {
                     // Read the next byte
-                    k = this.connection.getModem().read();
+                    k = this.connection.getTransport().read();
 
                 } catch (Exception e) {
                     System.out.println("Exception thrown: " + e.toString());
 
                     // Reset packet line
                     this.packet.setLength(0);
-                    return -1;
+                    this.requestTimer.abort();
+                    return false;
                 }
 
                 // if -1 is read there was an error and the connection timed out
                 if (k == -1) {
                     System.out.println("Connection timed out.");  // DEBUG comment??
-                    return -1;
+                    this.requestTimer.abort();
+                    return false;
                 }
 
+                this.requestTimer.byteReceived();
+
                 // Append to the packet string
                 this.packet.append((char) k);
 
                 // Detect end of echo packet
                 if (isTransmissionOver()) {
-                    return start_time;
+                    this.requestTimer.complete();
+                    return true;
                 }
             }
         }
-        return -1;
+
+        this.requestTimer.abort();
+        return false;
     }
 
     /**
@@ -320,7 +592,7 @@ public class EchoErrors implements DataPackets {
      * @param data_packet the received packet
      * @return true is the checksum matches false if not
      */
-    private boolean isCheckSumOk(String data_packet) {
+    static boolean isCheckSumOk(String data_packet) {
         // Isolate the data and the check sum
         String message = data_packet.split("<")[1].split(" PSTOP")[0];
 
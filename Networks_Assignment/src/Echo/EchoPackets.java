@@ -2,15 +2,23 @@ package Echo;
 
 import Structure.DataPackets;
 import Structure.Constants;
+import Structure.ColumnarExport;
 import Structure.Connection;
-
-import java.io.*;
+import Structure.OutputSink;
+import Structure.ReconnectPolicy;
+import Structure.RequestTimer;
+import Structure.RunLimit;
+import Structure.SpeedController;
+import Structure.SteadyStateDetector;
+
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * <h1>EchoPackets Class.</h1>
@@ -37,7 +45,8 @@ public class EchoPackets implements DataPackets {
      */
     private final List<String> echo_packets;  // List to save all the packets
     /**
-     * The number of packets to be requested
+     * The maximum number of packets of the default run or 0 for no maximum. The default run ends after 5 minutes or
+     * after this number of packets, whichever comes first.
      * {@link #getRequest_packet_number()}
      * {@link #setRequest_packet_number(int)}
      */
@@ -47,6 +56,60 @@ public class EchoPackets implements DataPackets {
      */
     private final StringBuilder packet = new StringBuilder();
 
+    /**
+     * Decides when {@link #getPackets()} stops requesting packets. By default the run lasts 5 minutes or
+     * {@link #request_packet_number} packets.
+     */
+    private RunLimit runLimit;
+
+    /**
+     * If true every packet line is emitted to the output sink as soon as it is received instead of being kept in the
+     * {@link #echo_packets} List until the end of the run. Used for soak runs so that the memory stays bounded.
+     */
+    private boolean streaming = false;
+
+    /**
+     * The file the packet lines are emitted to while streaming
+     */
+    private String stream_file_name = null;
+
+    /**
+     * The measurements of the run. Exported next to the text file as binary columns for the analysis scripts.
+     */
+    private final ColumnarExport measurements = new ColumnarExport();
+    private final ColumnarExport.Column packet_numbers =
+            measurements.addColumn("packet_number", ColumnarExport.Type.INT32);
+    private final ColumnarExport.Column receive_times =
+            measurements.addColumn("receive_time_ms", ColumnarExport.Type.INT64);
+    private final ColumnarExport.Column response_times =
+            measurements.addColumn("response_time_ms", ColumnarExport.Type.INT32);
+
+    private final ColumnarExport.Column corrected_response_times =
+            measurements.addColumn("corrected_response_time_ms", ColumnarExport.Type.INT32);
+    private final ColumnarExport.Column phases =
+            measurements.addColumn("phase", ColumnarExport.Type.INT32);
+
+    /**
+     * Excludes the warm up packets and finds where the response times become steady
+     */
+    private SteadyStateDetector steadyStateDetector = new SteadyStateDetector(10, 20);
+
+    /**
+     * Times the phases of every request. Exported next to the results.
+     */
+    private final RequestTimer requestTimer = new RequestTimer();
+
+    /**
+     * The requests per second of the open loop mode. 0 for the default closed loop mode.
+     * <br>
+     * In the closed loop mode the next packet is requested as soon as the previous one is received, so a slow response
+     * also delays all the requests that would have been sent during it and they are never measured (coordinated
+     * omission). In the open loop mode request i is scheduled at start + i / rate. If a response arrives late the
+     * next request is sent immediately and its corrected response time is measured from the time it was scheduled,
+     * so the stall is counted in the corrected response time of every request it delayed.
+     */
+    private double open_loop_rate = 0;
+
 
     /**
      * Constructor
@@ -57,6 +120,7 @@ public class EchoPackets implements DataPackets {
     public EchoPackets(Connection connection, int request_packet_number) {
         this.connection = connection;
         this.request_packet_number = request_packet_number;
+        this.runLimit = new RunLimit(RunLimit.DEFAULT_DURATION, request_packet_number);
 
         // initialize the echo packets list
         this.echo_packets = new ArrayList<>();
@@ -82,18 +146,86 @@ public class EchoPackets implements DataPackets {
     }
 
     /**
-     * Sets the number of packets to be requested
+     * Sets the number of packets to be requested. The duration of the current {@link #runLimit} is kept.
      *
-     * @param request_packet_number int number of packets
+     * @param request_packet_number int number of packets or 0 for no maximum
      */
     public void setRequest_packet_number(int request_packet_number) {
         this.request_packet_number = request_packet_number;
+        this.runLimit = new RunLimit(this.runLimit.getDuration(), request_packet_number);
     }
 
+    /**
+     * Sets the limit of the runs
+     *
+     * @param runLimit {@link #runLimit}
+     */
+    public void setRunLimit(RunLimit runLimit) {
+        this.runLimit = runLimit;
+    }
 
     /**
-     * Receives large number of echo packets from the server. The function runs a loop for 5 minutes. The total number
-     * of packets received is determined by the speed of the connection. A slow speed is recommended (below 10kbps).
+     * Enables or disables streaming of the packet lines
+     *
+     * @param streaming {@link #streaming}
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Sets the warm up and the steady state detection of the runs
+     *
+     * @param steadyStateDetector {@link #steadyStateDetector}
+     */
+    public void setSteadyStateDetector(SteadyStateDetector steadyStateDetector) {
+        this.steadyStateDetector = steadyStateDetector;
+    }
+
+    /**
+     * Enables the open loop mode
+     *
+     * @param open_loop_rate {@link #open_loop_rate} or 0 for the closed loop mode
+     */
+    public void setOpen_loop_rate(double open_loop_rate) {
+        this.open_loop_rate = open_loop_rate;
+    }
+
+    /**
+     * Gets the line under construction. Package private for the benchmarks of the end detection.
+     *
+     * @return {@link #packet}
+     */
+    StringBuilder getPacket() {
+        return packet;
+    }
+
+    /**
+     * Gets the timings of the requests of the current run
+     *
+     * @return {@link #requestTimer}
+     */
+    public RequestTimer getRequestTimer() {
+        return requestTimer;
+    }
+
+    /**
+     * Configures a soak run: the run lasts until one of the limits is reached and the packet lines are streamed to the
+     * output sink. Use a {@link Structure.RollingOutputSink} as the output of the connection to rotate the files.
+     *
+     * @param duration the duration of the run in milliseconds or 0 for no limit
+     * @param packets  the number of packets or 0 for no limit
+     */
+    public void setSoakMode(long duration, long packets) {
+        this.runLimit = new RunLimit(duration, packets);
+        this.streaming = true;
+    }
+
+
+    /**
+     * Receives large number of echo packets from the server. The function runs a loop until the {@link #runLimit} is
+     * reached (5 minutes by default). The total number of packets received is determined by the speed of the
+     * connection. A slow speed is recommended (below 10kbps).
      * <br>
      * The packets have the form:
      * <p>
@@ -108,25 +240,54 @@ public class EchoPackets implements DataPackets {
     public void getPackets() {
         int data_byte;  // The read byte from the input stream
         int response_time = -1;  // The response_time of each request
-        long start_time;  // The starting time of the request
-        long end_time;  // The time all the data for a certain request are completely received
-
-        long time = System.currentTimeMillis();  // The time used to measure the duration of the complete request
-
-        System.out.println("Receiving echo packets ...");  // DEBUG comment??
+        long response_nanos = 0;  // The response time of each request in nanoseconds
+        long end_time = 0;  // The time all the data for a certain request are completely received
+
+        int packet_count = 0;  // The packets received in this run
+
+        // Open loop schedule
+        long interval = this.open_loop_rate > 0 ? Math.round(1e9 / this.open_loop_rate) : 0;
+        long request_count = 0;  // The requests scheduled in this run
+        long intended_time = 0;  // The time the current request was scheduled
+        long late_requests = 0;  // The requests sent more than one interval after their scheduled time
+        boolean connection_lost = false;  // The connection could not be recovered
+
+        System.out.println("Receiving echo packets (" + this.runLimit + (interval > 0 ? ", open loop " +
+                this.open_loop_rate + " requests/s" : "") + ") ...");  // DEBUG comment??
+
+        // Request echo packets until the limit of the run is reached
+        this.connection.getSpeedController().apply(SpeedController.ECHO);
+        this.steadyStateDetector.reset();
+        SteadyStateDetector.Series response_series = this.steadyStateDetector.newSeries();
+        SteadyStateDetector.Series corrected_series = this.steadyStateDetector.newSeries();
+        this.requestTimer.setCapacity(RequestTimer.getCapacity(this.runLimit));
+        this.runLimit.start();
+        long schedule_start = System.nanoTime();
+
+        while (!this.runLimit.isReached(packet_count)) {
+            if (interval > 0) {
+                // Wait for the scheduled time of the request. If the schedule is behind send immediately
+                intended_time = schedule_start + request_count * interval;
+
+                long delay;
+                while ((delay = intended_time - System.nanoTime()) > 0)
+                    LockSupport.parkNanos(delay);
+
+                if (-delay > interval)
+                    late_requests++;
+            }
 
-        // Request echo_packet based on the default_packet_number
-        //for (int i = 0; i < this.request_packet_number; i++) {  // DEBUG comment requests specific amount of packets
-        while ((System.currentTimeMillis() - time) < 300000) {  // comment if you uncomment the above line
-            start_time = System.currentTimeMillis();  // Take a time measurement before the request is sent
+            request_count++;
+            this.requestTimer.start(packet_count + 1, 0);  // Take a time measurement before the request is sent
 
             // Request the packet
-            if (this.connection.getModem().write(this.connection.getEcho_code().getBytes())) {
+            if (this.connection.getTransport().write(this.connection.getEcho_code().getBytes())) {
+                this.requestTimer.writeReturned();
 
                 while (true) {
                     try {
                         // Read the next byte
-                        data_byte = this.connection.getModem().read();
+                        data_byte = this.connection.getTransport().read();
 
                     } catch (Exception e) {
                         // If any exception is thrown here we exit the program because something has gone wrong and there
@@ -141,30 +302,40 @@ public class EchoPackets implements DataPackets {
                         // if -1 is read there was an error and the connection timed out or dropped unexpectedly
                         System.out.println("Connection timed out. Reconnecting...");  // DEBUG comment??
 
+                        this.requestTimer.abort();
+
                         // Try to reconnect with the server
-                        if (this.connection.reconnect(3500, 10000)) {
+                        ReconnectPolicy.Status status = this.connection.recover();
+
+                        if (status == ReconnectPolicy.Status.RECOVERED) {
                             // Drop the incomplete packet
                             this.packet.setLength(0);
 
                             System.out.println("Reconnected successfully. Continuing...");
                             break;
                         } else {
-                            System.out.println("Reconnection failed. Check if the codes have expired!!");
-                            return;
+                            System.out.println("Reconnection " + status + ". Check if the codes have expired!! " +
+                                    "Saving the packets received so far...");
+
+                            // Drop the incomplete packet so that it does not start the next run
+                            this.packet.setLength(0);
+                            connection_lost = true;
+                            break;
                         }
                     }
 
+                    this.requestTimer.byteReceived();
+
                     // Append to the packet string
                     this.packet.append((char) data_byte);
 
                     // Detect end of echo packet
                     if (isTransmissionOver()) {
                         // If the packet is complete we take a second time measurement ...
+                        response_nanos = this.requestTimer.complete();
                         end_time = System.currentTimeMillis();
                         // ...and calculate the time that took the packet to arrive after the request was sent in ms.
-                        long duration = (end_time - start_time);
-
-                        response_time = Math.round(duration);
+                        response_time = (int) Math.round(response_nanos / 1e6);
 
                         // System.out.println(response_time + " ms"); // DEBUG comment
                         break;
@@ -173,9 +344,33 @@ public class EchoPackets implements DataPackets {
 
                 //System.out.println("Packet received: " + packet.toString());  // DEBUG comment
 
+                if (connection_lost)
+                    break;
+
                 if (this.packet.length() != 0) {
-                    // Add packet and the corresponding response_time to the packet List
-                    this.echo_packets.add(this.packet.toString() + " response_time: " + response_time + " ms");
+                    packet_count++;
+
+                    // Add packet and the corresponding response_time to the results
+                    addPacketLine(this.packet.toString() + " response_time: " + response_time + " ms");
+
+                    this.connection.getSessionLog().logEchoResult(packet_count, response_nanos, 0,
+                            this.packet.toString());
+
+                    // The corrected response time is measured from the scheduled time of the request
+                    long corrected_nanos = interval > 0 ?
+                            this.requestTimer.getLastByte() - intended_time : response_nanos;
+                    int corrected_time = (int) Math.round(corrected_nanos / 1e6);
+
+                    this.steadyStateDetector.update(corrected_time);
+                    response_series.add(response_time);
+                    corrected_series.add(corrected_time);
+
+                    this.packet_numbers.add(packet_count);
+                    this.receive_times.add(end_time);
+                    this.response_times.add(response_time);
+                    this.corrected_response_times.add(corrected_time);
+
+                    this.connection.getSpeedController().observe(SpeedController.ECHO);
 
                     // Reset packet line
                     this.packet.setLength(0);
@@ -183,13 +378,96 @@ public class EchoPackets implements DataPackets {
 
             } else {
                 System.out.println("Unrecoverable exception occurred. Total echo packets received before error: " +
-                        this.echo_packets.size() + ". Terminating...");
+                        packet_count + ". Terminating...");
                 break;
             }
         }
 
+        System.out.println("Request phases: " + this.requestTimer.getSummary());
+        this.steadyStateDetector.fillPhases(this.phases);
+
+        System.out.println("Steady state: " + this.steadyStateDetector.getReport());
+        System.out.println("Response time ms " + response_series.getSummary());
+
+        if (interval > 0) {
+            System.out.println("Corrected response time ms " + corrected_series.getSummary());
+            System.out.println("Late requests: " + late_requests + " of " + request_count);
+        }
+
+        // Mark the start of the steady state at the end of the file
+        addPacketLine("Steady state: " + this.steadyStateDetector.getReport());
+
         // Save all received packets to a file
-        saveToFile(createFileName(Constants.ECHO_DATA_DIR.getStr(), ".txt"));
+        completeRun();
+    }
+
+    /**
+     * Adds a complete packet line to the results. The line is either kept in the {@link #echo_packets} List or emitted
+     * directly to the output sink if {@link #streaming} is enabled.
+     *
+     * @param line the packet line with the measurements
+     */
+    private void addPacketLine(String line) {
+        if (!this.streaming) {
+            this.echo_packets.add(line);
+            return;
+        }
+
+        OutputSink sink = this.connection.getOutputSink();
+
+        try {
+            if (this.stream_file_name == null) {
+                // The first line of the run. Create the file and write the request codes
+                this.stream_file_name = createFileName(Constants.ECHO_DATA_DIR.getStr(), ".txt");
+                sink.write(this.stream_file_name, this.connection.getSessionHeader());
+
+                // Emit the measurements with the packets so that a long run does not keep them in memory
+                this.measurements.open(sink, ColumnarExport.getBaseName(this.stream_file_name));
+            }
+
+            sink.write(this.stream_file_name, line + System.lineSeparator());
+        } catch (IOException e) {
+            System.out.println("Failed to write to file with exception: " + e.toString());
+        }
+    }
+
+    /**
+     * Completes the output of a run. The streamed file is finished or the packets of the {@link #echo_packets} List are
+     * saved to a new file. The {@link #measurements} are exported next to the file.
+     */
+    private void completeRun() {
+        String file_name;
+
+        if (!this.streaming) {
+            file_name = createFileName(Constants.ECHO_DATA_DIR.getStr(), ".txt");
+            saveToFile(file_name);
+        } else if (this.stream_file_name != null) {
+            file_name = this.stream_file_name;
+
+            try {
+                this.connection.getOutputSink().finish(this.stream_file_name);
+            } catch (IOException e) {
+                System.out.println("Failed to close file with exception: " + e.toString());
+            }
+
+            this.stream_file_name = null;
+        } else {
+            return;
+        }
+
+        // Export the measurements and the request phases with the same name as the text file
+        String base_name = ColumnarExport.getBaseName(file_name);
+        OutputSink sink = this.connection.getOutputSink();
+
+        try {
+            this.measurements.save(sink, base_name, this.connection.getSessionCodes());
+            this.requestTimer.save(sink, base_name + " phases", this.connection.getSessionCodes());
+        } catch (IOException e) {
+            System.out.println("Failed to export measurements with exception: " + e.toString());
+        }
+
+        this.measurements.clear();
+        this.requestTimer.clear();
     }
 
     /**
@@ -210,48 +488,34 @@ public class EchoPackets implements DataPackets {
      * for later identification. Every echo packet and the corresponding latency are saved to a new line.
      * <br>
      * Use the {@link #createFileName(String, String)} method to obtain the correct file name.
+     * <br>
+     * The lines are emitted to the {@link Structure.OutputSink} of the {@link #connection} that does the actual file
+     * writing.
      *
      * @param file_name The name of the file.
      */
     @Override
     public void saveToFile(String file_name) {
-        File file = new File(file_name);
+        OutputSink sink = this.connection.getOutputSink();
 
         try {
-            file.getParentFile().mkdirs();
-        } catch (SecurityException e) {
-            System.out.println("Failed to create file with exception: " + e.toString());
-            return;
-        }
-
-        try (FileWriter writer = new FileWriter(file)) {
-
             // Write the request codes
-            writer.write(
-                    "####" + System.lineSeparator() +
-                            this.connection.getEcho_code().substring(0, 5) + " " +
-                            this.connection.getImage_code().substring(0, 5) + " " +
-                            this.connection.getImage_code_error().substring(0, 5) + " " +
-                            this.connection.getGps_code().substring(0, 5) + " " +
-                            this.connection.getAck_code().substring(0, 5) + " " +
-                            this.connection.getNack_code().substring(0, 5) +
-                            System.lineSeparator() + "###" + System.lineSeparator()
-            );
+            sink.write(file_name, this.connection.getSessionHeader());
 
             // For each entry in the packets List...
             for (String str : this.echo_packets) {
-                // ... write a new line
-                writer.write(str + System.lineSeparator());
+                // ... emit a new line
+                sink.write(file_name, str + System.lineSeparator());
             }
 
-            writer.close();
-
-            // Clear the list so that there are no double writes in multiple files
-            this.echo_packets.clear();
+            sink.finish(file_name);
 
         } catch (IOException e) {
             System.out.println("Failed to write to file with exception: " + e.toString());
         }
+
+        // Clear the list so that there are no double writes in multiple files
+        this.echo_packets.clear();
     }
 
     /**
@@ -262,7 +526,7 @@ public class EchoPackets implements DataPackets {
      *
      * @param directory      The directory the file will be saved.
      * @param file_extension The type of the file e.g.  .txt
-     * @return directory + name + date + file_extension
+     * @return directory + name + date + file tag + file_extension
      */
     @Override
     public String createFileName(String directory, String file_extension) {
@@ -277,6 +541,6 @@ public class EchoPackets implements DataPackets {
         // Get the today date using Calendar object.
         Date today = Calendar.getInstance().getTime();
 
-        return directory + name + df.format(today) + file_extension;
+        return directory + name + df.format(today) + this.connection.getFile_tag() + file_extension;
     }
 }
@@ -0,0 +1,615 @@
+package GPS;
+
+import Structure.Constants;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * <h1>GPSIndex Class</h1>
+ * In memory spatial and temporal index over GPS points. The index answers bounding box, radius and time range queries
+ * without scanning and parsing the saved route files again.
+ * <br>
+ * The points are stored in primitive arrays (one array per column) so that millions of points can be kept without an
+ * object per point. Two indexes are built over the points:
+ * <ul>
+ *     <li>A fixed size grid (geohash like cells of {@link #cell_size} degrees). The point ids are sorted by cell so
+ *     every cell is a continuous range of the {@link #cell_points} array.</li>
+ *     <li>A time index with the point ids sorted by time. Time range queries are answered with two binary searches.</li>
+ * </ul>
+ * Points can be added at any time. The indexes are rebuilt lazily by the first query after an addition.
+ * <br>
+ * The index can be saved to and loaded from a binary file with {@link #save(String)} and {@link #load(String)}. The
+ * file is loaded through a memory mapped buffer.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class GPSIndex {
+    /**
+     * Identifies the binary index files
+     */
+    private static final int FILE_MAGIC = 0x47505349;  // "GPSI"
+
+    /**
+     * The version of the binary file format
+     */
+    private static final int FILE_VERSION = 1;
+
+    /**
+     * The bytes of each point in the binary file (time, latitude, longitude)
+     */
+    private static final int POINT_BYTES = 24;
+
+    /**
+     * Default size of the grid cells in degrees (about 1.1 km in latitude)
+     */
+    public static final double DEFAULT_CELL_SIZE = 0.01;
+
+    /**
+     * The size of the grid cells in degrees
+     */
+    private final double cell_size;
+
+    /**
+     * The number of grid columns needed to cover all the longitudes
+     */
+    private final int grid_columns;
+
+    // Point columns
+    private long[] times = new long[1024];
+    private double[] latitudes = new double[1024];
+    private double[] longitudes = new double[1024];
+
+    /**
+     * The number of points in the index
+     */
+    private int size = 0;
+
+    /**
+     * The sorted distinct cells that contain at least one point
+     */
+    private int[] cells = new int[0];
+
+    /**
+     * cell_offsets[i] is the first position of cells[i] in {@link #cell_points}. Has one extra entry at the end.
+     */
+    private int[] cell_offsets = new int[1];
+
+    /**
+     * The point ids sorted by cell
+     */
+    private int[] cell_points = new int[0];
+
+    /**
+     * The point ids sorted by time
+     */
+    private int[] time_points = new int[0];
+
+    /**
+     * The times of {@link #time_points} used for the binary searches
+     */
+    private long[] sorted_times = new long[0];
+
+    /**
+     * True if points were added after the last index build
+     */
+    private boolean dirty = false;
+
+
+    /**
+     * Default constructor. Uses the {@link #DEFAULT_CELL_SIZE}.
+     */
+    public GPSIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param cell_size {@link #cell_size}
+     */
+    public GPSIndex(double cell_size) {
+        if (cell_size <= 0 || 180 / cell_size * 360 / cell_size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid cell size: " + cell_size);
+
+        this.cell_size = cell_size;
+        this.grid_columns = (int) Math.ceil(360 / cell_size) + 1;
+    }
+
+    /**
+     * Gets the number of points in the index
+     *
+     * @return the number of points
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTime(int id) {
+        return times[id];
+    }
+
+    public double getLatitude(int id) {
+        return latitudes[id];
+    }
+
+    public double getLongitude(int id) {
+        return longitudes[id];
+    }
+
+    /**
+     * Gets the point with the specified id as a {@link GPS.GPSPoint} object
+     *
+     * @param id the id returned by one of the queries
+     * @return the point
+     */
+    public GPSPoint getPoint(int id) {
+        return new GPSPoint(times[id], latitudes[id], longitudes[id]);
+    }
+
+    /**
+     * Adds a point to the index
+     *
+     * @param time      UTC time of the point in seconds
+     * @param latitude  latitude in decimal degrees
+     * @param longitude longitude in decimal degrees
+     * @return the id of the point
+     */
+    public int add(long time, double latitude, double longitude) {
+        if (this.size == this.times.length) {
+            int capacity = this.size * 2;
+            this.times = Arrays.copyOf(this.times, capacity);
+            this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+            this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+        }
+
+        this.times[this.size] = time;
+        this.latitudes[this.size] = latitude;
+        this.longitudes[this.size] = longitude;
+        this.dirty = true;
+
+        return this.size++;
+    }
+
+    /**
+     * Adds a point to the index
+     *
+     * @param point the point. Null points are ignored
+     */
+    public void add(GPSPoint point) {
+        if (point != null)
+            add(point.getTime(), point.getLatitude(), point.getLongitude());
+    }
+
+    /**
+     * Adds a GPGGA point to the index
+     *
+     * @param gpgga     the GPGGA line
+     * @param epoch_day the day of the fix in days since the epoch or 0 if it is unknown
+     */
+    public void add(gpsGPGGA gpgga, long epoch_day) {
+        add(GPSPoint.fromGPGGA(gpgga, epoch_day));
+    }
+
+    /**
+     * Adds a GPRMC point to the index
+     *
+     * @param gprmc the GPRMC line
+     */
+    public void add(gpsGPRMC gprmc) {
+        add(GPSPoint.fromGPRMC(gprmc));
+    }
+
+    /**
+     * Adds all the GPGGA points of a file saved by {@link GPS.GPSPackets#saveToFile(String)}. The GPGGA lines do not
+     * contain the date so the date of the first GPRMC line of the file is used.
+     *
+     * @param file_name the saved route file
+     * @return the number of points added
+     * @throws IOException if the file can not be read
+     */
+    public int addSavedFile(String file_name) throws IOException {
+        List<gpsGPGGA> gpgga_lines = new ArrayList<>();
+        long epoch_day = 0;
+        boolean date_found = false;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file_name))) {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                // A malformed line is skipped so the rest of the file is still indexed
+                try {
+                    if (line.startsWith(Constants.GPGGA.getStr())) {
+                        gpgga_lines.add(new gpsGPGGA(line));
+                    } else if (!date_found && line.startsWith(Constants.GPRMC.getStr())) {
+                        epoch_day = GPSPoint.parseEpochDay(new gpsGPRMC(line).date);
+                        date_found = true;
+                    }
+                } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                    System.out.println("Failed to parse line of " + file_name + " with exception: " + e.toString());
+                }
+            }
+        }
+
+        int count = 0;
+        for (gpsGPGGA gpgga : gpgga_lines) {
+            GPSPoint point;
+
+            try {
+                point = GPSPoint.fromGPGGA(gpgga, epoch_day);
+            } catch (NumberFormatException | IndexOutOfBoundsException e) {
+                System.out.println("Failed to parse line of " + file_name + " with exception: " + e.toString());
+                continue;
+            }
+
+            if (point != null) {
+                add(point);
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Adds all the route files found in a directory. Only the .txt files are read.
+     *
+     * @param directory the directory e.g. {@link Structure.Constants#GPS_DATA_DIR}
+     * @return the number of points added
+     * @throws IOException if a file can not be read
+     */
+    public int addSavedDirectory(String directory) throws IOException {
+        File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".txt"));
+        int count = 0;
+
+        if (files != null) {
+            for (File file : files)
+                count += addSavedFile(file.getPath());
+        }
+
+        return count;
+    }
+
+    /**
+     * Finds all the points inside a bounding box
+     *
+     * @param min_lat minimum latitude
+     * @param min_lon minimum longitude
+     * @param max_lat maximum latitude
+     * @param max_lon maximum longitude
+     * @return the ids of the points found
+     */
+    public int[] queryBox(double min_lat, double min_lon, double max_lat, double max_lon) {
+        build();
+
+        IdList result = new IdList();
+
+        int min_row = row(min_lat);
+        int max_row = row(max_lat);
+        int min_col = column(min_lon);
+        int max_col = column(max_lon);
+
+        long box_cells = (long) (max_row - min_row + 1) * (max_col - min_col + 1);
+
+        if (box_cells > this.cells.length) {
+            // The box covers more cells than the cells with points so check the occupied cells instead
+            for (int i = 0; i < this.cells.length; i++) {
+                int row = this.cells[i] / this.grid_columns;
+                int col = this.cells[i] % this.grid_columns;
+
+                if (row >= min_row && row <= max_row && col >= min_col && col <= max_col)
+                    collect(i, min_lat, min_lon, max_lat, max_lon, result);
+            }
+        } else {
+            for (int row = min_row; row <= max_row; row++) {
+                for (int col = min_col; col <= max_col; col++) {
+                    int i = Arrays.binarySearch(this.cells, row * this.grid_columns + col);
+
+                    if (i >= 0)
+                        collect(i, min_lat, min_lon, max_lat, max_lon, result);
+                }
+            }
+        }
+
+        return result.toArray();
+    }
+
+    /**
+     * Finds all the points within a distance from a center point. A circle that crosses the ±180° meridian is searched
+     * as two boxes, one on each side of the meridian.
+     *
+     * @param latitude  latitude of the center
+     * @param longitude longitude of the center
+     * @param radius    the radius in meters
+     * @return the ids of the points found
+     */
+    public int[] queryRadius(double latitude, double longitude, double radius) {
+        // Degrees of latitude and longitude that correspond to the radius
+        double d_lat = Math.toDegrees(radius / GPSPoint.EARTH_RADIUS);
+        double cos = Math.cos(Math.toRadians(latitude));
+        double d_lon = cos < 1e-9 ? 180 : Math.min(180, d_lat / cos);
+
+        double min_lon = longitude - d_lon;
+        double max_lon = longitude + d_lon;
+
+        double min_lat = latitude - d_lat;
+        double max_lat = latitude + d_lat;
+
+        IdList result = new IdList();
+
+        if (d_lon >= 180) {
+            // The circle covers all the longitudes
+            filterRadius(queryBox(min_lat, -180, max_lat, 180), latitude, longitude, radius, result);
+        } else if (min_lon < -180) {
+            filterRadius(queryBox(min_lat, -180, max_lat, max_lon), latitude, longitude, radius, result);
+            filterRadius(queryBox(min_lat, min_lon + 360, max_lat, 180), latitude, longitude, radius, result);
+        } else if (max_lon > 180) {
+            filterRadius(queryBox(min_lat, min_lon, max_lat, 180), latitude, longitude, radius, result);
+            filterRadius(queryBox(min_lat, -180, max_lat, max_lon - 360), latitude, longitude, radius, result);
+        } else {
+            filterRadius(queryBox(min_lat, min_lon, max_lat, max_lon), latitude, longitude, radius, result);
+        }
+
+        return result.toArray();
+    }
+
+    /**
+     * Keeps the candidates of a radius query that are within the radius
+     */
+    private void filterRadius(int[] candidates, double latitude, double longitude, double radius, IdList result) {
+        for (int id : candidates) {
+            if (GPSPoint.haversine(latitude, longitude, this.latitudes[id], this.longitudes[id]) <= radius)
+                result.add(id);
+        }
+    }
+
+    /**
+     * Finds all the points with time in [from, to]. The ids are returned in time order.
+     *
+     * @param from the start of the window in seconds (inclusive)
+     * @param to   the end of the window in seconds (inclusive)
+     * @return the ids of the points found
+     */
+    public int[] queryTime(long from, long to) {
+        build();
+
+        if (from > to)
+            return new int[0];
+
+        int start = lowerBound(this.sorted_times, from);
+        int end = lowerBound(this.sorted_times, to + 1);
+
+        return Arrays.copyOfRange(this.time_points, start, end);
+    }
+
+    /**
+     * Saves the index to a binary file. Only the points are saved, the grid and the time index are rebuilt when the
+     * file is loaded.
+     *
+     * @param file_name the name of the file
+     * @throws IOException if the file can not be written
+     */
+    public void save(String file_name) throws IOException {
+        File file = new File(file_name);
+
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+
+        try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+            buffer.putInt(FILE_MAGIC);
+            buffer.putInt(FILE_VERSION);
+            buffer.putDouble(this.cell_size);
+            buffer.putInt(this.size);
+
+            for (int i = 0; i < this.size; i++) {
+                if (buffer.remaining() < POINT_BYTES)
+                    flush(channel, buffer);
+
+                buffer.putLong(this.times[i]);
+                buffer.putDouble(this.latitudes[i]);
+                buffer.putDouble(this.longitudes[i]);
+            }
+
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Loads an index from a file created by {@link #save(String)}
+     *
+     * @param file_name the name of the file
+     * @return the loaded index
+     * @throws IOException if the file can not be read or it is not an index file
+     */
+    public static GPSIndex load(String file_name) throws IOException {
+        try (FileChannel channel = new FileInputStream(file_name).getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.remaining() < 20 || buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION)
+                throw new IOException("Not a GPS index file: " + file_name);
+
+            GPSIndex index = new GPSIndex(buffer.getDouble());
+            int size = buffer.getInt();
+
+            if (buffer.remaining() < (long) size * POINT_BYTES)
+                throw new IOException("Truncated GPS index file: " + file_name);
+
+            index.times = new long[Math.max(size, 1)];
+            index.latitudes = new double[Math.max(size, 1)];
+            index.longitudes = new double[Math.max(size, 1)];
+
+            for (int i = 0; i < size; i++) {
+                index.times[i] = buffer.getLong();
+                index.latitudes[i] = buffer.getDouble();
+                index.longitudes[i] = buffer.getDouble();
+            }
+
+            index.size = size;
+            index.dirty = true;
+
+            return index;
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the channel and clears the buffer
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    /**
+     * Rebuilds the grid and the time index if points were added since the last build.
+     * <br>
+     * Both indexes are built by packing the sort key and the point id in a single long and sorting the primitive array,
+     * so no objects are created per point.
+     */
+    public void build() {
+        if (!this.dirty)
+            return;
+
+        long[] keys = new long[this.size];
+
+        // Grid: key = cell << 32 | id
+        for (int i = 0; i < this.size; i++) {
+            long cell = (long) row(this.latitudes[i]) * this.grid_columns + column(this.longitudes[i]);
+            keys[i] = cell << 32 | i;
+        }
+
+        Arrays.sort(keys);
+
+        this.cell_points = new int[this.size];
+        IdList distinct = new IdList();
+        IdList offsets = new IdList();
+
+        for (int i = 0; i < this.size; i++) {
+            int cell = (int) (keys[i] >>> 32);
+
+            if (distinct.size == 0 || distinct.data[distinct.size - 1] != cell) {
+                distinct.add(cell);
+                offsets.add(i);
+            }
+
+            this.cell_points[i] = (int) keys[i];
+        }
+
+        offsets.add(this.size);
+        this.cells = distinct.toArray();
+        this.cell_offsets = offsets.toArray();
+
+        // Time index: points are sorted by time and then by id
+        this.time_points = new int[this.size];
+        this.sorted_times = new long[this.size];
+
+        long min_time = Long.MAX_VALUE;
+        for (int i = 0; i < this.size; i++)
+            min_time = Math.min(min_time, this.times[i]);
+
+        boolean packed = true;
+        for (int i = 0; i < this.size && packed; i++)
+            packed = this.times[i] - min_time < Integer.MAX_VALUE;
+
+        if (packed) {
+            // key = (time - min_time) << 32 | id
+            for (int i = 0; i < this.size; i++)
+                keys[i] = (this.times[i] - min_time) << 32 | i;
+
+            Arrays.sort(keys);
+
+            for (int i = 0; i < this.size; i++) {
+                this.time_points[i] = (int) keys[i];
+                this.sorted_times[i] = this.times[this.time_points[i]];
+            }
+        } else {
+            // The time span does not fit in the packed key so sort the boxed ids instead
+            Integer[] ids = new Integer[this.size];
+            for (int i = 0; i < this.size; i++)
+                ids[i] = i;
+
+            Arrays.sort(ids, (a, b) -> a.equals(b) ? 0 :
+                    this.times[a] != this.times[b] ? Long.compare(this.times[a], this.times[b]) : Integer.compare(a, b));
+
+            for (int i = 0; i < this.size; i++) {
+                this.time_points[i] = ids[i];
+                this.sorted_times[i] = this.times[ids[i]];
+            }
+        }
+
+        this.dirty = false;
+    }
+
+    /**
+     * Adds to the result all the points of the i-th occupied cell that are inside the bounding box
+     */
+    private void collect(int i, double min_lat, double min_lon, double max_lat, double max_lon, IdList result) {
+        for (int p = this.cell_offsets[i]; p < this.cell_offsets[i + 1]; p++) {
+            int id = this.cell_points[p];
+            double lat = this.latitudes[id];
+            double lon = this.longitudes[id];
+
+            if (lat >= min_lat && lat <= max_lat && lon >= min_lon && lon <= max_lon)
+                result.add(id);
+        }
+    }
+
+    private int row(double latitude) {
+        return (int) ((Math.max(-90, Math.min(90, latitude)) + 90) / this.cell_size);
+    }
+
+    private int column(double longitude) {
+        return (int) ((Math.max(-180, Math.min(180, longitude)) + 180) / this.cell_size);
+    }
+
+    /**
+     * Finds the first position of the array with value greater or equal to the key
+     */
+    private static int lowerBound(long[] array, long key) {
+        int low = 0;
+        int high = array.length;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+
+            if (array[mid] < key)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        return low;
+    }
+
+    /**
+     * Growable int array used to collect the query results without boxing
+     */
+    private static class IdList {
+        int[] data = new int[16];
+        int size = 0;
+
+        void add(int value) {
+            if (this.size == this.data.length)
+                this.data = Arrays.copyOf(this.data, this.size * 2);
+
+            this.data[this.size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(this.data, this.size);
+        }
+    }
+}
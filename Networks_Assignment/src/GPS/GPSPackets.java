@@ -3,10 +3,12 @@ package GPS;
 import Structure.DataPackets;
 import Structure.Constants;
 import Structure.Connection;
+import Structure.OutputSink;
+import Structure.ReconnectPolicy;
 import Image.ImagePackets;
-import ithakimodem.Modem;
+import Structure.SpeedController;
+import Structure.Transport;
 
-import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -51,11 +53,6 @@ public class GPSPackets implements DataPackets {
      */
     private String gpsLLCode = "";
 
-    /**
-     * Holds the utc time of the last gps data point
-     */
-    private String lastDataPointTime = "000000";
-
     /**
      * A List of all the {@link GPS.gpsGPGGA} lines received
      */
@@ -72,16 +69,32 @@ public class GPSPackets implements DataPackets {
     private final List<gpsGPRMC> gpsGPRMCList;
 
     /**
-     * A List of all the objects used for gps image data visualization. It must be ensured that the data saved here are
-     * at least 4 seconds apart.
+     * The points of all the GPGGA lines received for the current request. Unlike the protocol Lists these are kept
+     * after the data are saved so that routes can be merged by {@link GPS.RouteStitcher}.
+     */
+    private final List<GPSPoint> routePoints = new ArrayList<>();
+
+    /**
+     * Streaming aggregates of the current request updated while the lines are parsed
+     */
+    private final RouteStatistics routeStatistics = new RouteStatistics();
+
+    /**
+     * Chooses the points used for gps image data visualization while the GPGGA lines arrive. By default points at
+     * least 10 seconds apart are chosen.
+     */
+    private ImagePointSelector imagePointSelector = new ImagePointSelector(ImagePointSelector.Mode.TIME,
+            ImagePointSelector.SERVER_MAX_POINTS, 10);
+
+    /**
+     * Cache of the map images keyed by the requested points. No caching is done if it is null.
      */
-    private final List<gpsGPGGA> imageDataList;
+    private MapImageCache mapImageCache = null;
 
     /**
-     * A list that holds all the String lines received from the server before they are transformed to one of the
-     * protocols objects.
+     * The number of data lines received for the current request
      */
-    private final List<String> lines = new ArrayList<>();
+    private int received_lines = 0;
 
     /**
      * This StringBuilder is used to construct the received line Byte by Byte
@@ -110,7 +123,6 @@ public class GPSPackets implements DataPackets {
         this.gpsGPGGAList = new ArrayList<>();
         this.gpsGPGSAList = new ArrayList<>();
         this.gpsGPRMCList = new ArrayList<>();
-        this.imageDataList = new ArrayList<>();
 
         // Init the image processing object
         this.imagePackets = new ImagePackets(this.connection, false);
@@ -127,13 +139,68 @@ public class GPSPackets implements DataPackets {
         this.gpsGPGGAList = new ArrayList<>();
         this.gpsGPGSAList = new ArrayList<>();
         this.gpsGPRMCList = new ArrayList<>();
-        this.imageDataList = new ArrayList<>();
 
         // Init the image processing object
         this.imagePackets = new ImagePackets(this.connection, false);
     }
 
 
+    /**
+     * Gets the route code used for the requests
+     *
+     * @return {@link #gpsLLCode}
+     */
+    public String getGpsLLCode() {
+        return gpsLLCode;
+    }
+
+    /**
+     * Gets the points of the GPGGA lines received by the last {@link #getPackets()} call in the order they were
+     * received.
+     *
+     * @return the route points
+     */
+    public List<GPSPoint> getRoutePoints() {
+        return routePoints;
+    }
+
+    /**
+     * Gets the line under construction. Package private for the benchmarks of the end detection.
+     *
+     * @return {@link #gps_line}
+     */
+    StringBuilder getGps_line() {
+        return gps_line;
+    }
+
+    /**
+     * Gets the statistics of the route received by the last {@link #getPackets()} call
+     *
+     * @return the route statistics
+     */
+    public RouteStatistics getRouteStatistics() {
+        return routeStatistics;
+    }
+
+    /**
+     * Sets the cache used for the map images. The same cache can be shared by many GPSPackets objects.
+     *
+     * @param mapImageCache {@link #mapImageCache} or null to disable caching
+     */
+    public void setMapImageCache(MapImageCache mapImageCache) {
+        this.mapImageCache = mapImageCache;
+    }
+
+    /**
+     * Sets the selector used to choose the points of the visualization image
+     *
+     * @param imagePointSelector {@link #imagePointSelector}
+     */
+    public void setImagePointSelector(ImagePointSelector imagePointSelector) {
+        this.imagePointSelector = imagePointSelector;
+    }
+
+
     /**
      * Requests gps data packages from the server. The packets are based on the NMEA protocol format.
      * <br>
@@ -143,14 +210,14 @@ public class GPSPackets implements DataPackets {
      * <br>
      * After the transmission is over and the data are saved the server provides the choice to request for visualization
      * of the received locations. This is possible at maximum 9 times for each data request made and it is handled by
-     * {@link #getImages(Modem, String)} function.
+     * {@link #getImages(Transport, String)} function.
      * <br>
-     * <b>Note:</b> Before requesting location visualisation or saving data to a file the received data must be
-     * categorised by {@link #parseData()} function.
+     * <b>Note:</b> Every data line is categorised by the {@link #parseLine(String)} function as soon as it is
+     * received, so the data are ready to be saved and visualised when the transmission is over.
      */
     @Override
     public void getPackets() {
-        Modem modem = connection.getModem();
+        this.connection.getSpeedController().apply(SpeedController.GPS);
 
         String request_code = connection.getGps_code();
         int k; // input bytes
@@ -158,9 +225,20 @@ public class GPSPackets implements DataPackets {
         if (!this.gpsLLCode.isEmpty())
             request_code = request_code.substring(0, 5) + this.gpsLLCode + "\r";
 
-        // This outer loop serves the purpose of requesting data again if a connection drops. The loop allows up to 3
-        // tries to recover from a dropped connection. After that the program will exit.
-        for (int i = 0; i <= 3; i++) {
+        // Drop anything left from a previous request
+        clearData();
+
+        // The request is repeated once if the connection drops and the ReconnectPolicy of the connection recovers it.
+        // The reconnection attempts and their backoff are decided only by the policy.
+        boolean request = true;
+        boolean recovered = false;
+
+        while (request) {
+            request = false;
+
+            // The transport changes with every reconnection
+            Transport modem = connection.getTransport();
+
             // Request the gps data
             if (modem.write((request_code).getBytes())) {
                 System.out.println("Receiving gps data ...");
@@ -181,20 +259,29 @@ public class GPSPackets implements DataPackets {
                     if (k == -1) {
 
                         // if -1 is read there was an error and the connection timed out or dropped unexpectedly
+                        if (recovered) {
+                            System.out.println("Connection timed out again. Terminating...");
+                            return;
+                        }
+
                         System.out.println("Connection timed out. Reconnecting...");
 
                         // Try to reconnect with the server
-                        if (this.connection.reconnect(80000, 10000)) {
+                        ReconnectPolicy.Status status = this.connection.recover();
+
+                        if (status == ReconnectPolicy.Status.RECOVERED) {
                             // Drop the incomplete packet
                             this.gps_line.setLength(0);
 
                             // Clear the old data to receive to new
-                            this.lines.clear();
+                            clearData();
 
-                            System.out.println("Reconnected successfully. Continuing...");
+                            System.out.println("Reconnected successfully. Requesting the data again...");
+                            recovered = true;
+                            request = true;
                             break;
                         } else {
-                            System.out.println("Reconnection failed. Check if the codes have expired!!");
+                            System.out.println("Reconnection " + status + ". Check if the codes have expired!!");
                             return;
                         }
                     }
@@ -206,40 +293,32 @@ public class GPSPackets implements DataPackets {
                     // Detect end of line or end of transmission
                     if (isTransmissionOver()) {
                         System.out.println("Data received");
+                        System.out.println("Route summary: " + this.routeStatistics.getSummary());
                         // System.out.println("GPS data received: " + gps_line.toString()); // debug comment
 
-                        // Categorise the received data
-                        parseData();
-
                         // Save data to file
                         saveToFile(createFileName(Constants.GPS_DATA_DIR.getStr(), ".txt"));
+                        this.connection.getSpeedController().observe(SpeedController.GPS);
 
                         break;
                     }
 
 
                 }
-
-                if (!this.lines.isEmpty()) {
-                    // if there are data saved brake from the outer loop else request data again
-                    // (possibly the connection dropped and the program reconnected)
-                    break;
-                }
-
             } else {
                 System.out.println("Unrecoverable exception occurred while receiving GPS data. Terminating...");
                 return;
             }
         }
 
-        // If the for loop exits and no data are saved we exit the function
-        if (this.lines.isEmpty()) {
-            System.out.println("Detected multiple connection fails. Terminating...");
+        // If no data are saved we exit the function
+        if (this.received_lines == 0) {
+            System.out.println("No gps data received. Terminating...");
             return;
         }
 
         // Request visualization images
-        getImages(modem, request_code);
+        getImages(this.connection.getTransport(), request_code);
     }
 
     /**
@@ -269,8 +348,8 @@ public class GPSPackets implements DataPackets {
             return true;
         } else if (gps_line.endsWith(line_end)) {  // ... or a line end.
 
-            // Save the line
-            this.lines.add(gps_line);
+            // Categorise the line
+            parseLine(gps_line);
 
             // Reset the buffer so the new line will be written
             this.gps_line.setLength(0);
@@ -282,7 +361,11 @@ public class GPSPackets implements DataPackets {
 
     /**
      * Save all the GPS packets form the Lists to a file. The file starts with ## request_codes ##
-     * for later identification. Every NMEA protocol is saved under the corresponding title eg GPGGA.
+     * for later identification. Every NMEA protocol is saved under the corresponding title eg GPGGA. The file ends with
+     * the {@link GPS.RouteStatistics} summary of the route under the Summary title.
+     * <br>
+     * The lines are emitted to the {@link Structure.OutputSink} of the {@link #connection} that does the actual file
+     * writing.
      * <br>
      * Use the {@link #createFileName(String, String)} method to obtain the correct file name.
      *
@@ -290,46 +373,52 @@ public class GPSPackets implements DataPackets {
      */
     @Override
     public void saveToFile(String file_name) {
-        try {
-            FileWriter writer = new FileWriter(file_name);
+        OutputSink sink = this.connection.getOutputSink();
 
+        try {
             // Write the request codes
-            writer.write("####\n" + this.connection.getEcho_code() + this.connection.getImage_code() +
-                    this.connection.getImage_code_error() + this.connection.getGps_code() +
-                    this.connection.getAck_code() + this.connection.getNack_code() + "###" +
-                    System.lineSeparator());
+            sink.write(file_name, this.connection.getSessionHeader());
 
-            writer.write("GPGGA: " + System.lineSeparator());
+            sink.write(file_name, "GPGGA: " + System.lineSeparator());
 
             // Write the GPGGA data
             for (gpsGPGGA gpgga : this.gpsGPGGAList) {
-                writer.write(gpgga.getLine() + System.lineSeparator());
+                sink.write(file_name, gpgga.getLine() + System.lineSeparator());
             }
 
-            writer.write(System.lineSeparator() + "GPGSA: " + System.lineSeparator());
+            sink.write(file_name, System.lineSeparator() + "GPGSA: " + System.lineSeparator());
 
             // Write the GPGSA data
             for (gpsGPGSA gpgsa : this.gpsGPGSAList) {
-                writer.write(gpgsa.getLine() + System.lineSeparator());
+                sink.write(file_name, gpgsa.getLine() + System.lineSeparator());
             }
 
-            writer.write(System.lineSeparator() + "GPRMC: " + System.lineSeparator());
+            sink.write(file_name, System.lineSeparator() + "GPRMC: " + System.lineSeparator());
 
             // Write the GPRMC data
             for (gpsGPRMC gprmc : this.gpsGPRMCList) {
-                writer.write(gprmc.getLine() + System.lineSeparator());
+                sink.write(file_name, gprmc.getLine() + System.lineSeparator());
             }
 
-            writer.close();
-
-            // Clear the lists so that no duplicate data are saved
-            this.gpsGPGGAList.clear();
-            this.gpsGPGSAList.clear();
-            this.gpsGPRMCList.clear();
+            // Write the route summary
+            sink.write(file_name, System.lineSeparator() + "Summary: " + System.lineSeparator());
+            sink.write(file_name, this.routeStatistics.getSummary() + System.lineSeparator());
 
         } catch (IOException e) {
-            e.printStackTrace();
+            System.out.println("Failed to write to file with exception: " + e.toString());
+        } finally {
+            // The destination is always finished so that the file is closed even after an error
+            try {
+                sink.finish(file_name);
+            } catch (IOException e) {
+                System.out.println("Failed to close file with exception: " + e.toString());
+            }
         }
+
+        // Clear the lists so that no duplicate data are saved
+        this.gpsGPGGAList.clear();
+        this.gpsGPGSAList.clear();
+        this.gpsGPRMCList.clear();
     }
 
     /**
@@ -340,13 +429,13 @@ public class GPSPackets implements DataPackets {
      *
      * @param directory      The directory the file will be saved.
      * @param file_extension The type of the file e.g.  .txt
-     * @return directory + name + date + file_extension
+     * @return directory + name + date + file tag + file_extension
      */
     @Override
     public String createFileName(String directory, String file_extension) {
         // Create the name of the image file depending on the errors
 
-        String name = "GPS_Data ";
+        String name = Constants.GPS_FILE_NAME.getStr();
 
         String pattern = "yyyy-MM-dd HH-mm-ss";
 
@@ -357,45 +446,77 @@ public class GPSPackets implements DataPackets {
         // Get the today date using Calendar object.
         Date today = Calendar.getInstance().getTime();
 
-        name = name + df.format(today) + file_extension;
+        name = name + df.format(today) + this.connection.getFile_tag() + file_extension;
 
         return directory + name;
     }
 
 
     /**
-     * Categorises data in the corresponding Lists based on the type of the protocol used. If the protocol is GPGGA the
-     * time difference between the last GPGGA data point and the current data point is calculated with
-     * {@link #timeDifference(String current_data_point_time)}. If the difference is more than a value and the
-     * {@link #imageDataList} has less than 9 data points the current data point is added to the list.
+     * Categorises a data line in the corresponding List based on the type of the protocol used. GPGGA lines are also
+     * offered to the {@link #imagePointSelector} that chooses the points for the visualization image.
+     *
+     * @param line the received data line
      */
-    private void parseData() {
-
-        for (String line : this.lines) {
-            if (line.startsWith(Constants.GPGGA.getStr())) {
-                // save the GPGGA to the list and clear the buffer
-                gpsGPGGA tmp = new gpsGPGGA(line);
-                this.gpsGPGGAList.add(tmp);
-                this.gps_line.setLength(0);
-
-                // check the time of the gpgga data. If 10 seconds have passed add the Data to the imageDataList for visualization.
-                if (timeDifference(tmp.utcTime) >= 10 && this.imageDataList.size() <= 9) {
-                    this.imageDataList.add(tmp);
-                    // Update the lastDataPointTime
-                    this.lastDataPointTime = tmp.utcTime;
-                }
+    private void parseLine(String line) {
+        this.received_lines++;
+        this.connection.getSessionLog().logGpsSentence(line);
+
+        if (line.startsWith(Constants.GPGGA.getStr())) {
+            // save the GPGGA to the list
+            gpsGPGGA tmp = new gpsGPGGA(line);
+            this.gpsGPGGAList.add(tmp);
+
+            GPSPoint point = GPSPoint.fromGPGGA(tmp, 0);
+            if (point != null)
+                this.routePoints.add(point);
+
+            this.routeStatistics.accept(tmp, point);
+
+            // Let the selector decide if the point will be used for visualization
+            this.imagePointSelector.accept(tmp);
+
+        } else if (line.startsWith(Constants.GPGSA.getStr())) {
+            // save the GPGSA to the list
+            gpsGPGSA tmp = new gpsGPGSA(line);
+            this.gpsGPGSAList.add(tmp);
+        } else if (line.startsWith(Constants.GPRMC.getStr())) {
+            // save the GPRMC to the list
+            gpsGPRMC tmp = new gpsGPRMC(line);
+            this.gpsGPRMCList.add(tmp);
+
+            this.routeStatistics.accept(tmp);
+        }
+    }
 
-            } else if (line.startsWith(Constants.GPGSA.getStr())) {
-                // save the GPGSA to the list and clear the buffer
-                gpsGPGSA tmp = new gpsGPGSA(line);
-                this.gpsGPGSAList.add(tmp);
-                this.gps_line.setLength(0);
-            } else if (line.startsWith(Constants.GPRMC.getStr())) {
-                // save the GPRMC to the list and clear the buffer
-                gpsGPRMC tmp = new gpsGPRMC(line);
-                this.gpsGPRMCList.add(tmp);
-                this.gps_line.setLength(0);
-            }
+    /**
+     * Drops all the data received for the current request. Used when the connection drops in the middle of a
+     * transmission and the data are requested again.
+     */
+    void clearData() {
+        this.received_lines = 0;
+        this.gpsGPGGAList.clear();
+        this.gpsGPGSAList.clear();
+        this.gpsGPRMCList.clear();
+        this.routePoints.clear();
+        this.routeStatistics.reset();
+        this.imagePointSelector.reset();
+    }
+
+    /**
+     * Saves an image found in the {@link #mapImageCache} to the gps images directory
+     *
+     * @param image     the bytes of the image
+     * @param file_name the name of the file
+     */
+    private void saveCachedImage(byte[] image, String file_name) {
+        OutputSink sink = this.connection.getOutputSink();
+
+        try {
+            sink.write(file_name, image);
+            sink.finish(file_name);
+        } catch (IOException e) {
+            System.out.println("Failed to write to file with exception: " + e.toString());
         }
     }
 
@@ -405,33 +526,52 @@ public class GPSPackets implements DataPackets {
      * <br>
      * The coordinates of the location are passed in the T parameter after the gps_request_code in the format
      * gps_request_codeT=AABBCCDDEEFF\r
+     * <br>
+     * If a {@link #mapImageCache} is set and an image for the same points is cached, the cached image is saved and the
+     * server is not contacted at all.
      *
      * @param modem        the modem of the {@link #connection}
      * @param request_code the gps data request code
      */
-    private void getImages(Modem modem, String request_code) {
+    private void getImages(Transport modem, String request_code) {
         int k;
         StringBuilder request = new StringBuilder(request_code.substring(0, 5));
 
-        if (this.imageDataList.isEmpty()) {
+        if (this.imagePointSelector.isEmpty()) {
             System.out.println("Could not find data for image request. Terminating...");
             return;
         }
 
-        // For each entry found in the gpsGPGGAList ...
-        for (gpsGPGGA data : this.imageDataList) {
+        List<String> coordinates = new ArrayList<>();
+
+        // For each point chosen by the selector ...
+        for (gpsGPGGA data : this.imagePointSelector.getSelected()) {
             // ... get the coordinates
-            String coordinates = data.getCoordinates();
+            coordinates.add(data.getCoordinates());
 
             //System.out.println(coordinates);  // debug comment
 
             // Build the request code
-            request.append("T=").append(coordinates);
+            request.append("T=").append(coordinates.get(coordinates.size() - 1));
         }
 
         // finally finish the request with a \r
         request.append("\r");
 
+        // If the same points were requested before use the cached image
+        String cache_key = null;
+
+        if (this.mapImageCache != null) {
+            cache_key = MapImageCache.createKey(coordinates);
+            byte[] cached_image = this.mapImageCache.get(cache_key);
+
+            if (cached_image != null) {
+                saveCachedImage(cached_image, createFileName(Constants.GPS_IMAGES_DIR.getStr(), ".jpeg"));
+                System.out.println("Gps image found in cache");
+                return;
+            }
+        }
+
         //System.out.println(request.toString());  // debug comment
 
         // Request the data
@@ -459,6 +599,9 @@ public class GPSPackets implements DataPackets {
                         // Save the image to a file
                         this.imagePackets.saveToFile(fileName);
 
+                        if (this.mapImageCache != null)
+                            this.mapImageCache.put(cache_key, this.imagePackets.getImageBytes());
+
                         // Clear the list so that the next image can be saved
                         this.imagePackets.clearImageList();
                         break;
@@ -474,28 +617,4 @@ public class GPSPackets implements DataPackets {
             System.out.println("Failed to send gps code");
         }
     }
-
-    /**
-     * Finds the difference in seconds between the time param and the {@link #lastDataPointTime}
-     *
-     * @param time the time to compare. Must be in format hhmmss String
-     * @return the difference in seconds
-     */
-    private int timeDifference(String time) {
-        // Parse the time of the last gps packet received and convert it in seconds
-        int last_point_h = Integer.parseInt(this.lastDataPointTime.substring(0, 2)) * 3600;
-        int last_point_m = Integer.parseInt(this.lastDataPointTime.substring(2, 4)) * 60;
-        int last_point_s = Integer.parseInt(this.lastDataPointTime.substring(4, 6));
-
-        last_point_s += last_point_h + last_point_m;
-
-        // Parse the time of the current gps packet and convert it in seconds
-        int h = Integer.parseInt(time.substring(0, 2)) * 3600;
-        int m = Integer.parseInt(time.substring(2, 4)) * 60;
-        int s = Integer.parseInt(time.substring(4, 6));
-
-        s += h + m;
-
-        return s - last_point_s;
-    }
 }
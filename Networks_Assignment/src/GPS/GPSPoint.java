@@ -0,0 +1,198 @@
+package GPS;
+
+import java.time.LocalDate;
+
+
+/**
+ * <h1>GPSPoint Class</h1>
+ * Numeric representation of a single GPS fix. The NMEA model classes ({@link GPS.gpsGPGGA} and {@link GPS.gpsGPRMC})
+ * keep every field as a String exactly as it was received. This class converts the fields needed for searching and
+ * calculations to primitives once, so that they do not have to be parsed again every time they are used.
+ * <br>
+ * The coordinates are stored in signed decimal degrees (South and West are negative) and the time is stored in UTC
+ * seconds. When the date of the fix is known the time is in seconds since the epoch, otherwise it is the seconds since
+ * midnight.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class GPSPoint {
+    /**
+     * The mean radius of the earth in meters used by the haversine formula
+     */
+    public static final double EARTH_RADIUS = 6371008.8;
+
+    /**
+     * The seconds in one day
+     */
+    public static final long SECONDS_PER_DAY = 86400;
+
+    /**
+     * UTC time of the fix in seconds
+     */
+    private final long time;
+
+    /**
+     * Latitude in signed decimal degrees
+     */
+    private final double latitude;
+
+    /**
+     * Longitude in signed decimal degrees
+     */
+    private final double longitude;
+
+
+    /**
+     * Constructor
+     *
+     * @param time      {@link #time}
+     * @param latitude  {@link #latitude}
+     * @param longitude {@link #longitude}
+     */
+    public GPSPoint(long time, double latitude, double longitude) {
+        this.time = time;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Creates a point from a GPGGA line. The GPGGA protocol does not provide the date so the time of the point is
+     * calculated as epoch_day * {@link #SECONDS_PER_DAY} + seconds since midnight.
+     *
+     * @param gpgga     the parsed GPGGA line
+     * @param epoch_day the day of the fix in days since the epoch or 0 if it is unknown
+     * @return the point or null if the line does not contain a valid fix
+     */
+    public static GPSPoint fromGPGGA(gpsGPGGA gpgga, long epoch_day) {
+        if (isEmpty(gpgga.utcTime) || isEmpty(gpgga.latitude) || isEmpty(gpgga.longitude))
+            return null;
+
+        return new GPSPoint(
+                epoch_day * SECONDS_PER_DAY + parseUtcSeconds(gpgga.utcTime),
+                parseDegrees(gpgga.latitude, gpgga.NS_indicator, 2),
+                parseDegrees(gpgga.longitude, gpgga.EW_indicator, 3)
+        );
+    }
+
+    /**
+     * Creates a point from a GPRMC line. The GPRMC protocol provides the date of the fix so the time of the point is
+     * in seconds since the epoch.
+     *
+     * @param gprmc the parsed GPRMC line
+     * @return the point or null if the line does not contain a valid fix
+     */
+    public static GPSPoint fromGPRMC(gpsGPRMC gprmc) {
+        if (isEmpty(gprmc.utcTime) || isEmpty(gprmc.latitude) || isEmpty(gprmc.longitude))
+            return null;
+
+        return new GPSPoint(
+                parseEpochDay(gprmc.date) * SECONDS_PER_DAY + parseUtcSeconds(gprmc.utcTime),
+                parseDegrees(gprmc.latitude, gprmc.NS_indicator, 2),
+                parseDegrees(gprmc.longitude, gprmc.EW_indicator, 3)
+        );
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Calculates the great circle distance between this point and another point with the haversine formula.
+     *
+     * @param other the other point
+     * @return the distance in meters
+     */
+    public double distanceTo(GPSPoint other) {
+        return haversine(this.latitude, this.longitude, other.latitude, other.longitude);
+    }
+
+    /**
+     * Calculates the great circle distance between two coordinates with the haversine formula.
+     *
+     * @param lat_1 latitude of the first point in decimal degrees
+     * @param lon_1 longitude of the first point in decimal degrees
+     * @param lat_2 latitude of the second point in decimal degrees
+     * @param lon_2 longitude of the second point in decimal degrees
+     * @return the distance in meters
+     */
+    public static double haversine(double lat_1, double lon_1, double lat_2, double lon_2) {
+        double d_lat = Math.toRadians(lat_2 - lat_1);
+        double d_lon = Math.toRadians(lon_2 - lon_1);
+
+        double a = Math.sin(d_lat / 2) * Math.sin(d_lat / 2) +
+                Math.cos(Math.toRadians(lat_1)) * Math.cos(Math.toRadians(lat_2)) *
+                        Math.sin(d_lon / 2) * Math.sin(d_lon / 2);
+
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Converts an NMEA coordinate (ddmm.mmmm for latitude, dddmm.mmmm for longitude) to signed decimal degrees.
+     *
+     * @param value          the NMEA coordinate
+     * @param hemisphere     N, S, E or W. S and W produce negative values
+     * @param degree_digits  the number of digits used for the degrees (2 for latitude 3 for longitude)
+     * @return the coordinate in decimal degrees
+     */
+    static double parseDegrees(String value, String hemisphere, int degree_digits) {
+        double degrees = Integer.parseInt(value.substring(0, degree_digits));
+        double minutes = Double.parseDouble(value.substring(degree_digits));
+
+        degrees += minutes / 60;
+
+        if ("S".equals(hemisphere) || "W".equals(hemisphere))
+            degrees = -degrees;
+
+        return degrees;
+    }
+
+    /**
+     * Converts a hhmmss time String to seconds since midnight. Digits are read directly so no substrings are created.
+     *
+     * @param time the time in hhmmss format
+     * @return the seconds since midnight
+     */
+    static int parseUtcSeconds(String time) {
+        int h = (time.charAt(0) - '0') * 10 + (time.charAt(1) - '0');
+        int m = (time.charAt(2) - '0') * 10 + (time.charAt(3) - '0');
+        int s = (time.charAt(4) - '0') * 10 + (time.charAt(5) - '0');
+
+        return h * 3600 + m * 60 + s;
+    }
+
+    /**
+     * Converts a GPRMC ddmmyy date String to days since the epoch.
+     *
+     * @param date the date in ddmmyy format
+     * @return days since 1970-01-01 or 0 if the date is missing
+     */
+    static long parseEpochDay(String date) {
+        if (isEmpty(date) || date.length() < 6)
+            return 0;
+
+        int day = Integer.parseInt(date.substring(0, 2));
+        int month = Integer.parseInt(date.substring(2, 4));
+        int year = 2000 + Integer.parseInt(date.substring(4, 6));
+
+        return LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    private static boolean isEmpty(String str) {
+        return str == null || str.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return time + " " + latitude + " " + longitude;
+    }
+}
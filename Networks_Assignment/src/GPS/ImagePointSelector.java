@@ -0,0 +1,251 @@
+package GPS;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * <h1>ImagePointSelector Class</h1>
+ * Chooses the GPS points that are sent to the server with the T= parameter to get the map image of a route. The points
+ * are given to the selector one by one while the GPGGA lines arrive, so the selection is complete the moment the
+ * {@link Structure.Constants#GPS_TRANSMISSION_END} is received.
+ * <br>
+ * The selector never holds more than {@link #max_points} + 1 points regardless of the length of the route. Three
+ * selection modes are provided:
+ * <ul>
+ *     <li>{@link Mode#TIME}: A point is kept if at least {@link #spacing} seconds have passed since the last kept
+ *     point.</li>
+ *     <li>{@link Mode#DISTANCE}: A point is kept if it is at least {@link #spacing} meters away from the last kept
+ *     point.</li>
+ *     <li>{@link Mode#SHAPE}: Every point is kept until the buffer is full. Then the inner point that is closest to the
+ *     line connecting its two neighbours is dropped (the Douglas-Peucker criterion applied while streaming). The first
+ *     and the last point of the route are always kept.</li>
+ * </ul>
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class ImagePointSelector {
+
+    /**
+     * The maximum number of points the server accepts for one image
+     */
+    public static final int SERVER_MAX_POINTS = 9;
+
+    /**
+     * Distances from the route line that differ less than this value (in meters) are considered equal
+     */
+    private static final double TOLERANCE = 1.0;
+
+    /**
+     * The selection modes of the selector
+     */
+    public enum Mode {
+        TIME,
+        DISTANCE,
+        SHAPE
+    }
+
+    /**
+     * The selection mode
+     */
+    private final Mode mode;
+
+    /**
+     * The maximum number of selected points
+     */
+    private final int max_points;
+
+    /**
+     * The minimum spacing between points. Seconds for {@link Mode#TIME}, meters for {@link Mode#DISTANCE}. Not used
+     * by {@link Mode#SHAPE}.
+     */
+    private final double spacing;
+
+    /**
+     * The selected GPGGA lines. Has one extra place for the point being inserted in {@link Mode#SHAPE}.
+     */
+    private final gpsGPGGA[] selected;
+
+    /**
+     * The numeric points of the {@link #selected} lines
+     */
+    private final GPSPoint[] points;
+
+    /**
+     * The number of selected points
+     */
+    private int count = 0;
+
+
+    /**
+     * Constructor
+     *
+     * @param mode       {@link #mode}
+     * @param max_points {@link #max_points} from 2 up to {@link #SERVER_MAX_POINTS}
+     * @param spacing    {@link #spacing}
+     */
+    public ImagePointSelector(Mode mode, int max_points, double spacing) {
+        if (max_points < 2 || max_points > SERVER_MAX_POINTS)
+            throw new IllegalArgumentException("The number of points must be between 2 and " + SERVER_MAX_POINTS);
+
+        this.mode = mode;
+        this.max_points = max_points;
+        this.spacing = spacing;
+        this.selected = new gpsGPGGA[max_points + 1];
+        this.points = new GPSPoint[max_points + 1];
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Offers a GPGGA line to the selector. Lines without a valid fix are ignored.
+     *
+     * @param gpgga the GPGGA line
+     */
+    public void accept(gpsGPGGA gpgga) {
+        GPSPoint point = GPSPoint.fromGPGGA(gpgga, 0);
+
+        if (point == null)
+            return;
+
+        if (this.count == 0) {
+            add(gpgga, point);
+            return;
+        }
+
+        GPSPoint last = this.points[this.count - 1];
+
+        switch (this.mode) {
+            case TIME:
+                if (this.count < this.max_points && point.getTime() - last.getTime() >= this.spacing)
+                    add(gpgga, point);
+                break;
+
+            case DISTANCE:
+                if (this.count < this.max_points && point.distanceTo(last) >= this.spacing)
+                    add(gpgga, point);
+                break;
+
+            case SHAPE:
+                add(gpgga, point);
+
+                if (this.count > this.max_points)
+                    remove(leastSignificant());
+                break;
+        }
+    }
+
+    /**
+     * Gets the selected points in route order
+     *
+     * @return the selected GPGGA lines
+     */
+    public List<gpsGPGGA> getSelected() {
+        List<gpsGPGGA> list = new ArrayList<>(this.count);
+
+        for (int i = 0; i < this.count; i++)
+            list.add(this.selected[i]);
+
+        return list;
+    }
+
+    /**
+     * Checks if any point has been selected
+     *
+     * @return true if no points are selected
+     */
+    public boolean isEmpty() {
+        return this.count == 0;
+    }
+
+    /**
+     * Drops all the selected points so that the selector can be used for a new route
+     */
+    public void reset() {
+        for (int i = 0; i < this.count; i++) {
+            this.selected[i] = null;
+            this.points[i] = null;
+        }
+
+        this.count = 0;
+    }
+
+    private void add(gpsGPGGA gpgga, GPSPoint point) {
+        this.selected[this.count] = gpgga;
+        this.points[this.count] = point;
+        this.count++;
+    }
+
+    private void remove(int index) {
+        System.arraycopy(this.selected, index + 1, this.selected, index, this.count - index - 1);
+        System.arraycopy(this.points, index + 1, this.points, index, this.count - index - 1);
+
+        this.count--;
+        this.selected[this.count] = null;
+        this.points[this.count] = null;
+    }
+
+    /**
+     * Finds the inner point with the smallest distance from the line that connects its two neighbours. Points with
+     * almost the same distance (straight parts of the route) are compared by the distance of their neighbours, so the
+     * points that remain on a straight part are evenly spaced.
+     *
+     * @return the index of the point
+     */
+    private int leastSignificant() {
+        int index = 1;
+        double min_distance = Double.MAX_VALUE;
+        double min_span = Double.MAX_VALUE;
+
+        for (int i = 1; i < this.count - 1; i++) {
+            double distance = lineDistance(this.points[i], this.points[i - 1], this.points[i + 1]);
+            double span = this.points[i - 1].distanceTo(this.points[i + 1]);
+
+            if (distance < min_distance - TOLERANCE ||
+                    (distance <= min_distance + TOLERANCE && span < min_span)) {
+                min_distance = Math.min(distance, min_distance);
+                min_span = span;
+                index = i;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Calculates the distance of a point from the segment a-b. The coordinates are projected to a plane around the
+     * point (equirectangular projection) which is accurate for the short distances of a route.
+     *
+     * @param p the point
+     * @param a the start of the segment
+     * @param b the end of the segment
+     * @return the distance in meters
+     */
+    static double lineDistance(GPSPoint p, GPSPoint a, GPSPoint b) {
+        double scale = Math.toRadians(GPSPoint.EARTH_RADIUS);
+        double cos = Math.cos(Math.toRadians(p.getLatitude()));
+
+        double ax = (a.getLongitude() - p.getLongitude()) * cos * scale;
+        double ay = (a.getLatitude() - p.getLatitude()) * scale;
+        double bx = (b.getLongitude() - p.getLongitude()) * cos * scale;
+        double by = (b.getLatitude() - p.getLatitude()) * scale;
+
+        double dx = bx - ax;
+        double dy = by - ay;
+        double length = dx * dx + dy * dy;
+
+        if (length == 0)
+            return Math.sqrt(ax * ax + ay * ay);
+
+        // Projection of the point (the origin) on the segment
+        double t = Math.max(0, Math.min(1, -(ax * dx + ay * dy) / length));
+        double x = ax + t * dx;
+        double y = ay + t * dy;
+
+        return Math.sqrt(x * x + y * y);
+    }
+}
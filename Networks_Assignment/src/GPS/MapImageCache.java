@@ -0,0 +1,224 @@
+package GPS;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+
+/**
+ * <h1>MapImageCache Class</h1>
+ * Disk cache for the map images of the GPS module. The images are content addressed: the key of an image is the
+ * SHA-256 hash of the normalised list of T= coordinates used to request it, so the same set of points always finds the
+ * same image no matter the route code or the order of the points.
+ * <br>
+ * The total size of the cached images is bounded by {@link #max_bytes}. When a new image does not fit, the least
+ * recently used images are deleted. The last modified time of the files is used as the access time so the order is
+ * restored when the cache is opened again.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class MapImageCache {
+
+    /**
+     * Default size limit of the cache (50 MB)
+     */
+    public static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024;
+
+    /**
+     * The extension of the cached images
+     */
+    private static final String EXTENSION = ".jpeg";
+
+    /**
+     * The directory of the cache
+     */
+    private final File directory;
+
+    /**
+     * The maximum total size of the cached images in bytes
+     */
+    private final long max_bytes;
+
+    /**
+     * The cached keys and their size in bytes in least recently used order
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The total size of the cached images in bytes
+     */
+    private long total_bytes = 0;
+
+    // Statistics
+    private int hits = 0;
+    private int misses = 0;
+    private int evictions = 0;
+
+
+    /**
+     * Constructor. Loads the images already in the directory.
+     *
+     * @param directory {@link #directory}
+     * @param max_bytes {@link #max_bytes}
+     */
+    public MapImageCache(String directory, long max_bytes) {
+        this.directory = new File(directory);
+        this.max_bytes = max_bytes;
+
+        this.directory.mkdirs();
+
+        File[] files = this.directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+
+        if (files != null) {
+            // Oldest first so that the most recently used end up at the tail
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+            for (File file : files) {
+                String name = file.getName();
+                this.entries.put(name.substring(0, name.length() - EXTENSION.length()), file.length());
+                this.total_bytes += file.length();
+            }
+        }
+
+        evict(0);
+    }
+
+    /**
+     * Creates the key for a list of coordinates. The coordinates are normalised by removing duplicates and sorting
+     * them, so that the key does not depend on the order the points were chosen.
+     *
+     * @param coordinates the AABBCCDDEEFF coordinates of the T= parameters
+     * @return the key of the image
+     */
+    public static String createKey(List<String> coordinates) {
+        StringBuilder normalised = new StringBuilder();
+
+        for (String coordinate : new TreeSet<>(coordinates))
+            normalised.append("T=").append(coordinate);
+
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(normalised.toString().getBytes(StandardCharsets.US_ASCII));
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : hash)
+                key.append(String.format("%02x", b));
+
+            return key.toString();
+
+        } catch (NoSuchAlgorithmException e) {
+            // Every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets an image from the cache
+     *
+     * @param key the key created by {@link #createKey(List)}
+     * @return the bytes of the image or null if the image is not cached
+     */
+    public synchronized byte[] get(String key) {
+        if (!this.entries.containsKey(key)) {
+            this.misses++;
+            return null;
+        }
+
+        File file = file(key);
+
+        try {
+            byte[] image = Files.readAllBytes(file.toPath());
+
+            // Mark as recently used both in memory and on disk
+            this.entries.get(key);
+            file.setLastModified(System.currentTimeMillis());
+
+            this.hits++;
+            return image;
+
+        } catch (IOException e) {
+            // The file was removed or can not be read so forget it
+            remove(key);
+
+            this.misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Adds an image to the cache. Images larger than the cache are not stored.
+     *
+     * @param key   the key created by {@link #createKey(List)}
+     * @param image the bytes of the image
+     */
+    public synchronized void put(String key, byte[] image) {
+        if (image.length > this.max_bytes)
+            return;
+
+        remove(key);
+        evict(image.length);
+
+        try {
+            // Write to a temporary file first so that a partly written image is never found in the cache
+            Path tmp = Files.createTempFile(this.directory.toPath(), key, ".tmp");
+            Files.write(tmp, image);
+            Files.move(tmp, file(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            this.entries.put(key, (long) image.length);
+            this.total_bytes += image.length;
+
+        } catch (IOException e) {
+            System.out.println("Failed to cache image with exception: " + e.toString());
+        }
+    }
+
+    /**
+     * Gets the statistics of the cache
+     *
+     * @return hits, misses, evictions, number of images and size
+     */
+    public synchronized String getStatistics() {
+        return "hits: " + this.hits + " misses: " + this.misses + " evictions: " + this.evictions +
+                " images: " + this.entries.size() + " bytes: " + this.total_bytes;
+    }
+
+    /**
+     * Deletes the least recently used images until there is space for the new bytes
+     *
+     * @param new_bytes the size of the image that will be added
+     */
+    private void evict(long new_bytes) {
+        Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+
+        while (this.total_bytes + new_bytes > this.max_bytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+
+            file(entry.getKey()).delete();
+            this.total_bytes -= entry.getValue();
+            iterator.remove();
+
+            this.evictions++;
+        }
+    }
+
+    private void remove(String key) {
+        Long size = this.entries.remove(key);
+
+        if (size != null) {
+            file(key).delete();
+            this.total_bytes -= size;
+        }
+    }
+
+    private File file(String key) {
+        return new File(this.directory, key + EXTENSION);
+    }
+}
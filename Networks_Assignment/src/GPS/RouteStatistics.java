@@ -0,0 +1,289 @@
+package GPS;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+
+/**
+ * <h1>RouteStatistics Class</h1>
+ * Streaming aggregates of a GPS route. The statistics are updated in constant time and memory every time a GPGGA or
+ * GPRMC line is parsed by {@link GPS.GPSPackets}, so the summary of the route is available as soon as the transmission
+ * is over without a second pass over the data.
+ * <br>
+ * The following values are calculated:
+ * <ul>
+ *     <li>The distance travelled (haversine distance between consecutive GPGGA fixes) and the duration of the route</li>
+ *     <li>Minimum, average and maximum speed over ground from the GPRMC lines</li>
+ *     <li>Minimum, average, maximum and standard deviation of the HDOP from the GPGGA lines</li>
+ *     <li>Minimum, average and maximum number of satellites used from the GPGGA lines</li>
+ *     <li>The number of GPGGA lines for every position fix indicator and the valid/invalid GPRMC lines</li>
+ * </ul>
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class RouteStatistics {
+
+    /**
+     * Kilometers per hour in one knot
+     */
+    private static final double KNOTS_TO_KMH = 1.852;
+
+    /**
+     * The names of the GPGGA position fix indicator values
+     */
+    private static final String[] FIX_TYPES = {"invalid", "GPS", "DGPS", "PPS", "RTK", "float RTK", "estimated",
+            "manual", "simulation"};
+
+    // Distance and duration
+    private GPSPoint first_point;
+    private GPSPoint last_point;
+    private double distance;
+
+    // Speed in km/h
+    private int speed_count;
+    private double speed_min;
+    private double speed_max;
+    private double speed_sum;
+
+    // HDOP (Welford's algorithm for the variance)
+    private int hdop_count;
+    private double hdop_min;
+    private double hdop_max;
+    private double hdop_mean;
+    private double hdop_m2;
+
+    // Satellites used
+    private int satellites_count;
+    private int satellites_min;
+    private int satellites_max;
+    private long satellites_sum;
+
+    /**
+     * GPGGA lines per position fix indicator. Unknown values are counted in the last place.
+     */
+    private final int[] fix_types = new int[FIX_TYPES.length + 1];
+
+    // GPRMC status counts
+    private int valid_rmc;
+    private int invalid_rmc;
+
+
+    /**
+     * Constructor
+     */
+    public RouteStatistics() {
+        reset();
+    }
+
+    /**
+     * Clears all the aggregates so that the object can be used for a new route
+     */
+    public void reset() {
+        this.first_point = null;
+        this.last_point = null;
+        this.distance = 0;
+
+        this.speed_count = 0;
+        this.speed_min = Double.MAX_VALUE;
+        this.speed_max = 0;
+        this.speed_sum = 0;
+
+        this.hdop_count = 0;
+        this.hdop_min = Double.MAX_VALUE;
+        this.hdop_max = 0;
+        this.hdop_mean = 0;
+        this.hdop_m2 = 0;
+
+        this.satellites_count = 0;
+        this.satellites_min = Integer.MAX_VALUE;
+        this.satellites_max = 0;
+        this.satellites_sum = 0;
+
+        Arrays.fill(this.fix_types, 0);
+        this.valid_rmc = 0;
+        this.invalid_rmc = 0;
+    }
+
+    /**
+     * Updates the statistics with a GPGGA line
+     *
+     * @param gpgga the parsed line
+     * @param point the point of the line or null if the line has no valid fix
+     */
+    public void accept(gpsGPGGA gpgga, GPSPoint point) {
+        int fix = parseInt(gpgga.position_fix_indicator, -1);
+        this.fix_types[fix >= 0 && fix < FIX_TYPES.length ? fix : FIX_TYPES.length]++;
+
+        double hdop = parseDouble(gpgga.hdop);
+        if (!Double.isNaN(hdop)) {
+            this.hdop_count++;
+            this.hdop_min = Math.min(this.hdop_min, hdop);
+            this.hdop_max = Math.max(this.hdop_max, hdop);
+
+            double delta = hdop - this.hdop_mean;
+            this.hdop_mean += delta / this.hdop_count;
+            this.hdop_m2 += delta * (hdop - this.hdop_mean);
+        }
+
+        int satellites = parseInt(gpgga.satellites_used, -1);
+        if (satellites >= 0) {
+            this.satellites_count++;
+            this.satellites_min = Math.min(this.satellites_min, satellites);
+            this.satellites_max = Math.max(this.satellites_max, satellites);
+            this.satellites_sum += satellites;
+        }
+
+        // Only real fixes are used for the distance
+        if (point != null && fix > 0) {
+            if (this.first_point == null)
+                this.first_point = point;
+            else
+                this.distance += this.last_point.distanceTo(point);
+
+            this.last_point = point;
+        }
+    }
+
+    /**
+     * Updates the statistics with a GPRMC line
+     *
+     * @param gprmc the parsed line
+     */
+    public void accept(gpsGPRMC gprmc) {
+        if ("A".equals(gprmc.status))
+            this.valid_rmc++;
+        else
+            this.invalid_rmc++;
+
+        double knots = parseDouble(gprmc.speed_over_ground);
+        if (!Double.isNaN(knots)) {
+            double speed = knots * KNOTS_TO_KMH;
+
+            this.speed_count++;
+            this.speed_min = Math.min(this.speed_min, speed);
+            this.speed_max = Math.max(this.speed_max, speed);
+            this.speed_sum += speed;
+        }
+    }
+
+    /**
+     * Gets the distance travelled
+     *
+     * @return the distance in meters
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Gets the time between the first and the last fix of the route
+     *
+     * @return the duration in seconds
+     */
+    public long getDuration() {
+        return this.first_point == null ? 0 : this.last_point.getTime() - this.first_point.getTime();
+    }
+
+    public double getMinSpeed() {
+        return this.speed_count == 0 ? 0 : this.speed_min;
+    }
+
+    public double getAverageSpeed() {
+        return this.speed_count == 0 ? 0 : this.speed_sum / this.speed_count;
+    }
+
+    public double getMaxSpeed() {
+        return this.speed_max;
+    }
+
+    public double getMinHdop() {
+        return this.hdop_count == 0 ? 0 : this.hdop_min;
+    }
+
+    public double getAverageHdop() {
+        return this.hdop_mean;
+    }
+
+    public double getMaxHdop() {
+        return this.hdop_max;
+    }
+
+    public double getHdopDeviation() {
+        return this.hdop_count < 2 ? 0 : Math.sqrt(this.hdop_m2 / (this.hdop_count - 1));
+    }
+
+    public int getMinSatellites() {
+        return this.satellites_count == 0 ? 0 : this.satellites_min;
+    }
+
+    public double getAverageSatellites() {
+        return this.satellites_count == 0 ? 0 : (double) this.satellites_sum / this.satellites_count;
+    }
+
+    public int getMaxSatellites() {
+        return this.satellites_max;
+    }
+
+    /**
+     * Gets the number of GPGGA lines with a specific position fix indicator
+     *
+     * @param fix_indicator the position fix indicator (0 invalid, 1 GPS, 2 DGPS, ...)
+     * @return the number of lines
+     */
+    public int getFixCount(int fix_indicator) {
+        return fix_indicator >= 0 && fix_indicator < FIX_TYPES.length ? this.fix_types[fix_indicator] : 0;
+    }
+
+    /**
+     * Creates the summary record of the route. The record is a single line of name=value pairs so that it is easy to
+     * read both by humans and by the analysis scripts.
+     *
+     * @return the summary line
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder(String.format(Locale.US,
+                "distance_m=%.1f duration_s=%d " +
+                        "speed_kmh_min=%.2f speed_kmh_avg=%.2f speed_kmh_max=%.2f " +
+                        "hdop_min=%.2f hdop_avg=%.2f hdop_max=%.2f hdop_std=%.2f " +
+                        "satellites_min=%d satellites_avg=%.1f satellites_max=%d " +
+                        "rmc_valid=%d rmc_invalid=%d",
+                getDistance(), getDuration(),
+                getMinSpeed(), getAverageSpeed(), getMaxSpeed(),
+                getMinHdop(), getAverageHdop(), getMaxHdop(), getHdopDeviation(),
+                getMinSatellites(), getAverageSatellites(), getMaxSatellites(),
+                this.valid_rmc, this.invalid_rmc));
+
+        // Only the fix types that appeared are reported
+        for (int i = 0; i < this.fix_types.length; i++) {
+            if (this.fix_types[i] != 0) {
+                String name = i < FIX_TYPES.length ? FIX_TYPES[i] : "unknown";
+                summary.append(" fix_").append(name.replace(' ', '_')).append('=').append(this.fix_types[i]);
+            }
+        }
+
+        return summary.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+
+    private static int parseInt(String value, int default_value) {
+        try {
+            return value == null || value.isEmpty() ? default_value : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return default_value;
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return value == null || value.isEmpty() ? Double.NaN : Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
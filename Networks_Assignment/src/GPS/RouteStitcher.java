@@ -0,0 +1,238 @@
+package GPS;
+
+import Structure.OutputSink;
+
+import java.io.IOException;
+import java.util.*;
+
+
+/**
+ * <h1>RouteStitcher Class</h1>
+ * Merges the points of many route requests into one continuous track. The route codes requested in sequence
+ * (R=1000199, R=1010099, ...) start from increasing points of the same recorded route, so the received segments
+ * overlap. The stitcher:
+ * <ul>
+ *     <li>merges the time ordered point streams of all the routes with a k-way merge (a priority queue holding the
+ *     next point of every route) in O(n log k) without sorting the points again,</li>
+ *     <li>drops the points that have the same time and position (within {@link #duplicate_distance}) with the last
+ *     point of the track,</li>
+ *     <li>collects overlap statistics for every route.</li>
+ * </ul>
+ * Every route must be ordered by time. Points that go back in time are dropped and counted as out of order.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class RouteStitcher {
+
+    /**
+     * Two points with the same time and a distance up to this value in meters are duplicates
+     */
+    private final double duplicate_distance;
+
+    /**
+     * The routes in the order they were added
+     */
+    private final List<Route> routes = new ArrayList<>();
+
+    /**
+     * The merged track produced by {@link #stitch()}
+     */
+    private final List<GPSPoint> track = new ArrayList<>();
+
+    /**
+     * Points with the same time as the last point of the track but in a different position
+     */
+    private int conflicts = 0;
+
+    /**
+     * The number of times the time between two consecutive points of the track was more than 1 second
+     */
+    private int gaps = 0;
+
+
+    /**
+     * Constructor
+     *
+     * @param duplicate_distance {@link #duplicate_distance}
+     */
+    public RouteStitcher(double duplicate_distance) {
+        this.duplicate_distance = duplicate_distance;
+    }
+
+    /**
+     * Adds a route to be merged
+     *
+     * @param name   the name of the route e.g. the route code
+     * @param points the points of the route ordered by time
+     */
+    public void addRoute(String name, Iterable<GPSPoint> points) {
+        this.routes.add(new Route(name, this.routes.size(), points.iterator()));
+    }
+
+    /**
+     * Merges all the added routes into one track
+     *
+     * @return the merged track ordered by time
+     */
+    public List<GPSPoint> stitch() {
+        this.track.clear();
+        this.conflicts = 0;
+        this.gaps = 0;
+
+        // The next point of each route. Equal times are taken in the order the routes were added.
+        PriorityQueue<Route> queue = new PriorityQueue<>(Math.max(1, this.routes.size()), (a, b) -> {
+            int compare = Long.compare(a.head.getTime(), b.head.getTime());
+            return compare != 0 ? compare : Integer.compare(a.order, b.order);
+        });
+
+        for (Route route : this.routes) {
+            if (route.advance())
+                queue.add(route);
+        }
+
+        while (!queue.isEmpty()) {
+            Route route = queue.poll();
+            GPSPoint point = route.head;
+            GPSPoint last = this.track.isEmpty() ? null : this.track.get(this.track.size() - 1);
+
+            if (last != null && point.getTime() < last.getTime()) {
+                route.out_of_order++;
+            } else if (last != null && point.getTime() == last.getTime()) {
+                // Same time as the last point of the track. Keep the first point received.
+                if (point.distanceTo(last) <= this.duplicate_distance)
+                    route.duplicates++;
+                else
+                    this.conflicts++;
+            } else {
+                if (last != null && point.getTime() - last.getTime() > 1)
+                    this.gaps++;
+
+                this.track.add(point);
+                route.added++;
+            }
+
+            if (route.advance())
+                queue.add(route);
+        }
+
+        return this.track;
+    }
+
+    /**
+     * Gets the merged track of the last {@link #stitch()}
+     *
+     * @return the track
+     */
+    public List<GPSPoint> getTrack() {
+        return this.track;
+    }
+
+    /**
+     * Creates a report with the statistics of the last {@link #stitch()}
+     *
+     * @return the statistics one route per line
+     */
+    public String getStatistics() {
+        StringBuilder statistics = new StringBuilder();
+        int received = 0;
+        int duplicates = 0;
+        int out_of_order = 0;
+
+        for (Route route : this.routes) {
+            received += route.received;
+            duplicates += route.duplicates;
+            out_of_order += route.out_of_order;
+
+            double overlap = route.received == 0 ? 0 : 100.0 * route.duplicates / route.received;
+
+            statistics.append(String.format(Locale.US,
+                    "%s: received %d, added %d, duplicates %d (%.1f%% overlap), out of order %d",
+                    route.name, route.received, route.added, route.duplicates, overlap, route.out_of_order))
+                    .append(System.lineSeparator());
+        }
+
+        statistics.append(String.format(Locale.US,
+                "Total: received %d, track %d, duplicates %d, conflicts %d, out of order %d, gaps %d",
+                received, this.track.size(), duplicates, this.conflicts, out_of_order, this.gaps));
+
+        return statistics.toString();
+    }
+
+    /**
+     * Saves the merged track to a file through an output sink. The file starts with the statistics after a
+     * "Statistics:" line (not between the #### and ### lines, which hold the request codes in the other data files).
+     * After a "Track:" line every point is saved to a new line in the form hhmmss latitude longitude.
+     *
+     * @param sink      the sink that writes the file e.g. the output sink of the connection
+     * @param file_name the name of the file
+     */
+    public void saveToFile(OutputSink sink, String file_name) {
+        try {
+            sink.write(file_name, "Statistics: " + System.lineSeparator() + getStatistics() + System.lineSeparator());
+            sink.write(file_name, System.lineSeparator() + "Track: " + System.lineSeparator());
+
+            for (GPSPoint point : this.track) {
+                long seconds = point.getTime() % GPSPoint.SECONDS_PER_DAY;
+
+                sink.write(file_name, String.format(Locale.US, "%02d%02d%02d %.6f %.6f%n",
+                        seconds / 3600, seconds / 60 % 60, seconds % 60, point.getLatitude(), point.getLongitude()));
+            }
+
+        } catch (IOException e) {
+            System.out.println("Failed to write to file with exception: " + e.toString());
+        } finally {
+            // The destination is always finished so that the file is closed even after an error
+            try {
+                sink.finish(file_name);
+            } catch (IOException e) {
+                System.out.println("Failed to close file with exception: " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * One input stream of the merge and its statistics
+     */
+    private static class Route {
+        final String name;
+        final int order;
+        final Iterator<GPSPoint> points;
+
+        /**
+         * The current point of the route in the merge
+         */
+        GPSPoint head;
+
+        int received = 0;
+        int added = 0;
+        int duplicates = 0;
+        int out_of_order = 0;
+
+        Route(String name, int order, Iterator<GPSPoint> points) {
+            this.name = name;
+            this.order = order;
+            this.points = points;
+        }
+
+        /**
+         * Moves to the next point of the route
+         *
+         * @return false if the route has no more points
+         */
+        boolean advance() {
+            while (this.points.hasNext()) {
+                this.head = this.points.next();
+
+                if (this.head != null) {
+                    this.received++;
+                    return true;
+                }
+            }
+
+            this.head = null;
+            return false;
+        }
+    }
+}
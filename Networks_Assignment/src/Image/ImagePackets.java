@@ -3,13 +3,13 @@ package Image;
 import Structure.Constants;
 import Structure.DataPackets;
 import Structure.Connection;
+import Structure.OutputSink;
+import Structure.RequestTimer;
+import Structure.SpeedController;
+import Structure.Transport;
 import com.google.common.primitives.Bytes;
-import ithakimodem.Modem;
 
-import java.io.ByteArrayInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -50,6 +50,16 @@ public class ImagePackets implements DataPackets {
      */
     private final List<Byte> image;
 
+    /**
+     * Times the phases of every image request. Saved with {@link #saveRequestPhases()}.
+     */
+    private final RequestTimer requestTimer = new RequestTimer();
+
+    /**
+     * The number of images requested
+     */
+    private int request_count = 0;
+
 
     /**
      * Constructor
@@ -80,31 +90,27 @@ public class ImagePackets implements DataPackets {
 
 
     /**
-     * Sets {@link #camera_commands} and updates the values in the {@link #connection} object
+     * Sets {@link #camera_commands}. The commands are added to the request codes of this module only, the codes of the
+     * {@link #connection} do not change.
      *
      * @param camera_commands the extra camera parameters
      */
     public void setCamera_commands(String camera_commands) {
-        // Set the initial value
         this.camera_commands = camera_commands;
+    }
 
+    /**
+     * Adds the {@link #camera_commands} to a request code
+     *
+     * @param code the request code with the \r at the end
+     * @return the request code with the camera commands
+     */
+    private String addCameraCommands(String code) {
+        if (this.camera_commands == null || this.camera_commands.isEmpty())
+            return code;
 
-        // Every time the camera mode is changed Connection codes are updated
-        String image_code = this.connection.getImage_code();
-        String image_code_error = this.connection.getImage_code_error();
-
-
-        // remove the \r from the end
-        image_code = image_code.substring(0, image_code.length() - 1);
-        image_code_error = image_code_error.substring(0, image_code_error.length() - 1);
-
-        // Concatenate the command to the string
-        image_code = image_code + this.camera_commands + "\r";
-        image_code_error = image_code_error + this.camera_commands + "\r";
-
-
-        this.connection.setImage_code(image_code);
-        this.connection.setImage_code_error(image_code_error);
+        // remove the \r from the end and concatenate the command to the string
+        return code.substring(0, code.length() - 1) + this.camera_commands + "\r";
     }
 
     /**
@@ -134,6 +140,15 @@ public class ImagePackets implements DataPackets {
         this.image.add(k);
     }
 
+    /**
+     * Gets a copy of the bytes stored in the {@link #image} List
+     *
+     * @return the image bytes
+     */
+    public byte[] getImageBytes() {
+        return Bytes.toArray(this.image);
+    }
+
     /**
      * Clears the {@link #image} List from all the bytes stored
      */
@@ -141,6 +156,33 @@ public class ImagePackets implements DataPackets {
         this.image.clear();
     }
 
+    /**
+     * Gets the timings of the image requests
+     *
+     * @return {@link #requestTimer}
+     */
+    public RequestTimer getRequestTimer() {
+        return requestTimer;
+    }
+
+    /**
+     * Saves the phases of all the image requests since the last call with
+     * {@link RequestTimer#save(OutputSink, String, String)} in the {@link Structure.Constants#IMAGES_DATA_DIR}
+     */
+    public void saveRequestPhases() {
+        if (this.requestTimer.getAttempts() == 0)
+            return;
+
+        System.out.println("Image request phases: " + this.requestTimer.getSummary());
+
+        try {
+            this.requestTimer.save(this.connection.getOutputSink(),
+                    createFileName(Constants.IMAGES_DATA_DIR.getStr(), " phases"), this.connection.getSessionCodes());
+        } catch (IOException e) {
+            System.out.println("Failed to export request phases with exception: " + e.toString());
+        }
+    }
+
 
     /**
      * Requests one image from the server every time is called. There are two options provided by the server:
@@ -157,17 +199,21 @@ public class ImagePackets implements DataPackets {
         int k;  // The input buffer byte
         String request_code;  // The request code for the image
 
-        Modem modem = this.connection.getModem();
+        this.connection.getSpeedController().apply(SpeedController.IMAGE);
+        Transport modem = this.connection.getTransport();
 
         // Choose from between a request with errors and an error free request
         if (this.has_errors) {
-            request_code = this.connection.getImage_code_error();
+            request_code = addCameraCommands(this.connection.getImage_code_error());
         } else {
-            request_code = this.connection.getImage_code();
+            request_code = addCameraCommands(this.connection.getImage_code());
         }
 
         // Request the image
+        this.requestTimer.start(++this.request_count, 0);
+
         if (modem.write(request_code.getBytes())) {
+            this.requestTimer.writeReturned();
             System.out.println("Receiving image ...");
 
             while (true) {
@@ -178,6 +224,7 @@ public class ImagePackets implements DataPackets {
                     // if -1 is read there was an error and the connection timed out
                     if (k == -1) {
                         System.out.println("Connection timed out.");
+                        this.requestTimer.abort();
                         break;
                     }
 
@@ -190,15 +237,20 @@ public class ImagePackets implements DataPackets {
                     return;
                 }
 
+                this.requestTimer.byteReceived();
+
                 // Add bytes to the image Byte List
                 this.image.add((byte) k);
                 //System.out.println(k + " ");  // debug comment
 
                 // Detect end of image
                 if (isTransmissionOver()) {
+                    this.requestTimer.complete();
+
                     // Finally the image to the file
                     saveToFile(createFileName(Constants.IMAGES_DATA_DIR.getStr(), ".jpeg"));
                     this.image.clear();
+                    this.connection.getSpeedController().observe(SpeedController.IMAGE);
                     break;
                 }
             }
@@ -226,35 +278,22 @@ public class ImagePackets implements DataPackets {
     }
 
     /**
-     * Save the image stored in the {@link #image} List as bytes to a .jpeg file.
+     * Save the image stored in the {@link #image} List as bytes to a .jpeg file. The image is emitted as a single record
+     * to the {@link Structure.OutputSink} of the {@link #connection}.
      *
      * @param file_name the name of the file
      */
     @Override
     public void saveToFile(String file_name) {
-        // Convert the bytes to an Image file
-        try {
-            // Create an input stream from the bytes of the image
-            InputStream is = new ByteArrayInputStream(Bytes.toArray(this.image));
+        OutputSink sink = this.connection.getOutputSink();
 
-            FileOutputStream out = new FileOutputStream(file_name);
-
-            // Bytes are read from the stream in 'packs' of 1024
-            byte[] data = new byte[1024];
-            int readBytes;
-
-            // Write bytes to file
-            while ((readBytes = is.read(data, 0, 1024)) > 0) {
-                out.write(data, 0, readBytes);
-            }
-
-            // Close all the streams
-            out.flush();
-            out.close();
-            is.close();
+        try {
+            sink.write(file_name, Bytes.toArray(this.image));
+            sink.finish(file_name);
 
+            this.connection.getSessionLog().logImageFrame(this.image.size(), this.has_errors, file_name);
         } catch (IOException e) {
-            e.printStackTrace();
+            System.out.println("Failed to write to file with exception: " + e.toString());
         }
     }
 
@@ -280,6 +319,6 @@ public class ImagePackets implements DataPackets {
         // Using DateFormat format method we can create a string
         // representation of a date with the defined format.
 
-        return directory + name + df.format(today) + file_extension;
+        return directory + name + df.format(today) + this.connection.getFile_tag() + file_extension;
     }
 }
@@ -0,0 +1,200 @@
+package Simulator;
+
+import Structure.VirtualThreads;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>IthakiSimulator Class</h1>
+ * A local server that speaks the protocol of the Ithaki server over TCP, so that the modules can be tested and
+ * measured without the real server and without codes that expire. Connect to it with a
+ * {@link Structure.SocketTransport}:
+ * <pre>
+ * IthakiSimulator simulator = new IthakiSimulator(0, LinkImpairment.none());
+ * simulator.start();
+ * Connection connection = new Connection(() -&gt; new SocketTransport("localhost", simulator.getPort()),
+ *         "E0000", "M0000", "G0000", "P0000", "Q0000", "R0000", 80000, 10000);
+ * </pre>
+ * Every client is served by its own thread ({@link Simulator.ServerSession}) with the {@link Simulator.LinkImpairment}
+ * of the simulator. The n-th connection uses the seed of the link + n, so the same sequence of connections gets the
+ * same responses.
+ * <br>
+ * Run from the command line with the port followed by the key=value settings of {@link LinkImpairment#parse(String[])}
+ * e.g. "5000 bandwidth=80000 latency=40 jitter=20 ber=0.0005 drop=0.001".
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class IthakiSimulator {
+
+    private final LinkImpairment link;
+    private final int requested_port;
+
+    /**
+     * The size of the images in pixels
+     */
+    private volatile int image_width = 320;
+    private volatile int image_height = 240;
+
+    private ServerSocket server;
+    private Thread acceptor;
+
+    /**
+     * Creates the threads of the sessions
+     */
+    private final ThreadFactory sessions = VirtualThreads.factory("ithaki-session-");
+
+    // Traffic counters
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong drops = new AtomicLong();
+
+
+    /**
+     * Constructor. The server starts with {@link #start()}.
+     *
+     * @param port the port to listen on. 0 chooses a free port, see {@link #getPort()}
+     * @param link the conditions of the link
+     */
+    public IthakiSimulator(int port, LinkImpairment link) {
+        this.requested_port = port;
+        this.link = link;
+    }
+
+    /**
+     * Starts the simulator and waits until it is stopped
+     *
+     * @param args the port (default 5000) and the settings of the link
+     */
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        LinkImpairment link = LinkImpairment.parse(args.length > 1 ?
+                Arrays.copyOfRange(args, 1, args.length) : new String[0]);
+
+        IthakiSimulator simulator = new IthakiSimulator(port, link);
+
+        if (!simulator.start())
+            return;
+
+        System.out.println("Ithaki simulator listening on port " + simulator.getPort() + " (" + link + ")");
+
+        try {
+            simulator.acceptor.join();
+        } catch (InterruptedException e) {
+            simulator.stop();
+        }
+    }
+
+    /**
+     * Starts listening on the loopback address
+     *
+     * @return true if the server started
+     */
+    public boolean start() {
+        try {
+            this.server = new ServerSocket(this.requested_port, 1024, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            System.out.println("Failed to start simulator with exception: " + e.toString());
+            return false;
+        }
+
+        this.acceptor = new Thread(this::accept, "ithaki-simulator");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+
+        return true;
+    }
+
+    /**
+     * Accepts clients until the server is stopped
+     */
+    private void accept() {
+        while (!this.server.isClosed()) {
+            try {
+                Socket socket = this.server.accept();
+                long connection = this.connections.getAndIncrement();
+
+                // A virtual thread per session (on Java 21) so that hundreds of clients cost little
+                this.sessions.newThread(new ServerSession(socket, this.link, this,
+                        this.link.getSeed() + connection)).start();
+            } catch (IOException e) {
+                if (!this.server.isClosed())
+                    System.out.println("Failed to accept client with exception: " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * Stops accepting clients. The open sessions end when their clients close.
+     */
+    public void stop() {
+        try {
+            if (this.server != null)
+                this.server.close();
+        } catch (IOException e) {
+            System.out.println("Failed to stop simulator with exception: " + e.toString());
+        }
+    }
+
+    void countRequest() {
+        this.requests.incrementAndGet();
+    }
+
+    void countBytes(long count) {
+        this.bytes.addAndGet(count);
+    }
+
+    void countDrop() {
+        this.drops.incrementAndGet();
+    }
+
+    /**
+     * Gets the port the simulator listens on
+     *
+     * @return the port or -1 if it is not started
+     */
+    public int getPort() {
+        return this.server == null ? -1 : this.server.getLocalPort();
+    }
+
+    public int getImage_width() {
+        return image_width;
+    }
+
+    public int getImage_height() {
+        return image_height;
+    }
+
+    /**
+     * Sets the size of the images sent from now on
+     *
+     * @param width  the width in pixels
+     * @param height the height in pixels
+     */
+    public void setImage_size(int width, int height) {
+        this.image_width = width;
+        this.image_height = height;
+    }
+
+    public LinkImpairment getLink() {
+        return link;
+    }
+
+    /**
+     * Creates the statistics of the traffic served
+     *
+     * @return the statistics in one line
+     */
+    public String getStatistics() {
+        return "connections=" + this.connections.get() + " requests=" + this.requests.get() + " bytes=" +
+                this.bytes.get() + " drops=" + this.drops.get();
+    }
+}
@@ -0,0 +1,174 @@
+package Simulator;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * <h1>LinkImpairment Class</h1>
+ * The conditions of the link between the {@link Simulator.IthakiSimulator} and a client. All the random decisions are
+ * taken from a {@link Random} seeded with {@link #seed}, so two runs with the same settings and the same requests get
+ * the same responses, errors and drops.
+ * <ul>
+ *     <li><b>bandwidth:</b> the bits per second the server sends (0 for no limit)</li>
+ *     <li><b>latency:</b> the delay in milliseconds from the request to the first byte of the response</li>
+ *     <li><b>jitter:</b> a random delay of 0 to jitter milliseconds added to the latency of every response</li>
+ *     <li><b>bit error rate:</b> the probability a bit of the echo packets with errors and of the corrupted images is
+ *     wrong. An echo packet with errors is wrong with probability 1 - (1 - BER)^128 like the estimate of
+ *     {@link Echo.BitErrorEstimator}.</li>
+ *     <li><b>drop probability:</b> the probability the connection drops in the middle of a response</li>
+ * </ul>
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class LinkImpairment {
+
+    private int bandwidth = 0;
+    private int latency = 0;
+    private int jitter = 0;
+    private double bit_error_rate = 0;
+    private double drop_probability = 0;
+    private long seed = 1;
+
+
+    /**
+     * Creates a link with no limit and no errors
+     *
+     * @return the link
+     */
+    public static LinkImpairment none() {
+        return new LinkImpairment();
+    }
+
+    /**
+     * Parses the settings from key=value arguments: bandwidth, latency, jitter, ber, drop and seed. Unknown keys are
+     * ignored with a message.
+     *
+     * @param args the arguments e.g. {"bandwidth=80000", "latency=40", "ber=0.001"}
+     * @return the link
+     */
+    public static LinkImpairment parse(String[] args) {
+        LinkImpairment link = new LinkImpairment();
+
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+
+            if (pair.length != 2) {
+                System.out.println("Ignoring argument: " + arg);
+                continue;
+            }
+
+            switch (pair[0]) {
+                case "bandwidth":
+                    link.setBandwidth(Integer.parseInt(pair[1]));
+                    break;
+                case "latency":
+                    link.setLatency(Integer.parseInt(pair[1]));
+                    break;
+                case "jitter":
+                    link.setJitter(Integer.parseInt(pair[1]));
+                    break;
+                case "ber":
+                    link.setBit_error_rate(Double.parseDouble(pair[1]));
+                    break;
+                case "drop":
+                    link.setDrop_probability(Double.parseDouble(pair[1]));
+                    break;
+                case "seed":
+                    link.setSeed(Long.parseLong(pair[1]));
+                    break;
+                default:
+                    System.out.println("Ignoring argument: " + arg);
+            }
+        }
+
+        return link;
+    }
+
+    /**
+     * Chooses the delay of a response
+     *
+     * @param random the random of the connection
+     * @return the delay in milliseconds
+     */
+    int responseDelay(Random random) {
+        return this.latency + (this.jitter > 0 ? random.nextInt(this.jitter + 1) : 0);
+    }
+
+    /**
+     * Decides if a block of bits has at least one error
+     *
+     * @param random the random of the connection
+     * @param bits   the number of bits
+     * @return true if the block must be corrupted
+     */
+    boolean isCorrupted(Random random, int bits) {
+        return this.bit_error_rate > 0 && random.nextDouble() < 1 - Math.pow(1 - this.bit_error_rate, bits);
+    }
+
+    /**
+     * Decides if the connection drops during a response
+     *
+     * @param random the random of the connection
+     * @return true if the connection must drop
+     */
+    boolean isDropped(Random random) {
+        return this.drop_probability > 0 && random.nextDouble() < this.drop_probability;
+    }
+
+    // Getters Setters
+    public int getBandwidth() {
+        return bandwidth;
+    }
+
+    public void setBandwidth(int bandwidth) {
+        this.bandwidth = Math.max(0, bandwidth);
+    }
+
+    public int getLatency() {
+        return latency;
+    }
+
+    public void setLatency(int latency) {
+        this.latency = Math.max(0, latency);
+    }
+
+    public int getJitter() {
+        return jitter;
+    }
+
+    public void setJitter(int jitter) {
+        this.jitter = Math.max(0, jitter);
+    }
+
+    public double getBit_error_rate() {
+        return bit_error_rate;
+    }
+
+    public void setBit_error_rate(double bit_error_rate) {
+        this.bit_error_rate = Math.min(1, Math.max(0, bit_error_rate));
+    }
+
+    public double getDrop_probability() {
+        return drop_probability;
+    }
+
+    public void setDrop_probability(double drop_probability) {
+        this.drop_probability = Math.min(1, Math.max(0, drop_probability));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "bandwidth=%d bps latency=%d ms jitter=%d ms ber=%.2e drop=%.4f seed=%d",
+                this.bandwidth, this.latency, this.jitter, this.bit_error_rate, this.drop_probability, this.seed);
+    }
+}
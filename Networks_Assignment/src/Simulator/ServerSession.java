@@ -0,0 +1,275 @@
+package Simulator;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>ServerSession Class</h1>
+ * Serves one client of the {@link Simulator.IthakiSimulator}. The client sends the mode (ITHAKI) and gets the banner
+ * that ends with the SM_END sequence, after that every request code ending with \r gets the response of the server:
+ * <ul>
+ *     <li>E: an echo packet</li>
+ *     <li>Q: a new echo packet with errors, R: the last echo packet with errors again (NACK)</li>
+ *     <li>M: an image, G: an image with errors</li>
+ *     <li>P: the GPS data of the R= parameter or, with T= parameters, an image of the points</li>
+ *     <li>+++AT...: an AT command (AT, ATI, ATS, ATS=speed, ATH0). The response lines end with \r\n and the last
+ *     one is the result code. ATS=speed changes the bandwidth of the session and ATH0 closes the connection.</li>
+ * </ul>
+ * Only the first letter of the codes is checked so any code works. The responses go through the
+ * {@link Simulator.LinkImpairment} of the simulator.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+class ServerSession implements Runnable {
+
+    /**
+     * The banner sent after the mode. Ends with the SM_END sequence.
+     */
+    private static final String BANNER = "Ithaki simulator. Test server for the networks assignment.\r\n" +
+            "Responses are synthetic and the link conditions are simulated.\r\n\n\n";
+
+    private final Socket socket;
+    private final LinkImpairment link;
+    private final IthakiSimulator simulator;
+    private final Random random;
+    private final SyntheticData data = new SyntheticData();
+
+    private OutputStream out;
+
+    // The state of the session
+    private int echo_counter = 0;
+    private int image_counter = 0;
+    private String error_data = null;
+
+    /**
+     * The bandwidth of the session in bits per second. Starts from the bandwidth of the link and changes with ATS=.
+     */
+    private int bandwidth;
+
+    /**
+     * The nanoTime the next byte can be sent according to the bandwidth of the link
+     */
+    private long next_send = 0;
+
+
+    /**
+     * Constructor
+     *
+     * @param socket    the connection of the client
+     * @param link      the conditions of the link
+     * @param simulator the simulator that counts the traffic
+     * @param seed      the seed of the random decisions of the session
+     */
+    ServerSession(Socket socket, LinkImpairment link, IthakiSimulator simulator, long seed) {
+        this.socket = socket;
+        this.link = link;
+        this.simulator = simulator;
+        this.random = new Random(seed);
+        this.bandwidth = link.getBandwidth();
+    }
+
+    @Override
+    public void run() {
+        try (Socket socket = this.socket) {
+            socket.setTcpNoDelay(true);
+
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            this.out = socket.getOutputStream();
+
+            String mode = readLine(in);
+
+            if (mode == null || !mode.startsWith("ITHAKI")) {
+                System.out.println("Simulator: unknown mode " + mode);
+                return;
+            }
+
+            if (!send(SyntheticData.bytes(BANNER)))
+                return;
+
+            String request;
+
+            while ((request = readLine(in)) != null) {
+                this.simulator.countRequest();
+
+                if (!respond(request))
+                    return;
+            }
+        } catch (IOException e) {
+            // The client closed the connection
+        }
+    }
+
+    /**
+     * Responds to a request code
+     *
+     * @param request the request without the \r
+     * @return false if the connection was dropped
+     */
+    private boolean respond(String request) throws IOException {
+        if (request.isEmpty())
+            return true;
+
+        switch (Character.toUpperCase(request.charAt(0))) {
+            case 'E':
+                return send(SyntheticData.bytes(this.data.echoPacket(this.echo_counter++)));
+
+            case 'Q':
+                this.error_data = this.data.echoData(this.random);
+                this.echo_counter++;
+                return send(SyntheticData.bytes(errorEcho()));
+
+            case 'R':
+                if (this.error_data == null)
+                    this.error_data = this.data.echoData(this.random);
+                return send(SyntheticData.bytes(errorEcho()));
+
+            case 'M':
+                return send(this.data.jpeg(this.image_counter++, request, this.simulator.getImage_width(),
+                        this.simulator.getImage_height()));
+
+            case 'G':
+                byte[] image = this.data.jpeg(this.image_counter++, request, this.simulator.getImage_width(),
+                        this.simulator.getImage_height());
+                this.data.corrupt(this.random, image, this.link.getBit_error_rate());
+                return send(image);
+
+            case 'P':
+                if (request.contains("T="))
+                    return send(this.data.jpeg(request.hashCode(), request, this.simulator.getImage_width(),
+                            this.simulator.getImage_height()));
+                return send(SyntheticData.bytes(this.data.gpsData(request)));
+
+            case '+':
+                return command(request);
+
+            default:
+                System.out.println("Simulator: unknown request " + request);
+                return true;
+        }
+    }
+
+    /**
+     * Responds to an AT command after the +++ escape sequence
+     *
+     * @param request the request without the \r
+     * @return false if the connection was closed
+     */
+    private boolean command(String request) throws IOException {
+        String command = request.replaceFirst("^\\++", "").trim().toUpperCase();
+        String response;
+
+        if (command.equals("AT")) {
+            response = "OK\r\n";
+        } else if (command.equals("ATI")) {
+            response = "Ithaki simulator modem\r\nOK\r\n";
+        } else if (command.equals("ATS")) {
+            response = this.bandwidth + "\r\nOK\r\n";
+        } else if (command.startsWith("ATS=")) {
+            try {
+                this.bandwidth = Math.max(0, Integer.parseInt(command.substring(4)));
+                response = "OK\r\n";
+            } catch (NumberFormatException e) {
+                response = "ERROR\r\n";
+            }
+        } else if (command.equals("ATH0") || command.equals("ATH")) {
+            // The result is sent without delay and the line is closed
+            this.out.write(SyntheticData.bytes("OK\r\n"));
+            this.out.flush();
+            this.socket.close();
+            return false;
+        } else {
+            response = "ERROR\r\n";
+        }
+
+        return send(SyntheticData.bytes(response));
+    }
+
+    /**
+     * Creates the echo packet with errors of the current data, corrupted with the bit error rate of the link
+     */
+    private String errorEcho() {
+        String sent = this.link.isCorrupted(this.random, 16 * 8) ? this.data.corrupt(this.random, this.error_data) :
+                this.error_data;
+
+        return this.data.errorEchoPacket(this.echo_counter, this.error_data, sent);
+    }
+
+    /**
+     * Sends a response after the latency of the link at the bandwidth of the link. If the link decides to drop the
+     * connection only a part of the response is sent and the socket is closed.
+     *
+     * @param response the bytes of the response
+     * @return false if the connection was dropped
+     */
+    private boolean send(byte[] response) throws IOException {
+        int delay = this.link.responseDelay(this.random);
+
+        if (delay > 0)
+            LockSupport.parkNanos(delay * 1000000L);
+
+        int length = response.length;
+        boolean drop = this.link.isDropped(this.random);
+
+        if (drop)
+            length = this.random.nextInt(response.length);
+
+        int bandwidth = this.bandwidth;
+
+        if (bandwidth <= 0) {
+            this.out.write(response, 0, length);
+        } else {
+            // Send chunks of about 10 ms and wait until each one is due
+            int chunk = Math.max(1, bandwidth / 8 / 100);
+            this.next_send = Math.max(this.next_send, System.nanoTime());
+
+            for (int offset = 0; offset < length; offset += chunk) {
+                int size = Math.min(chunk, length - offset);
+                long wait = this.next_send - System.nanoTime();
+
+                if (wait > 0)
+                    LockSupport.parkNanos(wait);
+
+                this.out.write(response, offset, size);
+                this.out.flush();
+                this.next_send += size * 8000000000L / bandwidth;
+            }
+        }
+
+        this.out.flush();
+        this.simulator.countBytes(length);
+
+        if (drop) {
+            this.simulator.countDrop();
+            this.socket.close();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads a line that ends with \r. A \n after the \r is skipped.
+     *
+     * @return the line without the \r or null if the connection was closed
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int k;
+
+        while ((k = in.read()) != -1) {
+            if (k == '\r')
+                return line.toString();
+            if (k != '\n')
+                line.append((char) k);
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,257 @@
+package Simulator;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * <h1>SyntheticData Class</h1>
+ * Creates the responses of the {@link Simulator.IthakiSimulator} in the formats of the Ithaki server:
+ * <ul>
+ *     <li>echo packets: PSTART DD-MM-YYYY HH:MM:SS PC PSTOP</li>
+ *     <li>echo packets with errors: PSTART DD-MM-YYYY HH:MM:SS PC &lt;XXXXXXXXXXXXXXXX&gt; FCS PSTOP</li>
+ *     <li>GPS data: $GPGGA lines of a route between the START and STOP ITHAKI GPS TRACKING lines</li>
+ *     <li>images: JPEG files from 0xFF 0xD8 to 0xFF 0xD9</li>
+ * </ul>
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+class SyntheticData {
+
+    /**
+     * The characters of the data of the echo packets with errors
+     */
+    private static final String DATA_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    /**
+     * The center of the GPS routes (degrees)
+     */
+    private static final double CENTER_LATITUDE = 40.6331;
+    private static final double CENTER_LONGITUDE = 22.9563;
+
+    /**
+     * The points of every route. A route is a closed loop with one point per second.
+     */
+    private static final int ROUTE_POINTS = 1000;
+
+    private final DateFormat date_format = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
+
+    /**
+     * Creates an echo packet
+     *
+     * @param counter the packet counter (modulo 100)
+     * @return the packet
+     */
+    String echoPacket(int counter) {
+        return "PSTART " + this.date_format.format(new Date()) + " " + String.format(Locale.US, "%02d", counter % 100) +
+                " PSTOP";
+    }
+
+    /**
+     * Creates random data for an echo packet with errors
+     *
+     * @param random the random of the connection
+     * @return 16 characters
+     */
+    String echoData(Random random) {
+        StringBuilder data = new StringBuilder(16);
+
+        for (int i = 0; i < 16; i++)
+            data.append(DATA_CHARACTERS.charAt(random.nextInt(DATA_CHARACTERS.length())));
+
+        return data.toString();
+    }
+
+    /**
+     * Creates an echo packet with errors. The FCS is the XOR of the data sent, so a corrupted packet has the FCS of the
+     * original data.
+     *
+     * @param counter        the packet counter (modulo 100)
+     * @param data           the original 16 characters
+     * @param corrupted_data the data as sent (the same as data if there are no errors)
+     * @return the packet
+     */
+    String errorEchoPacket(int counter, String data, String corrupted_data) {
+        int xor = 0;
+
+        for (int i = 0; i < data.length(); i++)
+            xor ^= data.charAt(i);
+
+        return "PSTART " + this.date_format.format(new Date()) + " " + String.format(Locale.US, "%02d", counter % 100) +
+                " <" + corrupted_data + "> " + String.format(Locale.US, "%03d", xor) + " PSTOP";
+    }
+
+    /**
+     * Flips one random bit of a random character of the data. Bits that would give a non printable character, &lt;,
+     * &gt; or space are flipped in another character.
+     *
+     * @param random the random of the connection
+     * @param data   the data
+     * @return the corrupted data
+     */
+    String corrupt(Random random, String data) {
+        char[] characters = data.toCharArray();
+
+        while (true) {
+            int position = random.nextInt(characters.length);
+            char flipped = (char) (characters[position] ^ (1 << random.nextInt(7)));
+
+            if (flipped > ' ' && flipped < 127 && flipped != '<' && flipped != '>') {
+                characters[position] = flipped;
+                return new String(characters);
+            }
+        }
+    }
+
+    /**
+     * Creates the GPS data of a request. The parameter R=XPPPPLL selects the route X, the first point PPPP and the
+     * number of points LL. Without the parameter the first 99 points of route 1 are sent.
+     *
+     * @param request the request code
+     * @return the transmission from the START to the STOP line
+     */
+    String gpsData(String request) {
+        int route = 1, start = 0, points = 99;
+        int index = request.indexOf("R=");
+
+        if (index >= 0 && request.length() >= index + 9) {
+            try {
+                route = Integer.parseInt(request.substring(index + 2, index + 3));
+                start = Integer.parseInt(request.substring(index + 3, index + 7));
+                points = Integer.parseInt(request.substring(index + 7, index + 9));
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid route parameter: " + request.trim());
+            }
+        }
+
+        StringBuilder data = new StringBuilder("START ITHAKI GPS TRACKING\r\n");
+
+        for (int i = start; i < start + points; i++)
+            data.append(gpgga(route, i)).append("\r\n");
+
+        return data.append("STOP ITHAKI GPS TRACKING\r\n").toString();
+    }
+
+    /**
+     * Creates the $GPGGA line of a point of a route
+     */
+    private String gpgga(int route, int point) {
+        double angle = 2 * Math.PI * (point % ROUTE_POINTS) / ROUTE_POINTS;
+        double radius = 0.004 * Math.max(1, route);
+
+        double latitude = CENTER_LATITUDE + radius * Math.sin(angle);
+        double longitude = CENTER_LONGITUDE + radius * Math.cos(angle);
+
+        int seconds = 4 * 3600 + 52 * 60 + point;
+
+        String body = String.format(Locale.US, "GPGGA,%02d%02d%02d.000,%s,N,%s,E,1,07,1.5,%.1f,M,36.1,M,,0000",
+                (seconds / 3600) % 24, (seconds / 60) % 60, seconds % 60, nmea(latitude, 2), nmea(longitude, 3),
+                50 + 10 * Math.sin(angle * 3));
+
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++)
+            checksum ^= body.charAt(i);
+
+        return "$" + body + String.format(Locale.US, "*%02X", checksum);
+    }
+
+    /**
+     * Formats degrees in the NMEA form (d)ddmm.mmmm
+     */
+    private static String nmea(double degrees, int degree_digits) {
+        int whole = (int) degrees;
+        double minutes = (degrees - whole) * 60;
+
+        return String.format(Locale.US, "%0" + degree_digits + "d%07.4f", whole, minutes);
+    }
+
+    /**
+     * Creates a JPEG image. Every seed gives a different image.
+     *
+     * @param seed   the seed of the image
+     * @param label  the text drawn on the image
+     * @param width  the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return the bytes of the JPEG file
+     */
+    byte[] jpeg(long seed, String label, int width, int height) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+
+        // A gradient background with some random rectangles so that the image compresses like a photo
+        for (int y = 0; y < image.getHeight(); y++) {
+            graphics.setColor(new Color(40 + 200 * y / height, 80 + 150 * y / height, 160));
+            graphics.drawLine(0, y, image.getWidth(), y);
+        }
+
+        for (int i = 0; i < width * height / 2560; i++) {
+            graphics.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            graphics.fillRect(random.nextInt(width), random.nextInt(height), 10 + random.nextInt(60),
+                    10 + random.nextInt(40));
+        }
+
+        graphics.setColor(Color.WHITE);
+        graphics.drawString(label, 10, 20);
+        graphics.dispose();
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "jpeg", out);
+
+            return out.toByteArray();
+        } catch (IOException e) {
+            System.out.println("Failed to create image with exception: " + e.toString());
+            return new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9};
+        }
+    }
+
+    /**
+     * Flips random bits of the data of a JPEG image with a bit error rate. The first 2 and last 2 bytes (the start and
+     * end markers) are never changed and no flip creates a new 0xFF byte so that the end of the image is found only at
+     * the real end.
+     *
+     * @param random         the random of the connection
+     * @param image          the image (changed in place)
+     * @param bit_error_rate the bit error rate
+     */
+    void corrupt(Random random, byte[] image, double bit_error_rate) {
+        if (bit_error_rate <= 0 || image.length <= 4)
+            return;
+
+        // Jump from error to error with geometric gaps instead of drawing a random number for every bit
+        long bits = (long) (image.length - 4) * 8;
+        long position = -1;
+
+        while (true) {
+            position += 1 + (long) Math.floor(Math.log(1 - random.nextDouble()) / Math.log(1 - bit_error_rate));
+
+            if (position >= bits || position < 0)
+                return;
+
+            int index = 2 + (int) (position / 8);
+            byte flipped = (byte) (image[index] ^ (1 << (position % 8)));
+
+            if (flipped != (byte) 0xFF && image[index] != (byte) 0xFF && image[index - 1] != (byte) 0xFF)
+                image[index] = flipped;
+        }
+    }
+
+    /**
+     * Converts text to bytes
+     */
+    static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
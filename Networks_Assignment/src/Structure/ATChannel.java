@@ -0,0 +1,261 @@
+package Structure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h1>ATChannel Class</h1>
+ * Sends AT commands to the modem over the open data connection of a {@link Structure.Connection}, so the parameters of
+ * the link can be queried and changed in place instead of closing the transport and opening a new one with
+ * {@link Structure.Connection#reconnect(int, int)} (and reading the banner again).
+ * <br>
+ * Every command is preceded by the escape sequence +++, the same way as {@link Structure.Constants#HANG_UP}, and the
+ * connection returns to data mode after the response (except after a hang up). The response is read line by line up to
+ * {@link Structure.Constants#AT_END} until a final result code (OK, ERROR, NO CARRIER ...) is found. The echo of the
+ * command is skipped. During a command the timeout of the connection is lowered to {@link #command_timeout} so that a
+ * modem that does not answer does not block for the whole data timeout.
+ * <br>
+ * Commands:
+ * <ul>
+ *     <li>{@link #ping()}: AT</li>
+ *     <li>{@link #info()}: ATI</li>
+ *     <li>{@link #querySpeed()}: ATS</li>
+ *     <li>{@link #setSpeed(int)}: ATS=speed</li>
+ *     <li>{@link #hangUp()}: +++ATH0 and close</li>
+ * </ul>
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class ATChannel {
+
+    /**
+     * The escape sequence from data mode to command mode
+     */
+    private static final String ESCAPE = "+++";
+
+    /**
+     * The result codes that end a response
+     */
+    private static final String[] FINAL_RESULTS = {"OK", "ERROR", "NO CARRIER", "NO DIALTONE", "BUSY", "NO ANSWER",
+            "CONNECT"};
+
+    private final Connection connection;
+
+    /**
+     * The timeout of a command in milliseconds
+     */
+    private int command_timeout = 2000;
+
+
+    /**
+     * Constructor
+     *
+     * @param connection the open connection
+     */
+    public ATChannel(Connection connection) {
+        this.connection = connection;
+    }
+
+    // Getters Setters
+    public int getCommand_timeout() {
+        return command_timeout;
+    }
+
+    public void setCommand_timeout(int command_timeout) {
+        this.command_timeout = command_timeout;
+    }
+
+    /**
+     * Checks that the modem answers
+     *
+     * @return true if the modem answered OK
+     */
+    public boolean ping() {
+        return command(Constants.AT.getStr()).isOk();
+    }
+
+    /**
+     * Gets the identification of the modem
+     *
+     * @return the information lines or an empty string if the command failed
+     */
+    public String info() {
+        Response response = command(Constants.ATI.getStr());
+
+        return response.isOk() ? String.join(System.lineSeparator(), response.getLines()) : "";
+    }
+
+    /**
+     * Gets the speed of the link from the modem
+     *
+     * @return the speed in bits per second or -1 if the command failed or the response has no number
+     */
+    public int querySpeed() {
+        Response response = command(Constants.ATS.getStr());
+
+        if (!response.isOk())
+            return -1;
+
+        for (String line : response.getLines()) {
+            String digits = line.replaceAll("[^0-9]", "");
+
+            if (!digits.isEmpty()) {
+                try {
+                    return Integer.parseInt(digits);
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid speed in AT response: " + line);
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Changes the speed of the link in place. If the modem accepts the speed the speed of the connection is updated
+     * too, so that the modules and the reconnections use it.
+     *
+     * @param speed the speed in bits per second
+     * @return true if the modem answered OK
+     */
+    public boolean setSpeed(int speed) {
+        if (!command(Constants.ATSpeed.getStr() + speed + "\r").isOk())
+            return false;
+
+        this.connection.setModemSpeed(speed);
+        return true;
+    }
+
+    /**
+     * Hangs up the line and closes the transport. The connection can be opened again with
+     * {@link Structure.Connection#reconnect()}.
+     *
+     * @return true if the modem answered the hang up
+     */
+    public boolean hangUp() {
+        long start = System.nanoTime();
+        Response response = send(Constants.HANG_UP.getStr());
+
+        this.connection.getTransport().close();
+        System.out.println("Hang up " + (response.isOk() ? "completed" : "failed (" + response.getResult() + ")") +
+                " in " + (System.nanoTime() - start) / 1000000 + " ms");
+
+        // NO CARRIER also means the line is down
+        return response.isOk() || "NO CARRIER".equals(response.getResult());
+    }
+
+    /**
+     * Sends a command after the escape sequence and reads the response
+     *
+     * @param command the command with the \r e.g. {@link Structure.Constants#ATI}
+     * @return the response
+     */
+    public Response command(String command) {
+        return send(ESCAPE + command);
+    }
+
+    /**
+     * Writes the bytes of a command and reads the response with the command timeout
+     */
+    private Response send(String command) {
+        Transport transport = this.connection.getTransport();
+        int timeout = this.connection.getModemTimeout();
+
+        this.connection.setModemTimeout(this.command_timeout);
+
+        try {
+            if (!transport.write(command.getBytes()))
+                return new Response(command, Collections.emptyList(), null);
+
+            return readResponse(transport, command);
+        } catch (Exception e) {
+            System.out.println("Failed to send AT command with exception: " + e.toString());
+            return new Response(command, Collections.emptyList(), null);
+        } finally {
+            this.connection.setModemTimeout(timeout);
+        }
+    }
+
+    /**
+     * Reads the lines of a response until a final result code
+     *
+     * @return the response. The result is null if the modem did not answer with a final result code.
+     */
+    private Response readResponse(Transport transport, String command) {
+        String echo = command.trim();
+        String escaped_echo = echo.startsWith(ESCAPE) ? echo.substring(ESCAPE.length()) : echo;
+
+        List<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+        int k;
+
+        while ((k = transport.read()) != -1) {
+            line.append((char) k);
+
+            // Detect end of line
+            if (!this.connection.isMessageOver(line.toString(), Constants.AT_END.getStr()))
+                continue;
+
+            String text = line.substring(0, line.length() - Constants.AT_END.getStr().length()).trim();
+            line.setLength(0);
+
+            if (text.isEmpty() || text.equals(echo) || text.equals(escaped_echo))
+                continue;
+
+            for (String result : FINAL_RESULTS) {
+                if (text.startsWith(result))
+                    return new Response(command, lines, text);
+            }
+
+            lines.add(text);
+        }
+
+        System.out.println("No answer to AT command " + echo);
+        return new Response(command, lines, null);
+    }
+
+    /**
+     * The response of the modem to a command
+     */
+    public static class Response {
+        private final String command;
+        private final List<String> lines;
+        private final String result;
+
+        Response(String command, List<String> lines, String result) {
+            this.command = command;
+            this.lines = lines;
+            this.result = result;
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        /**
+         * @return the information lines before the result code
+         */
+        public List<String> getLines() {
+            return lines;
+        }
+
+        /**
+         * @return the final result code or null if the modem did not answer
+         */
+        public String getResult() {
+            return result;
+        }
+
+        public boolean isOk() {
+            return "OK".equals(result);
+        }
+
+        @Override
+        public String toString() {
+            return command.trim() + " -> " + lines + " " + result;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package Structure;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>AsyncOutputSink Class</h1>
+ * {@link Structure.OutputSink} that moves the file I/O off the receive thread. The emitted records are placed in a
+ * bounded queue and a dedicated writer thread passes them to another sink (usually a {@link Structure.FileOutputSink}).
+ * <br>
+ * <ul>
+ *     <li><b>Batching:</b> The writer thread takes all the queued records (up to {@link #max_batch}) at once and flushes
+ *     the underlying sink once per batch.</li>
+ *     <li><b>Backpressure:</b> When the queue is full the emitting thread blocks until the writer makes space, so the
+ *     memory used by the queue is bounded. The number and the total time of the blocked writes are counted.</li>
+ *     <li><b>Errors:</b> An error of the writer thread (an IOException or any RuntimeException of the underlying sink)
+ *     is reported by the next call of the emitting thread. After an error the records are dropped and every call fails
+ *     at once instead of blocking on the queue.</li>
+ * </ul>
+ * The fsync policy is set on the underlying sink.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class AsyncOutputSink implements OutputSink {
+
+    /**
+     * The default capacity of the queue in records
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * The default maximum number of records written in one batch
+     */
+    public static final int DEFAULT_MAX_BATCH = 512;
+
+    /**
+     * The time the emitting thread waits on the queue or on a flush before it checks the writer thread again
+     */
+    private static final long WAIT_MILLIS = 100;
+
+    /**
+     * The sink that does the actual writing in the writer thread
+     */
+    private final OutputSink sink;
+
+    /**
+     * The queued records
+     */
+    private final BlockingQueue<Record> queue;
+
+    /**
+     * The maximum number of records written in one batch
+     */
+    private final int max_batch;
+
+    /**
+     * The thread that writes the records
+     */
+    private final Thread writer;
+
+    /**
+     * The first error of the writer thread. It is reported to the emitting thread.
+     */
+    private volatile IOException error = null;
+
+    /**
+     * True after {@link #close()} is called
+     */
+    private volatile boolean closed = false;
+
+    // Statistics
+    private volatile long batches = 0;
+    private volatile long records = 0;
+    private final AtomicLong blocked_writes = new AtomicLong();
+    private final AtomicLong blocked_nanos = new AtomicLong();
+
+
+    /**
+     * Constructor with the default capacity and batch size
+     *
+     * @param sink {@link #sink}
+     */
+    public AsyncOutputSink(OutputSink sink) {
+        this(sink, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * Constructor. Starts the writer thread.
+     *
+     * @param sink      {@link #sink}
+     * @param capacity  the capacity of the queue in records
+     * @param max_batch {@link #max_batch}
+     */
+    public AsyncOutputSink(OutputSink sink, int capacity, int max_batch) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.max_batch = max_batch;
+
+        // A daemon so that a stuck sink can not keep the application alive
+        this.writer = new Thread(this::writeRecords, "AsyncOutputSink writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void write(String file_name, byte[] record) throws IOException {
+        enqueue(new Record(Record.WRITE, file_name, record));
+    }
+
+    @Override
+    public void finish(String file_name) throws IOException {
+        enqueue(new Record(Record.FINISH, file_name, null));
+    }
+
+    /**
+     * Waits until all the records emitted so far are written by the underlying sink
+     *
+     * @throws IOException if the records could not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        Record marker = new Record(Record.FLUSH, null, null);
+        enqueue(marker);
+
+        try {
+            // The writer counts down the marker even if it fails. Check that it is still running while waiting.
+            while (!marker.done.await(WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throwError();
+                checkWriter();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing", e);
+        }
+
+        throwError();
+    }
+
+    /**
+     * Writes all the queued records, stops the writer thread and closes the underlying sink
+     *
+     * @throws IOException if the records could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closed)
+            return;
+
+        this.closed = true;
+
+        try {
+            Record close = new Record(Record.CLOSE, null, null);
+            boolean queued = false;
+
+            // If the writer thread has stopped there is nobody to take the record
+            while (!queued && this.writer.isAlive())
+                queued = this.queue.offer(close, WAIT_MILLIS, TimeUnit.MILLISECONDS);
+
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing", e);
+        }
+
+        throwError();
+    }
+
+    /**
+     * Gets the statistics of the sink
+     *
+     * @return the number of records and batches and the writes blocked by a full queue
+     */
+    public String getStatistics() {
+        return "records: " + this.records + " batches: " + this.batches + " blocked writes: " + this.blocked_writes.get() +
+                " blocked time: " + this.blocked_nanos.get() / 1000000 + " ms";
+    }
+
+    /**
+     * Puts a record to the queue. If the queue is full the calling thread blocks until there is space.
+     */
+    private void enqueue(Record record) throws IOException {
+        throwError();
+
+        if (this.closed)
+            throw new IOException("The sink is closed");
+
+        if (this.queue.offer(record))
+            return;
+
+        // The queue is full. Wait for the writer thread
+        long start = System.nanoTime();
+
+        try {
+            while (!this.queue.offer(record, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                throwError();
+                checkWriter();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the writer thread", e);
+        }
+
+        this.blocked_writes.incrementAndGet();
+        this.blocked_nanos.addAndGet(System.nanoTime() - start);
+    }
+
+    private void throwError() throws IOException {
+        if (this.error != null)
+            throw this.error;
+    }
+
+    /**
+     * Fails if the writer thread has stopped without a close
+     */
+    private void checkWriter() throws IOException {
+        if (!this.writer.isAlive())
+            throw new IOException("The writer thread has stopped");
+    }
+
+    /**
+     * Keeps the first error of the writer thread
+     */
+    private void setError(Throwable e) {
+        if (this.error == null)
+            this.error = e instanceof IOException ? (IOException) e : new IOException("Failed to write record", e);
+    }
+
+    /**
+     * The loop of the writer thread
+     */
+    private void writeRecords() {
+        List<Record> batch = new ArrayList<>(this.max_batch);
+        boolean running = true;
+
+        try {
+            while (running) {
+                try {
+                    batch.add(this.queue.take());
+                } catch (InterruptedException e) {
+                    // Only close() stops the writer
+                    continue;
+                }
+
+                this.queue.drainTo(batch, this.max_batch - 1);
+
+                for (Record record : batch) {
+                    try {
+                        switch (record.type) {
+                            case Record.WRITE:
+                                // After an error the records are dropped
+                                if (this.error == null) {
+                                    this.sink.write(record.file_name, record.data);
+                                    this.records++;
+                                }
+                                break;
+                            case Record.FINISH:
+                                if (this.error == null)
+                                    this.sink.finish(record.file_name);
+                                break;
+                            case Record.FLUSH:
+                                if (this.error == null)
+                                    this.sink.flush();
+                                break;
+                            case Record.CLOSE:
+                                running = false;
+                                this.sink.close();
+                                break;
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        setError(e);
+                    } finally {
+                        if (record.done != null)
+                            record.done.countDown();
+                    }
+                }
+
+                try {
+                    if (running && this.error == null)
+                        this.sink.flush();
+                } catch (IOException | RuntimeException e) {
+                    setError(e);
+                }
+
+                this.batches++;
+                batch.clear();
+            }
+        } catch (Throwable e) {
+            setError(e);
+        } finally {
+            // Release the emitting threads that wait for a flush that will never be written
+            for (Record record : batch) {
+                if (record.done != null)
+                    record.done.countDown();
+            }
+
+            Record record;
+            while ((record = this.queue.poll()) != null) {
+                if (record.done != null)
+                    record.done.countDown();
+            }
+        }
+    }
+
+    /**
+     * An entry of the queue
+     */
+    private static class Record {
+        static final int WRITE = 0;
+        static final int FINISH = 1;
+        static final int FLUSH = 2;
+        static final int CLOSE = 3;
+
+        final int type;
+        final String file_name;
+        final byte[] data;
+
+        /**
+         * Signals the emitting thread that a flush marker was processed
+         */
+        final CountDownLatch done;
+
+        Record(int type, String file_name, byte[] data) {
+            this.type = type;
+            this.file_name = file_name;
+            this.data = data;
+            this.done = type == FLUSH ? new CountDownLatch(1) : null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package Structure;
+
+/**
+ * <h1>CapturingTransport Class</h1>
+ * A {@link Structure.Transport} that passes everything to another transport and records the traffic to a
+ * {@link Structure.TransportCapture}. The reconnections of a {@link Structure.Connection} create new transports, so
+ * pass the same capture to all of them to get the whole session in one file:
+ * <pre>
+ * TransportCapture capture = new TransportCapture(TransportCapture.createFileName(Constants.CAPTURE_DIR.getStr()));
+ * Connection connection = new Connection(() -&gt; new CapturingTransport(new ModemTransport(), capture), ...);
+ * </pre>
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class CapturingTransport implements Transport {
+
+    private final Transport transport;
+    private final TransportCapture capture;
+
+
+    /**
+     * Constructor
+     *
+     * @param transport the transport to the server
+     * @param capture   the capture that records the traffic
+     */
+    public CapturingTransport(Transport transport, TransportCapture capture) {
+        this.transport = transport;
+        this.capture = capture;
+    }
+
+    @Override
+    public boolean setSpeed(int speed) {
+        return this.transport.setSpeed(speed);
+    }
+
+    @Override
+    public boolean setTimeout(int timeout) {
+        return this.transport.setTimeout(timeout);
+    }
+
+    @Override
+    public boolean open(String mode) {
+        this.capture.open(mode);
+        return this.transport.open(mode);
+    }
+
+    @Override
+    public int read() {
+        int k = this.transport.read();
+
+        if (k == -1)
+            this.capture.timeout();
+        else
+            this.capture.read(k);
+
+        return k;
+    }
+
+    @Override
+    public boolean write(byte[] data) {
+        this.capture.write(data);
+        return this.transport.write(data);
+    }
+
+    @Override
+    public boolean close() {
+        this.capture.closed();
+        return this.transport.close();
+    }
+}
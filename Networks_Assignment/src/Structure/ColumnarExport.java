@@ -0,0 +1,394 @@
+package Structure;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * <h1>ColumnarExport Class</h1>
+ * Collects the measurements of a run in typed columns and saves every column to a raw little endian file. A small JSON
+ * manifest describes the columns so that the analysis scripts can load each one with a single numpy.fromfile or
+ * numpy.memmap call instead of parsing the text files line by line.
+ * <br>
+ * The values are kept in chunks of {@link #CHUNK_ROWS} rows. A full chunk is encoded and emitted to the
+ * {@link Structure.OutputSink} of the export as soon as the export is open (see {@link #open(OutputSink, String)}),
+ * so a long streaming run holds at most one chunk per column in memory. Until then the encoded chunks are kept and
+ * emitted by {@link #save(OutputSink, String, String)}.
+ * <br>
+ * For a base name "dir/echo_packets 2021-01-01 10-00-00" the following files are created:
+ * <ul>
+ *     <li>dir/echo_packets 2021-01-01 10-00-00.json: the manifest</li>
+ *     <li>dir/echo_packets 2021-01-01 10-00-00.&lt;column name&gt;.bin: the values of every column</li>
+ * </ul>
+ * The manifest has the form:
+ * <pre>
+ * {"version": 1, "rows": 1000, "session": "E1234 M1234 ...", "columns": [
+ *   {"name": "response_time_ms", "dtype": "&lt;i4", "file": "echo_packets 2021-01-01 10-00-00.response_time_ms.bin"}]}
+ * </pre>
+ * The dtype values are numpy type strings.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class ColumnarExport {
+
+    /**
+     * The version of the manifest format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The extension of the manifest file
+     */
+    public static final String MANIFEST_EXTENSION = ".json";
+
+    /**
+     * The extension of the column files
+     */
+    public static final String COLUMN_EXTENSION = ".bin";
+
+    /**
+     * The number of values of a column that are encoded and emitted together
+     */
+    public static final int CHUNK_ROWS = 4096;
+
+    /**
+     * The segment number and the extensions of a data file e.g. ".0001.txt.gz". Must match readData.py.
+     */
+    private static final Pattern DATA_FILE_SUFFIX = Pattern.compile("(\\.\\d{4,})?\\.txt(\\.gz)?$");
+
+    /**
+     * The types of the columns and their numpy names
+     */
+    public enum Type {
+        INT32("<i4", 4),
+        INT64("<i8", 8),
+        FLOAT64("<f8", 8);
+
+        private final String dtype;
+        private final int size;
+
+        Type(String dtype, int size) {
+            this.dtype = dtype;
+            this.size = size;
+        }
+
+        public String getDtype() {
+            return dtype;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * The columns in the order they were added
+     */
+    private final List<Column> columns = new ArrayList<>();
+
+    /**
+     * The sink the chunks are emitted to or null if the export is not open
+     */
+    private OutputSink sink = null;
+
+    /**
+     * The path of the files without an extension or null if the export is not open
+     */
+    private String base_name = null;
+
+    /**
+     * The first error of the sink while emitting a chunk. It is reported by {@link #save(OutputSink, String, String)}.
+     */
+    private IOException error = null;
+
+
+    /**
+     * Gets the base name of the files of a data file. The segments of a soak run
+     * (see {@link Structure.RollingOutputSink}) have the same base name as the whole run, e.g. both
+     * "echo_packets 2021-01-01 10-00-00.txt" and "echo_packets 2021-01-01 10-00-00.0003.txt.gz" have the base name
+     * "echo_packets 2021-01-01 10-00-00".
+     *
+     * @param data_file the name of the text data file
+     * @return the name without the segment number and the extensions
+     */
+    public static String getBaseName(String data_file) {
+        return DATA_FILE_SUFFIX.matcher(data_file).replaceFirst("");
+    }
+
+    /**
+     * Adds a new empty column
+     *
+     * @param name the name of the column. Used in the file name so it must not contain / or "
+     * @param type the type of the values
+     * @return the column that the values are added to
+     */
+    public Column addColumn(String name, Type type) {
+        Column column = new Column(name, type);
+        this.columns.add(column);
+
+        return column;
+    }
+
+    /**
+     * Gets the number of rows. The columns should have the same size, if not the shortest is used.
+     *
+     * @return the number of rows
+     */
+    public long getRows() {
+        long rows = this.columns.isEmpty() ? 0 : Long.MAX_VALUE;
+
+        for (Column column : this.columns)
+            rows = Math.min(rows, column.size);
+
+        return rows;
+    }
+
+    /**
+     * @return true if the chunks are emitted to a sink as soon as they are full
+     */
+    public boolean isOpen() {
+        return this.sink != null;
+    }
+
+    /**
+     * Starts emitting the chunks to a sink. The chunks collected so far are emitted at once. Used by the streaming
+     * runs so that the values do not pile up in memory until the end of the run.
+     *
+     * @param sink      the sink that writes the column files
+     * @param base_name the path of the files without an extension
+     */
+    public void open(OutputSink sink, String base_name) {
+        this.sink = sink;
+        this.base_name = base_name;
+
+        for (Column column : this.columns)
+            column.emitPending();
+    }
+
+    /**
+     * Saves the columns and the manifest and clears the export. If the export is open the sink and the base name given
+     * to {@link #open(OutputSink, String)} are used.
+     *
+     * @param sink      the sink that writes the files
+     * @param base_name the path of the files without an extension
+     * @param session   the request codes of the session saved in the manifest
+     * @throws IOException if a file can not be written
+     */
+    public void save(OutputSink sink, String base_name, String session) throws IOException {
+        try {
+            if (!isOpen())
+                open(sink, base_name);
+
+            long rows = getRows();
+            StringBuilder manifest = new StringBuilder();
+
+            manifest.append("{\"version\": ").append(VERSION)
+                    .append(", \"rows\": ").append(rows)
+                    .append(", \"session\": \"").append(escape(session)).append("\"")
+                    .append(", \"columns\": [");
+
+            for (int i = 0; i < this.columns.size(); i++) {
+                Column column = this.columns.get(i);
+
+                column.emit();
+                throwError();
+
+                // An empty record creates the file of a column without values
+                if (column.size == 0)
+                    this.sink.write(column.getFileName(), new byte[0]);
+
+                this.sink.finish(column.getFileName());
+
+                manifest.append(i == 0 ? "" : ", ")
+                        .append("{\"name\": \"").append(escape(column.name))
+                        .append("\", \"dtype\": \"").append(column.type.getDtype())
+                        .append("\", \"file\": \"").append(escape(new File(column.getFileName()).getName()))
+                        .append("\"}");
+            }
+
+            manifest.append("]}").append(System.lineSeparator());
+
+            // The manifest is written last so that a manifest always refers to complete columns
+            String manifest_name = this.base_name + MANIFEST_EXTENSION;
+
+            this.sink.write(manifest_name, manifest.toString().getBytes(StandardCharsets.UTF_8));
+            this.sink.finish(manifest_name);
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Removes all the values and closes the export so that the columns can be used for a new run
+     */
+    public void clear() {
+        for (Column column : this.columns) {
+            column.count = 0;
+            column.size = 0;
+            column.pending.clear();
+        }
+
+        this.sink = null;
+        this.base_name = null;
+        this.error = null;
+    }
+
+    private void throwError() throws IOException {
+        if (this.error != null)
+            throw this.error;
+    }
+
+    private static String escape(String text) {
+        return text == null ? "" : text.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+    /**
+     * A column of values. The values of the current chunk are kept in a long array for the integer types and in a
+     * double array for the floating point type.
+     */
+    public class Column {
+        private final String name;
+        private final Type type;
+
+        private final long[] longs;
+        private final double[] doubles;
+
+        /**
+         * The values in the current chunk
+         */
+        private int count = 0;
+
+        /**
+         * The values added since the last clear
+         */
+        private long size = 0;
+
+        /**
+         * The encoded chunks that wait for the export to open
+         */
+        private final List<byte[]> pending = new ArrayList<>();
+
+        Column(String name, Type type) {
+            this.name = name;
+            this.type = type;
+
+            this.longs = type == Type.FLOAT64 ? null : new long[CHUNK_ROWS];
+            this.doubles = type == Type.FLOAT64 ? new double[CHUNK_ROWS] : null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        /**
+         * Adds a value to an integer column
+         *
+         * @param value the value
+         */
+        public void add(long value) {
+            if (this.longs == null) {
+                add((double) value);
+                return;
+            }
+
+            this.longs[this.count++] = value;
+            this.size++;
+
+            if (this.count == CHUNK_ROWS)
+                emit();
+        }
+
+        /**
+         * Adds a value to a floating point column
+         *
+         * @param value the value
+         */
+        public void add(double value) {
+            if (this.doubles == null) {
+                add(Math.round(value));
+                return;
+            }
+
+            this.doubles[this.count++] = value;
+            this.size++;
+
+            if (this.count == CHUNK_ROWS)
+                emit();
+        }
+
+        private String getFileName() {
+            return base_name + "." + this.name + COLUMN_EXTENSION;
+        }
+
+        /**
+         * Encodes the values of the current chunk and emits them or keeps them until the export is open
+         */
+        void emit() {
+            if (this.count == 0)
+                return;
+
+            ByteBuffer buffer = ByteBuffer.allocate(this.count * this.type.getSize()).order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int i = 0; i < this.count; i++) {
+                switch (this.type) {
+                    case INT32:
+                        buffer.putInt((int) this.longs[i]);
+                        break;
+                    case INT64:
+                        buffer.putLong(this.longs[i]);
+                        break;
+                    case FLOAT64:
+                        buffer.putDouble(this.doubles[i]);
+                        break;
+                }
+            }
+
+            this.count = 0;
+
+            if (sink == null)
+                this.pending.add(buffer.array());
+            else
+                write(buffer.array());
+        }
+
+        /**
+         * Emits the chunks kept before the export was opened
+         */
+        void emitPending() {
+            for (byte[] chunk : this.pending)
+                write(chunk);
+
+            this.pending.clear();
+        }
+
+        /**
+         * Emits a chunk. The values are added on the receive thread, so an error is kept instead of thrown.
+         */
+        private void write(byte[] chunk) {
+            if (error != null)
+                return;
+
+            try {
+                sink.write(getFileName(), chunk);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+}
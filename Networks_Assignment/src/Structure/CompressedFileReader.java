@@ -0,0 +1,197 @@
+package Structure;
+
+import java.io.DataInputStream;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <h1>CompressedFileReader Class</h1>
+ * Random access reader of the files written by {@link Structure.CompressingOutputSink}. The block index of the file is
+ * used to find the GZIP member that contains an uncompressed offset, so a read decompresses only the blocks it needs
+ * instead of the whole file. The last decompressed block is kept so sequential reads decompress every block once.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class CompressedFileReader implements AutoCloseable {
+
+    /**
+     * The size of the header of the members written by {@link Structure.CompressingOutputSink}
+     */
+    private static final int GZIP_HEADER_SIZE = 10;
+
+    /**
+     * The channel of the compressed file
+     */
+    private final FileChannel channel;
+
+    /**
+     * The uncompressed offset of every block and the total size at the end
+     */
+    private final long[] uncompressed;
+
+    /**
+     * The compressed offset of every block and the total size at the end
+     */
+    private final long[] compressed;
+
+    private final Inflater inflater = new Inflater(true);
+
+    /**
+     * The last decompressed block, its number and its length
+     */
+    private byte[] block = new byte[0];
+    private int block_number = -1;
+    private int block_length = 0;
+
+
+    /**
+     * Constructor. Opens the compressed file and loads its index.
+     *
+     * @param file_name the name of the compressed file (ending with .gz)
+     * @throws IOException if the file or its index can not be read
+     */
+    public CompressedFileReader(String file_name) throws IOException {
+        File index_file = new File(file_name + CompressingOutputSink.INDEX_EXTENSION);
+        int entries = (int) (index_file.length() / 16);
+
+        if (entries == 0)
+            throw new IOException("Missing block index: " + index_file.getPath());
+
+        this.uncompressed = new long[entries];
+        this.compressed = new long[entries];
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index_file)))) {
+            for (int i = 0; i < entries; i++) {
+                this.uncompressed[i] = in.readLong();
+                this.compressed[i] = in.readLong();
+            }
+        }
+
+        this.channel = FileChannel.open(new File(file_name).toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Gets the size of the uncompressed data
+     *
+     * @return the size in bytes
+     */
+    public long getSize() {
+        return this.uncompressed[this.uncompressed.length - 1];
+    }
+
+    /**
+     * Gets the number of compressed blocks
+     *
+     * @return the number of blocks
+     */
+    public int getBlockCount() {
+        return this.uncompressed.length - 1;
+    }
+
+    /**
+     * Reads uncompressed bytes starting from any position of the file
+     *
+     * @param position the uncompressed offset of the first byte
+     * @param buffer   the buffer the bytes are copied to
+     * @param offset   the offset in the buffer
+     * @param length   the maximum number of bytes to read
+     * @return the number of bytes read or -1 if the position is at the end of the file
+     * @throws IOException if the file is corrupted or can not be read
+     */
+    public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+        if (position >= getSize())
+            return -1;
+
+        int count = 0;
+
+        while (count < length && position < getSize()) {
+            int number = findBlock(position);
+            loadBlock(number);
+
+            int block_offset = (int) (position - this.uncompressed[number]);
+            int copy = Math.min(length - count, this.block_length - block_offset);
+
+            System.arraycopy(this.block, block_offset, buffer, offset + count, copy);
+            count += copy;
+            position += copy;
+        }
+
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.inflater.end();
+        this.channel.close();
+    }
+
+    /**
+     * Finds the block that contains an uncompressed offset with a binary search in the index
+     */
+    private int findBlock(long position) {
+        int low = 0;
+        int high = getBlockCount() - 1;
+
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+
+            if (this.uncompressed[middle] <= position)
+                low = middle;
+            else
+                high = middle - 1;
+        }
+
+        return low;
+    }
+
+    /**
+     * Decompresses a block unless it is the last one decompressed
+     */
+    private void loadBlock(int number) throws IOException {
+        if (number == this.block_number)
+            return;
+
+        int member_length = (int) (this.compressed[number + 1] - this.compressed[number]);
+        int length = (int) (this.uncompressed[number + 1] - this.uncompressed[number]);
+
+        ByteBuffer member = ByteBuffer.allocate(member_length);
+        long position = this.compressed[number];
+
+        while (member.hasRemaining()) {
+            if (this.channel.read(member, position + member.position()) < 0)
+                throw new IOException("Unexpected end of compressed file");
+        }
+
+        if (this.block.length < length)
+            this.block = new byte[length];
+
+        // The deflate data are between the header and the 8 byte trailer
+        this.inflater.reset();
+        this.inflater.setInput(member.array(), GZIP_HEADER_SIZE, member_length - GZIP_HEADER_SIZE - 8);
+
+        try {
+            int inflated = 0;
+
+            while (inflated < length && !this.inflater.finished())
+                inflated += this.inflater.inflate(this.block, inflated, length - inflated);
+
+            if (inflated != length)
+                throw new IOException("Corrupted block " + number);
+
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted block " + number, e);
+        }
+
+        this.block_number = number;
+        this.block_length = length;
+    }
+}
@@ -0,0 +1,347 @@
+package Structure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <h1>CompressingOutputSink Class</h1>
+ * {@link Structure.OutputSink} that compresses the text destinations while they are written. The saved echo and GPS
+ * files are very repetitive (PSTART/PSTOP framing, NMEA prefixes) so they shrink to a fraction of their size.
+ * <br>
+ * The records of a destination are collected in blocks of {@link #block_size} bytes and every block is compressed to
+ * a separate GZIP member. Concatenated members are a valid GZIP file, so the result (file name + ".gz") can be read by
+ * gzip, zcat or python's gzip module like any other. Because every member can also be decompressed on its own, a block
+ * index (file name + ".gz.idx") is saved when the destination is finished: pairs of uncompressed and compressed offsets
+ * of the blocks (big endian longs). {@link Structure.CompressedFileReader} uses the index to read any part of the file
+ * decompressing only the blocks needed.
+ * <br>
+ * Two modes are available:
+ * <ul>
+ *     <li>{@link #gzip(OutputSink, int)}: any Deflater level (1 fastest - 9 smallest) with large blocks.</li>
+ *     <li>{@link #fastBlock(OutputSink)}: the fastest level with small blocks. Costs some ratio but compresses
+ *     quickly and the random reads decompress less data.</li>
+ * </ul>
+ * Only the destinations ending with {@link #COMPRESSED_EXTENSION} are compressed. The rest (e.g. the images that are
+ * already compressed) pass through unchanged.
+ * <br>
+ * <b>Note: </b> The compression runs in the thread that calls {@link #write(String, byte[])}. Place the sink behind an
+ * {@link Structure.AsyncOutputSink} so that it runs in the writer thread and never delays the receiving.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class CompressingOutputSink implements OutputSink {
+
+    /**
+     * The extension of the destinations that are compressed
+     */
+    public static final String COMPRESSED_EXTENSION = ".txt";
+
+    /**
+     * The extension added to the compressed files
+     */
+    public static final String GZIP_EXTENSION = ".gz";
+
+    /**
+     * The extension of the block index files
+     */
+    public static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * The block size of the gzip mode
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 18;
+
+    /**
+     * The block size of the fast block mode
+     */
+    public static final int FAST_BLOCK_SIZE = 1 << 15;
+
+    /**
+     * The header of every GZIP member: magic, deflate method, no flags, no time, no extra flags, unknown OS
+     */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    /**
+     * The sink that writes the compressed files
+     */
+    private final OutputSink sink;
+
+    /**
+     * The Deflater compression level (1 - 9)
+     */
+    private final int level;
+
+    /**
+     * The uncompressed size of every block in bytes
+     */
+    private final int block_size;
+
+    /**
+     * Compresses the blocks. Reused for all the blocks of all the destinations.
+     */
+    private final Deflater deflater;
+
+    /**
+     * Calculates the checksum of every member
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * The output buffer of the deflater
+     */
+    private final byte[] deflated;
+
+    /**
+     * The compressed member being created
+     */
+    private final ByteArrayOutputStream member;
+
+    /**
+     * The open destinations
+     */
+    private final Map<String, Destination> destinations = new HashMap<>();
+
+    // Statistics
+    private long bytes_in = 0;
+    private long bytes_out = 0;
+    private long compress_nanos = 0;
+
+
+    /**
+     * Constructor
+     *
+     * @param sink       {@link #sink}
+     * @param level      {@link #level}
+     * @param block_size {@link #block_size}
+     */
+    public CompressingOutputSink(OutputSink sink, int level, int block_size) {
+        this.sink = sink;
+        this.level = level;
+        this.block_size = block_size;
+
+        this.deflater = new Deflater(level, true);
+        this.deflated = new byte[1 << 16];
+        this.member = new ByteArrayOutputStream(block_size / 2);
+    }
+
+    /**
+     * Creates a sink that compresses with a specific level and large blocks
+     *
+     * @param sink  the sink that writes the compressed files
+     * @param level the Deflater level (1 fastest - 9 smallest)
+     * @return the new sink
+     */
+    public static CompressingOutputSink gzip(OutputSink sink, int level) {
+        return new CompressingOutputSink(sink, level, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Creates a sink that compresses with the fastest level and small blocks
+     *
+     * @param sink the sink that writes the compressed files
+     * @return the new sink
+     */
+    public static CompressingOutputSink fastBlock(OutputSink sink) {
+        return new CompressingOutputSink(sink, Deflater.BEST_SPEED, FAST_BLOCK_SIZE);
+    }
+
+    @Override
+    public synchronized void write(String file_name, byte[] record) throws IOException {
+        if (!file_name.endsWith(COMPRESSED_EXTENSION)) {
+            this.sink.write(file_name, record);
+            return;
+        }
+
+        Destination destination = this.destinations.get(file_name);
+
+        if (destination == null) {
+            destination = new Destination(file_name + GZIP_EXTENSION, this.block_size);
+            this.destinations.put(file_name, destination);
+        }
+
+        int offset = 0;
+
+        // Fill the block and compress it every time it is full
+        while (offset < record.length) {
+            int length = Math.min(record.length - offset, this.block_size - destination.block_length);
+
+            System.arraycopy(record, offset, destination.block, destination.block_length, length);
+            destination.block_length += length;
+            offset += length;
+
+            if (destination.block_length == this.block_size)
+                writeBlock(destination);
+        }
+    }
+
+    @Override
+    public synchronized void finish(String file_name) throws IOException {
+        Destination destination = this.destinations.remove(file_name);
+
+        if (destination == null) {
+            this.sink.finish(file_name);
+            return;
+        }
+
+        if (destination.block_length > 0 || destination.index_size == 0)
+            writeBlock(destination);
+
+        this.sink.finish(destination.file_name);
+
+        // The index: the offsets of every block and the total sizes at the end
+        ByteArrayOutputStream index = new ByteArrayOutputStream((destination.index_size + 1) * 16);
+        DataOutputStream out = new DataOutputStream(index);
+
+        for (int i = 0; i < destination.index_size * 2; i++)
+            out.writeLong(destination.index[i]);
+
+        out.writeLong(destination.uncompressed);
+        out.writeLong(destination.compressed);
+
+        this.sink.write(destination.file_name + INDEX_EXTENSION, index.toByteArray());
+        this.sink.finish(destination.file_name + INDEX_EXTENSION);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        this.sink.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+
+        synchronized (this) {
+            // Try to finish every destination even if some of them fail
+            for (String file_name : new ArrayList<>(this.destinations.keySet())) {
+                try {
+                    finish(file_name);
+                } catch (IOException e) {
+                    exception = e;
+                }
+            }
+
+            this.deflater.end();
+        }
+
+        this.sink.close();
+
+        if (exception != null)
+            throw exception;
+    }
+
+    /**
+     * Gets the statistics of the compression
+     *
+     * @return the bytes before and after the compression, the ratio and the throughput
+     */
+    public synchronized String getStatistics() {
+        double ratio = this.bytes_out == 0 ? 0 : (double) this.bytes_in / this.bytes_out;
+        double throughput = this.compress_nanos == 0 ? 0 : this.bytes_in / 1048576.0 / (this.compress_nanos / 1e9);
+
+        return String.format(Locale.US, "level: %d block: %d in: %d bytes out: %d bytes ratio: %.2f throughput: %.1f MB/s",
+                this.level, this.block_size, this.bytes_in, this.bytes_out, ratio, throughput);
+    }
+
+    /**
+     * Compresses the current block of a destination to a GZIP member and writes it
+     *
+     * @param destination the destination
+     * @throws IOException if the member can not be written
+     */
+    private void writeBlock(Destination destination) throws IOException {
+        long start = System.nanoTime();
+        int length = destination.block_length;
+
+        this.member.reset();
+        this.member.write(GZIP_HEADER);
+
+        this.crc.reset();
+        this.crc.update(destination.block, 0, length);
+
+        this.deflater.reset();
+        this.deflater.setInput(destination.block, 0, length);
+        this.deflater.finish();
+
+        while (!this.deflater.finished()) {
+            int count = this.deflater.deflate(this.deflated);
+            this.member.write(this.deflated, 0, count);
+        }
+
+        // Trailer: CRC32 and uncompressed size in little endian
+        writeIntLE(this.member, (int) this.crc.getValue());
+        writeIntLE(this.member, length);
+
+        this.compress_nanos += System.nanoTime() - start;
+
+        byte[] bytes = this.member.toByteArray();
+        this.sink.write(destination.file_name, bytes);
+
+        destination.addIndexEntry();
+        destination.uncompressed += length;
+        destination.compressed += bytes.length;
+        destination.block_length = 0;
+
+        this.bytes_in += length;
+        this.bytes_out += bytes.length;
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    /**
+     * The state of a compressed destination
+     */
+    private static class Destination {
+        /**
+         * The name of the compressed file
+         */
+        final String file_name;
+
+        /**
+         * The uncompressed bytes of the current block
+         */
+        final byte[] block;
+        int block_length = 0;
+
+        /**
+         * The uncompressed and compressed offsets of every block
+         */
+        long[] index = new long[2 * 64];
+        int index_size = 0;
+
+        /**
+         * The total sizes written so far
+         */
+        long uncompressed = 0;
+        long compressed = 0;
+
+        Destination(String file_name, int block_size) {
+            this.file_name = file_name;
+            this.block = new byte[block_size];
+        }
+
+        void addIndexEntry() {
+            if (this.index_size * 2 == this.index.length)
+                this.index = Arrays.copyOf(this.index, this.index.length * 2);
+
+            this.index[this.index_size * 2] = this.uncompressed;
+            this.index[this.index_size * 2 + 1] = this.compressed;
+            this.index_size++;
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package Structure;
 
-import ithakimodem.Modem;
+import java.io.IOException;
+import java.util.function.Supplier;
 
 /**
  * The connection class handles the initial connection to the server and the connection mode selection.
+ * <br>
+ * The bytes go through a {@link Structure.Transport}. By default it is the virtual modem to the real server, for
+ * testing without the server use {@link Structure.SocketTransport} to the local {@link Simulator.IthakiSimulator}.
  *
  * @author Vasilis Kyriafinis
  * @version 1.0
@@ -11,13 +15,64 @@ import ithakimodem.Modem;
  */
 public class Connection {
 
-    private Modem modem;
-    private final String echo_code;
-    private String image_code;
-    private String image_code_error;
-    private String gps_code;
-    private final String ack_code;
-    private final String nack_code;
+    /**
+     * Creates a new transport for the first connection and for every reconnection
+     */
+    private final Supplier<Transport> transportFactory;
+
+    private Transport transport;
+
+    /**
+     * The request codes of the session. Immutable so the modules can not change them for each other.
+     */
+    private final SessionConfig config;
+
+    /**
+     * The sink where all the modules that use this connection emit their output
+     */
+    private OutputSink outputSink = new FileOutputSink();
+
+    /**
+     * The binary log of the session. Disabled unless a log is set with {@link #setSessionLog(SessionLog)}.
+     */
+    private SessionLog sessionLog = SessionLog.disabled();
+
+    /**
+     * Added to the names of the files of the modules after the date (with a leading space) so that the files of
+     * concurrent sessions do not collide. Empty for a single session.
+     */
+    private String file_tag = "";
+
+    /**
+     * Counts the traffic of all the transports of the connection
+     */
+    private final TrafficMeter trafficMeter;
+
+    /**
+     * Chooses the speed of every module. Disabled unless a controller is set with
+     * {@link #setSpeedController(SpeedController)}.
+     */
+    private SpeedController speedController = SpeedController.disabled();
+
+    /**
+     * The session kept open in the background for the reconnections. Null unless enabled with
+     * {@link #setHotStandby(boolean)}.
+     */
+    private HotStandby hotStandby = null;
+
+    /**
+     * Decides how the modules recover from a dropped connection with {@link #recover()}
+     */
+    private ReconnectPolicy reconnectPolicy = new ReconnectPolicy();
+
+    /**
+     * True while the data connection is open
+     */
+    private boolean connected = false;
+
+    // The current speed and timeout of the transport. The reconnections use them unless others are given.
+    private int speed;
+    private int timeout;
 
     /**
      * Class constructor. Creates the modem object that is used for the connections
@@ -29,126 +84,283 @@ public class Connection {
      * @param ack       ACK result code     : Q_XXXX
      * @param nack      NACK result code    : R_XXXX
      * @param speed     Speed of the connection
-     * @param timeout   Timeout time in seconds for the connection
+     * @param timeout   Timeout time in milliseconds for the connection
      */
     public Connection(String echo, String image, String image_err, String gps, String ack, String nack, int speed, int timeout) {
-        // Create a new Modem object
-        this.modem = new Modem();
+        this(ModemTransport::new, new SessionConfig(echo, image, image_err, gps, ack, nack, speed, timeout));
+    }
 
-        //Setup the modem for initial connection test
-        modem.setSpeed(speed);  // Connection speed
-        modem.setTimeout(timeout);  // The timeout time. After this time with no activity the connection times out
+    /**
+     * Class constructor. Creates the transport that is used for the connections
+     *
+     * @param transportFactory {@link #transportFactory} e.g. () -&gt; new SocketTransport("localhost", 5000)
+     *
+     * @param echo      Echo request code   : E_XXXX
+     * @param image     Image request code  : M_XXXX  (Tx/Rx error free)
+     * @param image_err Image request code  : G_XXXX  (Tx/Rx with errors)
+     * @param gps       GPS request code    : P_XXXX
+     * @param ack       ACK result code     : Q_XXXX
+     * @param nack      NACK result code    : R_XXXX
+     * @param speed     Speed of the connection
+     * @param timeout   Timeout time in milliseconds for the connection
+     */
+    public Connection(Supplier<Transport> transportFactory, String echo, String image, String image_err, String gps,
+                      String ack, String nack, int speed, int timeout) {
+        this(transportFactory, new SessionConfig(echo, image, image_err, gps, ack, nack, speed, timeout));
+    }
+
+    /**
+     * Class constructor. Creates the modem object that is used for the connections
+     *
+     * @param config the request codes and the link parameters of the session
+     */
+    public Connection(SessionConfig config) {
+        this(ModemTransport::new, config);
+    }
 
-        // Save all the temporary codes from the command line arguments
-        this.echo_code = echo + '\r';
-        this.image_code = image + '\r';
-        this.image_code_error = image_err + '\r';
-        this.gps_code = gps + '\r';
-        this.ack_code = ack + '\r';
-        this.nack_code = nack + '\r';
+    /**
+     * Class constructor. Creates the transport that is used for the connections
+     *
+     * @param transportFactory {@link #transportFactory} e.g. () -&gt; new SocketTransport("localhost", 5000)
+     * @param config           the request codes and the link parameters of the session
+     */
+    public Connection(Supplier<Transport> transportFactory, SessionConfig config) {
+        this.transportFactory = transportFactory;
+        this.config = config;
 
-        // Start the data connection with the server
-        if (startDataConnection()) {
+        this.trafficMeter = new TrafficMeter(config.getNack_code());
+
+        // Create a new Transport object
+        this.transport = this.trafficMeter.wrap(transportFactory.get());
+
+        //Setup the modem for initial connection test
+        setModemSpeed(config.getSpeed());  // Connection speed
+        setModemTimeout(config.getTimeout());  // The timeout time. After this time with no activity the connection times out
+
+        // Start the data connection with the server. If it fails the application checks isConnected() and can try
+        // recover()
+        if (startDataConnection(this.transport)) {
             System.out.println("Connection successful!");
+            this.connected = true;
         } else {
-            System.out.println("Connection failed. Terminating...");
+            System.out.println("Connection failed.");
 
             // Close the connection
-            this.modem.close();
-
-            // Exit program
-            System.exit(-1);
+            this.transport.close();
         }
     }
 
     // Getters Setters
-    public Modem getModem() {
-        return modem;
+    public Transport getTransport() {
+        return transport;
     }
 
-    public String getEcho_code() {
-        return echo_code;
+    public SessionConfig getConfig() {
+        return config;
     }
 
-    public String getImage_code() {
-        return image_code;
+    public String getEcho_code() {
+        return config.getEcho_code();
     }
 
-    public void setImage_code(String code) {
-        this.image_code = code;
+    public String getImage_code() {
+        return config.getImage_code();
     }
 
     public String getImage_code_error() {
-        return image_code_error;
-    }
-
-    public void setImage_code_error(String image_code_error) {
-        this.image_code_error = image_code_error;
+        return config.getImage_code_error();
     }
 
     public String getGps_code() {
-        return gps_code;
+        return config.getGps_code();
     }
 
     public String getAck_code() {
-        return ack_code;
+        return config.getAck_code();
     }
 
     public String getNack_code() {
-        return nack_code;
+        return config.getNack_code();
+    }
+
+    public OutputSink getOutputSink() {
+        return outputSink;
+    }
+
+    /**
+     * Sets the sink where the modules emit their output. The previous sink is not closed.
+     *
+     * @param outputSink the new sink e.g. an {@link Structure.AsyncOutputSink}
+     */
+    public void setOutputSink(OutputSink outputSink) {
+        this.outputSink = outputSink;
+    }
+
+    public String getFile_tag() {
+        return file_tag;
+    }
+
+    /**
+     * Sets the tag added to the file names of the modules e.g. the name of the session. The characters that are not
+     * letters, digits, spaces, - or _ are replaced with _.
+     *
+     * @param file_tag the tag or null for no tag
+     */
+    public void setFile_tag(String file_tag) {
+        this.file_tag = file_tag == null || file_tag.isEmpty() ? "" : " " + file_tag.replaceAll("[^A-Za-z0-9 _-]", "_");
+    }
+
+    public SessionLog getSessionLog() {
+        return sessionLog;
+    }
+
+    /**
+     * Sets the binary log of the session and writes the session codes as its first record. The previous log is not
+     * closed.
+     *
+     * @param sessionLog the new log
+     */
+    public void setSessionLog(SessionLog sessionLog) {
+        this.sessionLog = sessionLog;
+        this.sessionLog.logSessionHeader(getSessionCodes());
+    }
+
+    /**
+     * Gets the request codes of the session without the \r and the extra parameters (camera commands etc).
+     *
+     * @return the six request codes separated with spaces
+     */
+    public String getSessionCodes() {
+        return config.getSessionCodes();
+    }
+
+    /**
+     * Gets the header that identifies the session in the saved data files. All the modules use the same header:
+     * "####" line, the {@link #getSessionCodes()} line and "###" line.
+     *
+     * @return the header lines
+     */
+    public String getSessionHeader() {
+        return "####" + System.lineSeparator() + getSessionCodes() + System.lineSeparator() + "###" +
+                System.lineSeparator();
+    }
+
+    public TrafficMeter getTrafficMeter() {
+        return trafficMeter;
+    }
+
+    public SpeedController getSpeedController() {
+        return speedController;
+    }
+
+    /**
+     * Sets the controller that chooses the speed of every module
+     *
+     * @param speedController the controller e.g. new SpeedController(connection)
+     */
+    public void setSpeedController(SpeedController speedController) {
+        this.speedController = speedController;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public ReconnectPolicy getReconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    public void setReconnectPolicy(ReconnectPolicy reconnectPolicy) {
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
+    public HotStandby getHotStandby() {
+        return hotStandby;
+    }
+
+    /**
+     * Enables or disables the {@link Structure.HotStandby} session. When enabled a second session is opened in the
+     * background and {@link #reconnect(int, int)} switches to it instead of opening a new one.
+     *
+     * @param enabled true to keep a standby session, false to close it
+     */
+    public void setHotStandby(boolean enabled) {
+        if (enabled && this.hotStandby == null) {
+            this.hotStandby = new HotStandby(this, this.transportFactory);
+        } else if (!enabled && this.hotStandby != null) {
+            this.hotStandby.close();
+            this.hotStandby = null;
+        }
+    }
+
+    public int getModemSpeed() {
+        return speed;
+    }
+
+    public int getModemTimeout() {
+        return timeout;
     }
 
     public void setModemSpeed(int speed){
-        this.modem.setSpeed(speed);
+        this.speed = speed;
+        this.transport.setSpeed(speed);
     }
 
     public void setModemTimeout(int timeout){
-        this.modem.setTimeout(timeout);
+        this.timeout = timeout;
+        this.transport.setTimeout(timeout);
     }
 
     /**
-     * Starts the data connection with the server
+     * Starts the data connection with the server and prints its welcome message
      *
+     * @param transport the new transport
      * @return True if the connection is successful false else
      */
-    private boolean startDataConnection() {
+    boolean startDataConnection(Transport transport) {
+        try {
+            System.out.println(readBanner(transport));
+            return true;
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Enters the data mode and reads the welcome message of the server. Nothing is printed, so a background thread
+     * (e.g. of the {@link Structure.HotStandby}) can open a session without mixing its output with the measurements.
+     *
+     * @param transport the new transport
+     * @return the welcome message
+     * @throws IOException if the data mode could not be entered or the message timed out
+     */
+    String readBanner(Transport transport) throws IOException {
         int k;  // The input buffer byte
         StringBuilder packet = new StringBuilder();  // Complete packet
 
         // Start the connection to data mode
-        if (!this.modem.open(Constants.DATA_MODE.getStr())) {
-            // If the connection fails return false
-            System.out.println("Failed to enter data mode!");
-
-            return false;
+        if (!transport.open(Constants.DATA_MODE.getStr()))
+            throw new IOException("Failed to enter data mode!");
 
-        } else {
-            while (true) {
-                try {
-                    // Read the initial byte
-                    k = this.modem.read();
-
-                    // Check for errors
-                    if (k == -1) {
-                        System.out.println("Connection timed out.");
-                        break;
-                    }
-
-                    // Build message
-                    packet.append((char) k);
-
-                    // Detect end of transmission
-                    if (isMessageOver(packet.toString(), Constants.SM_END.getStr())) break;
+        while (true) {
+            try {
+                // Read the initial byte
+                k = transport.read();
+            } catch (Exception x) {
+                throw new IOException("Exception thrown: " + x.toString(), x);
+            }
 
-                } catch (Exception x) {
-                    System.out.println("Exception thrown: " + x.toString());
+            // Check for errors
+            if (k == -1)
+                throw new IOException("Connection timed out.");
 
-                    return false;
-                }
-            }
+            // Build message
+            packet.append((char) k);
 
-            System.out.println(packet.toString());
-            return true;
+            // Detect end of transmission
+            if (isMessageOver(packet.toString(), Constants.SM_END.getStr()))
+                return packet.toString();
         }
     }
 
@@ -156,29 +368,59 @@ public class Connection {
      * The reconnect function re establishes the connection with the server if the server
      *
      * @param speed   Speed of the connection
-     * @param timeout Timeout time in seconds for the connection
+     * @param timeout Timeout time in milliseconds for the connection
      * @return If the connection is successful the function returns true else it returns false
      */
     public boolean reconnect(int speed, int timeout) {
-        this.modem = null;
+        long start_time = System.nanoTime();
+
+        // Switch to the standby session if there is one
+        if (this.hotStandby != null) {
+            Transport standby = this.hotStandby.take(speed, timeout);
+
+            if (standby != null) {
+                this.hotStandby.closeLater(this.transport);
+                this.transport = this.trafficMeter.wrap(standby);
+                this.speed = speed;
+                this.timeout = timeout;
+
+                System.out.println("Switched to the standby connection");
+                this.sessionLog.logReconnect(true, System.nanoTime() - start_time);
+                this.connected = true;
+                return true;
+            }
+
+            System.out.println("No standby connection. Reconnecting...");
+        }
+
+        // Drop the old connection
+        try {
+            this.transport.close();
+        } catch (Exception e) {
+            System.out.println(e.toString());
+        }
 
-        // Create a new Modem object
-        this.modem = new Modem();
+        // Create a new Transport object
+        this.transport = this.trafficMeter.wrap(this.transportFactory.get());
 
         //Setup the modem for initial connection test
-        modem.setSpeed(speed);  // Connection speed
-        modem.setTimeout(timeout);  // The timeout time. After this time with no activity the connection times out
+        setModemSpeed(speed);  // Connection speed
+        setModemTimeout(timeout);  // The timeout time. After this time with no activity the connection times out
 
         // Start the data connection with the server
-        if (startDataConnection()) {
+        if (startDataConnection(this.transport)) {
             System.out.println("Connection successful");
+            this.sessionLog.logReconnect(true, System.nanoTime() - start_time);
+            this.connected = true;
             return true;
         } else {
             System.out.println("Connection failed");
+            this.sessionLog.logReconnect(false, System.nanoTime() - start_time);
+            this.connected = false;
 
             // Close the connection
             try {
-                this.modem.close();
+                this.transport.close();
             } catch (Exception e) {
                 System.out.println(e.toString());
             }
@@ -187,6 +429,24 @@ public class Connection {
         }
     }
 
+    /**
+     * Re establishes the connection with the current speed and timeout
+     *
+     * @return If the connection is successful the function returns true else it returns false
+     */
+    public boolean reconnect() {
+        return reconnect(this.speed, this.timeout);
+    }
+
+    /**
+     * Re establishes the connection with the attempts, backoff and circuit breaker of the {@link #reconnectPolicy}
+     *
+     * @return the status of the recovery
+     */
+    public ReconnectPolicy.Status recover() {
+        return this.reconnectPolicy.recover(this);
+    }
+
     /**
      * Compares a message's end with a pattern string
      *
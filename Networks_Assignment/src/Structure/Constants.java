@@ -46,13 +46,20 @@ public enum Constants {
     // Data output directories
     GPS_DATA_DIR("GPS_Saved_Data/"),
     GPS_IMAGES_DIR("GPS_Saved_Data/GPS Images/"),
+    GPS_IMAGE_CACHE_DIR("GPS_Saved_Data/GPS Image Cache/"),
+    GPS_STITCHED_DIR("GPS_Saved_Data/Stitched Routes/"),
     ECHO_DATA_DIR("Echo_Saved_Data/Normal Packets/"),
     ERR_ECHO_DATA_DIR("Echo_Saved_Data/Error Packets/"),
     IMAGES_DATA_DIR("Images_Saved_Data/"),
+    SESSION_LOG_DIR("Session_Logs/"),
+    ANALYTICS_DIR("Analytics_Summaries/"),
+    CAPTURE_DIR("Captures/"),
+    BENCHMARK_DIR("Benchmark_Results/"),
 
     // File names
     ECHO_FILE_NAME("echo_packets "),
-    ERR_ECHO_FILE_NAME("err_echo_packets ");
+    ERR_ECHO_FILE_NAME("err_echo_packets "),
+    GPS_FILE_NAME("GPS_Data ");
 
 
     private final String constant;
@@ -0,0 +1,130 @@
+package Structure;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <h1>FileOutputSink Class</h1>
+ * The simplest {@link Structure.OutputSink}. Records are written to a buffered file stream in the thread that emits
+ * them. Every destination keeps its file open until it is finished, so a destination is written with a single open
+ * regardless of the number of records.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class FileOutputSink implements OutputSink {
+
+    /**
+     * The size of the buffer of every open file
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * When the data are forced to the storage device
+     */
+    private final FsyncPolicy fsync_policy;
+
+    /**
+     * The open destinations
+     */
+    private final Map<String, Destination> destinations = new HashMap<>();
+
+
+    /**
+     * Default constructor. The data are never forced to the storage device.
+     */
+    public FileOutputSink() {
+        this(FsyncPolicy.NEVER);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param fsync_policy {@link #fsync_policy}
+     */
+    public FileOutputSink(FsyncPolicy fsync_policy) {
+        this.fsync_policy = fsync_policy;
+    }
+
+    @Override
+    public synchronized void write(String file_name, byte[] record) throws IOException {
+        Destination destination = this.destinations.get(file_name);
+
+        if (destination == null) {
+            destination = new Destination(file_name);
+            this.destinations.put(file_name, destination);
+        }
+
+        destination.out.write(record);
+    }
+
+    @Override
+    public synchronized void finish(String file_name) throws IOException {
+        Destination destination = this.destinations.remove(file_name);
+
+        if (destination != null)
+            destination.close(this.fsync_policy != FsyncPolicy.NEVER);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        for (Destination destination : this.destinations.values()) {
+            destination.out.flush();
+
+            if (this.fsync_policy == FsyncPolicy.EVERY_BATCH)
+                destination.file.getFD().sync();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException exception = null;
+
+        // Try to close every file even if some of them fail
+        for (String file_name : new ArrayList<>(this.destinations.keySet())) {
+            try {
+                finish(file_name);
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+
+        if (exception != null)
+            throw exception;
+    }
+
+    /**
+     * An open destination file
+     */
+    private static class Destination {
+        final FileOutputStream file;
+        final BufferedOutputStream out;
+
+        Destination(String file_name) throws IOException {
+            File file = new File(file_name);
+
+            if (file.getParentFile() != null)
+                file.getParentFile().mkdirs();
+
+            this.file = new FileOutputStream(file);
+            this.out = new BufferedOutputStream(this.file, BUFFER_SIZE);
+        }
+
+        void close(boolean sync) throws IOException {
+            try {
+                this.out.flush();
+
+                if (sync)
+                    this.file.getFD().sync();
+            } finally {
+                this.out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package Structure;
+
+import Analytics.Histogram;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * <h1>HotStandby Class</h1>
+ * Keeps a second session with the server open in the background, so that {@link Structure.Connection#reconnect(int,
+ * int)} can switch to it at once instead of creating a new transport, opening the mode and reading the whole banner
+ * while the measurements wait.
+ * <br>
+ * The standby is opened by a background thread. {@link #take(int, int)} hands the open standby to the connection and
+ * starts opening the next one at once. If the standby is still opening the connection waits for it, which is still
+ * faster than starting from the beginning, and if it failed the connection falls back to a normal reconnection. The
+ * old transports are closed by the background thread too.
+ * <br>
+ * The welcome message of a standby is not printed by the background thread. It is kept and printed by
+ * {@link #take(int, int)}, so it appears in order with the output of the connection.
+ * <br>
+ * Statistics: the failovers and their latency, the times the connection had to wait for the standby, the fallbacks and
+ * the time it takes to open a standby.
+ * <br>
+ * <b>Note:</b> The server must accept a second session with the same codes while the first one is open. The local
+ * {@link Simulator.IthakiSimulator} does. A standby that stays idle for long may also be dropped by the server, then
+ * the first read after the switch times out and the connection switches again to the next standby.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class HotStandby {
+
+    private final Connection connection;
+    private final Supplier<Transport> transportFactory;
+
+    /**
+     * Opens the standby sessions and closes the old transports
+     */
+    private final ExecutorService opener;
+
+    /**
+     * The standby in progress. Gives null if the session could not be opened.
+     */
+    private Future<Transport> standby;
+
+    /**
+     * The welcome message of the last opened standby. Written before its future completes.
+     */
+    private volatile String banner = null;
+
+    private volatile boolean closed = false;
+
+    // Statistics
+    private final Histogram failover_micros = new Histogram(100);
+    private final Histogram open_millis = new Histogram(10);
+    private long failovers = 0;
+    private long waits = 0;
+    private long fallbacks = 0;
+    private long open_failures = 0;
+
+
+    /**
+     * Constructor. Starts opening the first standby.
+     *
+     * @param connection       the connection that uses the standby
+     * @param transportFactory creates the transports of the standby sessions
+     */
+    HotStandby(Connection connection, Supplier<Transport> transportFactory) {
+        this.connection = connection;
+        this.transportFactory = transportFactory;
+
+        this.opener = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "HotStandby opener");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        refill();
+    }
+
+    /**
+     * Starts opening a new standby with the current speed and timeout of the connection
+     */
+    private void refill() {
+        int speed = this.connection.getModemSpeed();
+        int timeout = this.connection.getModemTimeout();
+
+        this.standby = this.opener.submit(() -> open(speed, timeout));
+    }
+
+    /**
+     * Opens a standby session. Runs in the background thread.
+     *
+     * @return the open transport or null if it failed
+     */
+    private Transport open(int speed, int timeout) {
+        long start = System.nanoTime();
+        Transport transport = this.transportFactory.get();
+
+        transport.setSpeed(speed);
+        transport.setTimeout(timeout);
+
+        boolean opened;
+
+        try {
+            this.banner = this.connection.readBanner(transport);
+            opened = true;
+        } catch (IOException e) {
+            opened = false;
+        }
+
+        recordOpen(opened, System.nanoTime() - start);
+
+        if (!opened || this.closed) {
+            transport.close();
+            return null;
+        }
+
+        return transport;
+    }
+
+    private synchronized void recordOpen(boolean opened, long nanos) {
+        if (opened)
+            this.open_millis.add(nanos / 1000000);
+        else
+            this.open_failures++;
+    }
+
+    /**
+     * Takes the standby session and starts opening the next one. Waits up to the timeout if the standby is still
+     * opening.
+     *
+     * @param speed   the speed of the connection
+     * @param timeout the timeout of the connection in milliseconds
+     * @return the open transport or null if there is no standby (the connection must reconnect normally)
+     */
+    Transport take(int speed, int timeout) {
+        long start = System.nanoTime();
+        Transport transport = null;
+
+        if (!this.standby.isDone())
+            recordWait();
+
+        try {
+            transport = this.standby.get(Math.max(1, timeout), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            this.standby.cancel(true);
+            System.out.println("Standby connection did not open in time");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.out.println("Failed to open standby connection with exception: " + e.getCause().toString());
+        }
+
+        // Before the next standby replaces the banner
+        if (transport != null)
+            System.out.println(this.banner);
+
+        refill();
+
+        if (transport == null) {
+            recordFailover(false, 0);
+            return null;
+        }
+
+        transport.setSpeed(speed);
+        transport.setTimeout(timeout);
+
+        recordFailover(true, System.nanoTime() - start);
+        return transport;
+    }
+
+    private synchronized void recordWait() {
+        this.waits++;
+    }
+
+    private synchronized void recordFailover(boolean success, long nanos) {
+        if (success) {
+            this.failovers++;
+            this.failover_micros.add(nanos / 1000);
+        } else {
+            this.fallbacks++;
+        }
+    }
+
+    /**
+     * Closes a transport in the background thread so that the connection does not wait for it
+     *
+     * @param transport the old transport
+     */
+    void closeLater(Transport transport) {
+        try {
+            this.opener.execute(transport::close);
+        } catch (Exception e) {
+            transport.close();
+        }
+    }
+
+    /**
+     * Stops opening standby sessions and closes the standby
+     */
+    void close() {
+        this.closed = true;
+
+        if (this.standby.isDone()) {
+            try {
+                Transport transport = this.standby.get();
+
+                if (transport != null)
+                    transport.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // The standby was never opened
+            }
+        }
+
+        // A standby still opening is closed by open() because closed is set
+        this.opener.shutdown();
+    }
+
+    /**
+     * Creates the statistics of the standby
+     *
+     * @return the statistics in one line
+     */
+    public synchronized String getStatistics() {
+        return "failovers=" + this.failovers + " waits=" + this.waits + " fallbacks=" + this.fallbacks +
+                " open_failures=" + this.open_failures + System.lineSeparator() +
+                "Failover latency us " + this.failover_micros.getSummary() + System.lineSeparator() +
+                "Standby open time ms " + this.open_millis.getSummary();
+    }
+}
@@ -0,0 +1,50 @@
+package Structure;
+
+import ithakimodem.Modem;
+
+/**
+ * <h1>ModemTransport Class</h1>
+ * The {@link Structure.Transport} of the ithakimodem virtual modem. Connects to the real Ithaki server.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class ModemTransport implements Transport {
+
+    private final Modem modem = new Modem();
+
+    @Override
+    public boolean setSpeed(int speed) {
+        return this.modem.setSpeed(speed);
+    }
+
+    @Override
+    public boolean setTimeout(int timeout) {
+        return this.modem.setTimeout(timeout);
+    }
+
+    @Override
+    public boolean open(String mode) {
+        return this.modem.open(mode);
+    }
+
+    @Override
+    public int read() {
+        return this.modem.read();
+    }
+
+    @Override
+    public boolean write(byte[] data) {
+        return this.modem.write(data);
+    }
+
+    @Override
+    public boolean close() {
+        return this.modem.close();
+    }
+
+    public Modem getModem() {
+        return modem;
+    }
+}
@@ -0,0 +1,80 @@
+package Structure;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This interface dictates the methods needed for the output of the data modules. Instead of opening and writing files
+ * themselves the modules emit records to a sink that decides how and when the records reach the disk.
+ * <br>
+ * Records are always appended to a destination that is identified by its file name. A destination is created by its
+ * first record and it is complete after {@link #finish(String)} is called for it.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public interface OutputSink extends Closeable {
+
+    /**
+     * When the written data are forced to the storage device with fsync
+     */
+    enum FsyncPolicy {
+        /**
+         * Never. The operating system decides when the data are written
+         */
+        NEVER,
+        /**
+         * When a destination is finished
+         */
+        ON_FINISH,
+        /**
+         * After every batch of records and when a destination is finished
+         */
+        EVERY_BATCH
+    }
+
+    /**
+     * Appends a record to a destination
+     *
+     * @param file_name the name of the destination file
+     * @param record    the bytes of the record
+     * @throws IOException if the record can not be written
+     */
+    void write(String file_name, byte[] record) throws IOException;
+
+    /**
+     * Appends a text record to a destination. The text is encoded in UTF-8.
+     *
+     * @param file_name the name of the destination file
+     * @param record    the text of the record
+     * @throws IOException if the record can not be written
+     */
+    default void write(String file_name, String record) throws IOException {
+        write(file_name, record.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Marks a destination as complete. All its records are written and the file is closed.
+     *
+     * @param file_name the name of the destination file
+     * @throws IOException if the file can not be written or closed
+     */
+    void finish(String file_name) throws IOException;
+
+    /**
+     * Writes all the records emitted so far
+     *
+     * @throws IOException if the records can not be written
+     */
+    void flush() throws IOException;
+
+    /**
+     * Finishes all the destinations and releases the resources of the sink
+     *
+     * @throws IOException if the records can not be written
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,240 @@
+package Structure;
+
+import Analytics.Histogram;
+
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>ReconnectPolicy Class</h1>
+ * Decides how a {@link Structure.Connection} recovers from a dropped or timed out connection, so that a long batch run
+ * keeps going through short outages and stops cleanly (instead of retrying forever or exiting) through long ones.
+ * <br>
+ * {@link #recover(Connection)} tries {@link Structure.Connection#reconnect()} up to {@link #max_attempts} times. The
+ * first attempt is made at once and the wait before every next attempt grows exponentially from
+ * {@link #initial_delay} by {@link #multiplier} up to {@link #max_delay}. A random part of every wait
+ * ({@link #jitter}) is removed so that many sessions do not retry at the same moments.
+ * <br>
+ * Circuit breaker: after {@link #failure_threshold} recoveries in a row that used the whole attempt budget the circuit
+ * opens and the recoveries fail at once with {@link Status#CIRCUIT_OPEN} for {@link #open_time} ms. After that one
+ * recovery makes a single attempt (half open) while the recoveries of the other sessions still fail at once. If the
+ * attempt succeeds the circuit closes, else it opens again.
+ * <br>
+ * A recovery of an interrupted thread (e.g. a cancelled job) stops with {@link Status#INTERRUPTED}. It is not counted
+ * as a failure, so cancelling many jobs does not open the circuit.
+ * <br>
+ * Statistics: the recoveries, the attempts, the failures, the times the circuit opened and the time to recover.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class ReconnectPolicy {
+
+    /**
+     * The result of a recovery
+     */
+    public enum Status {
+        /**
+         * The connection is open again
+         */
+        RECOVERED,
+        /**
+         * All the attempts failed
+         */
+        FAILED,
+        /**
+         * No attempt was made because the circuit is open
+         */
+        CIRCUIT_OPEN,
+        /**
+         * The thread was interrupted. The failures of the circuit breaker are not changed
+         */
+        INTERRUPTED
+    }
+
+    // Backoff in milliseconds
+    private long initial_delay = 500;
+    private long max_delay = 30000;
+    private double multiplier = 2;
+    private double jitter = 0.5;  // The fraction of every wait that is random
+    private int max_attempts = 5;
+
+    // Circuit breaker
+    private int failure_threshold = 3;
+    private long open_time = 60000;  // ms
+    private int failures_in_row = 0;
+    private long open_until = 0;  // nanoTime
+    private boolean probing = false;  // A half open attempt is in progress
+
+    private final Random random = new Random();
+
+    // Statistics
+    private final Histogram recover_millis = new Histogram(100);
+    private long recoveries = 0;
+    private long attempts = 0;
+    private long failures = 0;
+    private long circuit_opens = 0;
+    private long rejected = 0;
+    private long interrupted = 0;
+
+
+    /**
+     * Constructor with the default backoff (500 ms doubling up to 30 s, 5 attempts) and circuit breaker (3 failed
+     * recoveries open it for 60 s)
+     */
+    public ReconnectPolicy() {
+    }
+
+    /**
+     * Sets the backoff of the attempts
+     *
+     * @param initial_delay {@link #initial_delay} in ms
+     * @param max_delay     {@link #max_delay} in ms
+     * @param multiplier    {@link #multiplier}
+     * @param jitter        {@link #jitter} from 0 (fixed waits) to 1 (waits from 0 to the full delay)
+     */
+    public void setBackoff(long initial_delay, long max_delay, double multiplier, double jitter) {
+        this.initial_delay = initial_delay;
+        this.max_delay = max_delay;
+        this.multiplier = Math.max(1, multiplier);
+        this.jitter = Math.min(1, Math.max(0, jitter));
+    }
+
+    public void setMax_attempts(int max_attempts) {
+        this.max_attempts = Math.max(1, max_attempts);
+    }
+
+    /**
+     * Sets the circuit breaker
+     *
+     * @param failure_threshold {@link #failure_threshold}
+     * @param open_time         {@link #open_time} in ms
+     */
+    public void setCircuitBreaker(int failure_threshold, long open_time) {
+        this.failure_threshold = Math.max(1, failure_threshold);
+        this.open_time = open_time;
+    }
+
+    public synchronized boolean isCircuitOpen() {
+        return this.open_until != 0 && System.nanoTime() - this.open_until < 0;
+    }
+
+    /**
+     * Recovers a connection with the attempts of the policy
+     *
+     * @param connection the connection that dropped or timed out
+     * @return the status of the recovery
+     */
+    public Status recover(Connection connection) {
+        long start = System.nanoTime();
+        int budget;
+
+        synchronized (this) {
+            if (isCircuitOpen()) {
+                this.rejected++;
+                System.out.println("Reconnection skipped. The circuit is open for " +
+                        (this.open_until - start) / 1000000 + " ms more");
+                return Status.CIRCUIT_OPEN;
+            }
+
+            // Half open: one attempt of one recovery decides if the circuit closes
+            if (this.open_until != 0) {
+                if (this.probing) {
+                    this.rejected++;
+                    System.out.println("Reconnection skipped. Another session is testing the connection");
+                    return Status.CIRCUIT_OPEN;
+                }
+
+                this.probing = true;
+                budget = 1;
+            } else {
+                budget = this.max_attempts;
+            }
+        }
+
+        for (int attempt = 0; attempt < budget; attempt++) {
+            if (attempt > 0) {
+                long delay = getDelay(attempt);
+                System.out.println("Reconnecting in " + delay + " ms (attempt " + (attempt + 1) + " of " + budget +
+                        ")");
+                LockSupport.parkNanos(delay * 1000000L);
+            }
+
+            // The thread was interrupted (e.g. a cancelled job of the JobRunner). Do not reconnect.
+            if (Thread.currentThread().isInterrupted())
+                return interrupted();
+
+            synchronized (this) {
+                this.attempts++;
+            }
+
+            if (connection.reconnect()) {
+                synchronized (this) {
+                    this.recoveries++;
+                    this.failures_in_row = 0;
+                    this.open_until = 0;
+                    this.probing = false;
+                    this.recover_millis.add((System.nanoTime() - start) / 1000000);
+                }
+
+                return Status.RECOVERED;
+            }
+
+            // Cancelling a job also closes its transport, so the attempt failed because of the interrupt
+            if (Thread.currentThread().isInterrupted())
+                return interrupted();
+        }
+
+        synchronized (this) {
+            this.failures++;
+            this.probing = false;
+
+            if (++this.failures_in_row >= this.failure_threshold || this.open_until != 0) {
+                this.open_until = System.nanoTime() + this.open_time * 1000000L;
+                this.circuit_opens++;
+                System.out.println("Reconnection failed " + this.failures_in_row +
+                        " times in a row. Circuit open for " + this.open_time + " ms");
+            }
+        }
+
+        return Status.FAILED;
+    }
+
+    /**
+     * Ends an interrupted recovery without counting a failure. A half open attempt is left to the next recovery.
+     */
+    private synchronized Status interrupted() {
+        this.interrupted++;
+        this.probing = false;
+
+        return Status.INTERRUPTED;
+    }
+
+    /**
+     * Calculates the wait before an attempt
+     *
+     * @param attempt the attempt (1 for the first retry)
+     * @return the wait in ms
+     */
+    long getDelay(int attempt) {
+        double delay = Math.min(this.max_delay, this.initial_delay * Math.pow(this.multiplier, attempt - 1));
+
+        synchronized (this.random) {
+            delay -= delay * this.jitter * this.random.nextDouble();
+        }
+
+        return Math.round(delay);
+    }
+
+    /**
+     * Creates the statistics of the policy
+     *
+     * @return the statistics in one line
+     */
+    public synchronized String getStatistics() {
+        return "recoveries=" + this.recoveries + " attempts=" + this.attempts + " failures=" + this.failures +
+                " circuit_opens=" + this.circuit_opens + " rejected=" + this.rejected + " interrupted=" +
+                this.interrupted + " time to recover ms " + this.recover_millis.getSummary();
+    }
+}
@@ -0,0 +1,262 @@
+package Structure;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>ReplayTransport Class</h1>
+ * A {@link Structure.Transport} that plays back a file of a {@link Structure.TransportCapture} instead of connecting
+ * to a server. The modules get exactly the bytes the server sent, so a bug or a slow response of a session can be
+ * reproduced and the parsing and saving code can be measured with a real input.
+ * <br>
+ * The events of the capture are followed in order:
+ * <ul>
+ *     <li>{@link #open(String)} skips to the next OPEN event. Returns false at the end of the capture.</li>
+ *     <li>{@link #write(byte[])} skips to the next WRITE event. Requests that differ from the captured are counted
+ *     as mismatches.</li>
+ *     <li>{@link #read()} returns the bytes of the READ events and -1 at a TIMEOUT event or when the captured
+ *     response is over.</li>
+ * </ul>
+ * With the original speed every byte is returned at the same time after the last request as in the capture. Otherwise
+ * the bytes are returned as fast as possible.
+ * <br>
+ * The reconnections must continue from the same position of the capture, so create one replay and return it from the
+ * factory of the {@link Structure.Connection}: new Connection(() -&gt; replay, ...). {@link #close()} does not close
+ * the file, use {@link #release()} when the replay is over.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class ReplayTransport implements Transport {
+
+    private final DataInputStream in;
+
+    /**
+     * True to replay at the original speed, false for as fast as possible
+     */
+    private final boolean original_speed;
+
+    // The next event of the capture
+    private TransportCapture.EventType type;
+    private long event_time;  // microseconds since the start of the capture
+    private byte[] payload = new byte[TransportCapture.MAX_READ_EVENT];
+    private int payload_length;
+    private long[] gaps = new long[TransportCapture.MAX_READ_EVENT];
+    private int position;  // The next byte of a READ event
+
+    // The time of the last WRITE or OPEN in the capture and in the replay
+    private long anchor_time = 0;
+    private long anchor_nanos = System.nanoTime();
+    private long byte_time;
+
+    // Statistics
+    private long bytes_read = 0;
+    private long writes = 0;
+    private long mismatches = 0;
+
+
+    /**
+     * Constructor. Opens the capture file.
+     *
+     * @param file_name      the capture file
+     * @param original_speed {@link #original_speed}
+     * @throws IOException if the file is not a capture or can not be read
+     */
+    public ReplayTransport(String file_name, boolean original_speed) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file_name), 1 << 16));
+        this.original_speed = original_speed;
+
+        if (this.in.readInt() != TransportCapture.FILE_MAGIC) {
+            this.in.close();
+            throw new IOException("Not a capture file: " + file_name);
+        }
+
+        int version = this.in.readInt();
+
+        if (version != TransportCapture.FILE_VERSION) {
+            this.in.close();
+            throw new IOException("Unsupported capture version: " + version);
+        }
+
+        this.in.readLong();  // The start of the capture
+        nextEvent();
+    }
+
+    /**
+     * Reads the next event of the capture. At the end of the file the type becomes null.
+     */
+    private void nextEvent() {
+        try {
+            int id = this.in.read();
+
+            if (id == -1) {
+                this.type = null;
+                return;
+            }
+
+            this.type = TransportCapture.EventType.fromId(id);
+
+            if (this.type == null)
+                throw new IOException("Unknown capture event: " + id);
+
+            this.event_time += TransportCapture.readVarint(this.in);
+            this.payload_length = 0;
+            this.position = 0;
+
+            if (this.type == TransportCapture.EventType.OPEN || this.type == TransportCapture.EventType.WRITE ||
+                    this.type == TransportCapture.EventType.READ) {
+                this.payload_length = (int) TransportCapture.readVarint(this.in);
+
+                if (this.payload.length < this.payload_length)
+                    this.payload = new byte[this.payload_length];
+
+                this.in.readFully(this.payload, 0, this.payload_length);
+            }
+
+            if (this.type == TransportCapture.EventType.READ) {
+                if (this.gaps.length < this.payload_length)
+                    this.gaps = new long[this.payload_length];
+
+                this.gaps[0] = 0;
+
+                for (int i = 1; i < this.payload_length; i++)
+                    this.gaps[i] = TransportCapture.readVarint(this.in);
+
+                this.byte_time = this.event_time;
+            }
+        } catch (EOFException e) {
+            System.out.println("Capture ends in the middle of an event");
+            this.type = null;
+        } catch (IOException e) {
+            System.out.println("Failed to read capture with exception: " + e.toString());
+            this.type = null;
+        }
+    }
+
+    /**
+     * Skips events until an event of a type
+     *
+     * @return true if the event was found, false at the end of the capture
+     */
+    private boolean skipTo(TransportCapture.EventType wanted) {
+        while (this.type != null && this.type != wanted)
+            nextEvent();
+
+        return this.type != null;
+    }
+
+    /**
+     * Waits until the time of an event after the last request if the replay runs at the original speed
+     */
+    private void waitFor(long time) {
+        if (!this.original_speed)
+            return;
+
+        long due = this.anchor_nanos + (time - this.anchor_time) * 1000;
+        long wait = due - System.nanoTime();
+
+        if (wait > 0)
+            LockSupport.parkNanos(wait);
+    }
+
+    /**
+     * Starts the timing of the next responses from now
+     */
+    private void anchor() {
+        this.anchor_time = this.event_time;
+        this.anchor_nanos = System.nanoTime();
+    }
+
+    @Override
+    public boolean setSpeed(int speed) {
+        return true;
+    }
+
+    @Override
+    public boolean setTimeout(int timeout) {
+        return true;
+    }
+
+    @Override
+    public boolean open(String mode) {
+        if (!skipTo(TransportCapture.EventType.OPEN))
+            return false;
+
+        anchor();
+        nextEvent();
+        return true;
+    }
+
+    @Override
+    public int read() {
+        if (this.type == TransportCapture.EventType.READ && this.position == this.payload_length)
+            nextEvent();
+
+        if (this.type == TransportCapture.EventType.TIMEOUT) {
+            waitFor(this.event_time);
+            nextEvent();
+            return -1;
+        }
+
+        // The module reads more than the server sent in the capture
+        if (this.type != TransportCapture.EventType.READ)
+            return -1;
+
+        this.byte_time += this.gaps[this.position];
+        waitFor(this.byte_time);
+
+        this.bytes_read++;
+        return this.payload[this.position++] & 0xFF;
+    }
+
+    @Override
+    public boolean write(byte[] data) {
+        if (!skipTo(TransportCapture.EventType.WRITE))
+            return false;
+
+        this.writes++;
+
+        if (!Arrays.equals(data, Arrays.copyOf(this.payload, this.payload_length))) {
+            if (this.mismatches++ == 0)
+                System.out.println("Replay: request " + new String(data, StandardCharsets.US_ASCII).trim() +
+                        " differs from the captured " +
+                        new String(this.payload, 0, this.payload_length, StandardCharsets.US_ASCII).trim());
+        }
+
+        anchor();
+        nextEvent();
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        return true;
+    }
+
+    /**
+     * Closes the capture file
+     */
+    public void release() {
+        try {
+            this.in.close();
+        } catch (IOException e) {
+            System.out.println("Failed to close capture with exception: " + e.toString());
+        }
+    }
+
+    /**
+     * Creates the statistics of the replay
+     *
+     * @return the statistics in one line
+     */
+    public String getStatistics() {
+        return "bytes_read=" + this.bytes_read + " writes=" + this.writes + " mismatches=" + this.mismatches;
+    }
+}
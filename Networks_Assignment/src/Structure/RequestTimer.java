@@ -0,0 +1,294 @@
+package Structure;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * <h1>RequestTimer Class</h1>
+ * Splits the time of every request to the server in phases using the monotonic {@link System#nanoTime()} clock:
+ * <ul>
+ *     <li>write: from just before the request code is written to the modem until the write returns,</li>
+ *     <li>first byte: from the start until the first byte of the response is read (time to first byte),</li>
+ *     <li>last byte: from the start until the response is complete (time to last byte).</li>
+ * </ul>
+ * Every attempt (e.g. every ACK and NACK of the ARQ mechanism) is a separate row with the number of the request and
+ * the attempt. The rows are kept in preallocated arrays of a fixed capacity (a ring buffer), so recording a phase is
+ * a nanoTime call and a store to an array. When the arrays are full the oldest row is overwritten, so a soak run uses
+ * constant memory and the last rows are saved next to the results of the module as {@link Structure.ColumnarExport}
+ * columns. The summary covers all the attempts.
+ * <br>
+ * The capacity of a run is derived from its {@link Structure.RunLimit} with {@link #getCapacity(RunLimit)}.
+ * <br>
+ * Usage: {@link #start(int, int)}, {@link #writeReturned()}, {@link #byteReceived()} for every byte read and
+ * {@link #complete()} when the response is complete or {@link #abort()} if it failed.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class RequestTimer {
+
+    /**
+     * The capacity of a timer created without one
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The largest capacity. About 2.5 MB of arrays.
+     */
+    public static final int MAX_CAPACITY = 65536;
+
+    /**
+     * The shortest expected attempt in milliseconds. Used to size the timer of a run that is limited only by time.
+     */
+    private static final long MIN_ATTEMPT_MILLIS = 10;
+
+    /**
+     * The nanoTime the timer was created. The start of the attempts is saved relative to it.
+     */
+    private final long origin = System.nanoTime();
+
+    // The saved attempts. A ring buffer: next is the index of the next row and count the number of saved rows
+    private int[] requests;
+    private int[] attempts;
+    private long[] starts;
+    private long[] writes;
+    private long[] first_bytes;
+    private long[] last_bytes;
+    private int next = 0;
+    private int count = 0;
+
+    // The attempt in progress
+    private int request;
+    private int attempt;
+    private long start;
+    private long write;
+    private long first_byte;
+    private long last_byte;
+
+    // Sums of the completed attempts for the summary
+    private long completed = 0;
+    private long write_sum = 0;
+    private long first_byte_sum = 0;
+    private long last_byte_sum = 0;
+
+
+    /**
+     * Constructor with the {@link #DEFAULT_CAPACITY}
+     */
+    public RequestTimer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param capacity the number of attempts that are saved
+     */
+    public RequestTimer(int capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * Gets the capacity that holds all the attempts of a run, up to {@link #MAX_CAPACITY}. A run limited by packets
+     * needs a row for every packet (the retransmissions of the last packets overwrite the first rows). A run limited
+     * only by time needs a row for every {@link #MIN_ATTEMPT_MILLIS}.
+     *
+     * @param runLimit the limit of the run
+     * @return the capacity
+     */
+    public static int getCapacity(RunLimit runLimit) {
+        long capacity = MAX_CAPACITY;
+
+        if (runLimit.getPackets() > 0)
+            capacity = Math.min(capacity, runLimit.getPackets());
+
+        if (runLimit.getDuration() > 0)
+            capacity = Math.min(capacity, runLimit.getDuration() / MIN_ATTEMPT_MILLIS);
+
+        return (int) Math.max(1, capacity);
+    }
+
+    /**
+     * Changes the number of attempts that are saved. The saved attempts are removed if the capacity changes.
+     *
+     * @param capacity the number of attempts that are saved
+     */
+    public void setCapacity(int capacity) {
+        if (capacity != this.requests.length)
+            allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.requests = new int[capacity];
+        this.attempts = new int[capacity];
+        this.starts = new long[capacity];
+        this.writes = new long[capacity];
+        this.first_bytes = new long[capacity];
+        this.last_bytes = new long[capacity];
+        this.next = 0;
+        this.count = 0;
+    }
+
+    /**
+     * Starts timing an attempt. Call just before the request is written to the modem.
+     *
+     * @param request the number of the request
+     * @param attempt the number of the attempt for the request (0 for the first)
+     */
+    public void start(int request, int attempt) {
+        this.request = request;
+        this.attempt = attempt;
+        this.write = -1;
+        this.first_byte = -1;
+        this.last_byte = -1;
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Marks the return of the write of the request
+     */
+    public void writeReturned() {
+        this.write = System.nanoTime();
+    }
+
+    /**
+     * Marks that a byte of the response was read. Only the first call of every attempt takes a time.
+     */
+    public void byteReceived() {
+        if (this.first_byte < 0)
+            this.first_byte = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of the response and saves the attempt
+     *
+     * @return the time to last byte in nanoseconds
+     */
+    public long complete() {
+        this.last_byte = System.nanoTime();
+
+        if (this.write < 0)
+            this.write = this.start;
+        if (this.first_byte < 0)
+            this.first_byte = this.last_byte;
+
+        // Overwrites the oldest row when the arrays are full
+        this.requests[this.next] = this.request;
+        this.attempts[this.next] = this.attempt;
+        this.starts[this.next] = this.start - this.origin;
+        this.writes[this.next] = this.write - this.start;
+        this.first_bytes[this.next] = this.first_byte - this.start;
+        this.last_bytes[this.next] = this.last_byte - this.start;
+
+        this.next = (this.next + 1) % this.requests.length;
+        this.count = Math.min(this.count + 1, this.requests.length);
+
+        this.completed++;
+        this.write_sum += this.write - this.start;
+        this.first_byte_sum += this.first_byte - this.start;
+        this.last_byte_sum += this.last_byte - this.start;
+
+        return this.last_byte - this.start;
+    }
+
+    /**
+     * Drops the attempt in progress (e.g. after a time out)
+     */
+    public void abort() {
+        this.last_byte = -1;
+    }
+
+    /**
+     * Gets the nanoTime the last attempt started
+     *
+     * @return the nanoTime
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Gets the nanoTime the last completed attempt received its last byte
+     *
+     * @return the nanoTime or -1 if the last attempt was not completed
+     */
+    public long getLastByte() {
+        return last_byte;
+    }
+
+    /**
+     * Gets the number of saved attempts. At most the capacity of the timer.
+     *
+     * @return the number of rows
+     */
+    public int getAttempts() {
+        return this.count;
+    }
+
+    /**
+     * Creates a summary with the average of every phase
+     *
+     * @return the summary in one line
+     */
+    public String getSummary() {
+        double n = Math.max(1, this.completed) * 1e6;
+
+        return String.format(Locale.US, "attempts=%d saved=%d write_ms_avg=%.3f first_byte_ms_avg=%.3f " +
+                        "last_byte_ms_avg=%.3f", this.completed, this.count, this.write_sum / n, this.first_byte_sum / n,
+                this.last_byte_sum / n);
+    }
+
+    /**
+     * Saves the attempts from the oldest to the newest with
+     * {@link Structure.ColumnarExport#save(OutputSink, String, String)} and clears them
+     *
+     * @param sink      the sink that writes the files
+     * @param base_name the path of the files without an extension
+     * @param session   the request codes of the session
+     * @throws IOException if a file can not be written
+     */
+    public void save(OutputSink sink, String base_name, String session) throws IOException {
+        ColumnarExport phases = new ColumnarExport();
+        ColumnarExport.Column requests = phases.addColumn("request", ColumnarExport.Type.INT32);
+        ColumnarExport.Column attempts = phases.addColumn("attempt", ColumnarExport.Type.INT32);
+        ColumnarExport.Column starts = phases.addColumn("start_ns", ColumnarExport.Type.INT64);
+        ColumnarExport.Column writes = phases.addColumn("write_ns", ColumnarExport.Type.INT64);
+        ColumnarExport.Column first_bytes = phases.addColumn("first_byte_ns", ColumnarExport.Type.INT64);
+        ColumnarExport.Column last_bytes = phases.addColumn("last_byte_ns", ColumnarExport.Type.INT64);
+
+        try {
+            // The chunks are emitted while the rows are added
+            phases.open(sink, base_name);
+
+            int capacity = this.requests.length;
+
+            for (int i = 0, row = (this.next - this.count + capacity) % capacity; i < this.count; i++) {
+                requests.add(this.requests[row]);
+                attempts.add(this.attempts[row]);
+                starts.add(this.starts[row]);
+                writes.add(this.writes[row]);
+                first_bytes.add(this.first_bytes[row]);
+                last_bytes.add(this.last_bytes[row]);
+
+                row = (row + 1) % capacity;
+            }
+
+            phases.save(sink, base_name, session);
+        } finally {
+            clear();
+        }
+    }
+
+    /**
+     * Removes all the saved attempts
+     */
+    public void clear() {
+        this.next = 0;
+        this.count = 0;
+        this.completed = 0;
+        this.write_sum = 0;
+        this.first_byte_sum = 0;
+        this.last_byte_sum = 0;
+    }
+}
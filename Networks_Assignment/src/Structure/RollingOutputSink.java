@@ -0,0 +1,302 @@
+package Structure;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <h1>RollingOutputSink Class</h1>
+ * {@link Structure.OutputSink} for long (soak) runs. The records of a destination are written to a sequence of segment
+ * files instead of a single file:
+ * <ul>
+ *     <li><b>Rotation:</b> A new segment is started when the current one reaches {@link #max_segment_bytes} or it is
+ *     older than {@link #max_segment_age}. The segments are named after the destination with a number before the
+ *     extension e.g. "echo_packets 2021-01-01 10-00-00.0001.txt".</li>
+ *     <li><b>Header:</b> The first record of a destination (the session header) is repeated at the start of every
+ *     segment so that every segment can be read on its own.</li>
+ *     <li><b>Compression:</b> Optionally the completed segments are compressed to .gz files by a background thread.</li>
+ *     <li><b>Retention:</b> Only the last {@link #max_segments} segments of each destination are kept.</li>
+ * </ul>
+ * Only the text files (.txt) are split to segments. The other destinations e.g. the binary columns of
+ * {@link Structure.ColumnarExport} are passed to the underlying sink unchanged, since a repeated header would corrupt
+ * them.
+ * <br>
+ * The segments are written by another sink (usually a {@link Structure.FileOutputSink}), so this sink can be placed
+ * behind an {@link Structure.AsyncOutputSink} like any other.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class RollingOutputSink implements OutputSink {
+
+    /**
+     * The sink that writes the segment files
+     */
+    private final OutputSink sink;
+
+    /**
+     * The maximum size of a segment in bytes. 0 for no limit
+     */
+    private final long max_segment_bytes;
+
+    /**
+     * The maximum age of a segment in milliseconds. 0 for no limit
+     */
+    private final long max_segment_age;
+
+    /**
+     * The number of segments kept for each destination (including the one being written). 0 keeps all segments
+     */
+    private final int max_segments;
+
+    /**
+     * True if the completed segments are compressed
+     */
+    private final boolean compress;
+
+    /**
+     * The thread that compresses and deletes the completed segments
+     */
+    private final ExecutorService housekeeper;
+
+    /**
+     * The open destinations
+     */
+    private final Map<String, Destination> destinations = new HashMap<>();
+
+
+    /**
+     * Constructor
+     *
+     * @param sink              {@link #sink}
+     * @param max_segment_bytes {@link #max_segment_bytes}
+     * @param max_segment_age   {@link #max_segment_age}
+     * @param max_segments      {@link #max_segments}
+     * @param compress          {@link #compress}
+     */
+    public RollingOutputSink(OutputSink sink, long max_segment_bytes, long max_segment_age, int max_segments,
+                             boolean compress) {
+        this.sink = sink;
+        this.max_segment_bytes = max_segment_bytes;
+        this.max_segment_age = max_segment_age;
+        this.max_segments = max_segments;
+        this.compress = compress;
+
+        this.housekeeper = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "RollingOutputSink housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public synchronized void write(String file_name, byte[] record) throws IOException {
+        if (!isRolled(file_name)) {
+            this.sink.write(file_name, record);
+            return;
+        }
+
+        Destination destination = this.destinations.get(file_name);
+
+        if (destination == null) {
+            destination = new Destination(file_name, record);
+            this.destinations.put(file_name, destination);
+
+            startSegment(destination);
+            return;
+        }
+
+        if (destination.bytes > destination.header.length && isSegmentFull(destination, record.length)) {
+            completeSegment(destination, false);
+            startSegment(destination);
+        }
+
+        this.sink.write(destination.segment, record);
+        destination.bytes += record.length;
+    }
+
+    @Override
+    public synchronized void finish(String file_name) throws IOException {
+        if (!isRolled(file_name)) {
+            this.sink.finish(file_name);
+            return;
+        }
+
+        Destination destination = this.destinations.remove(file_name);
+
+        if (destination != null)
+            completeSegment(destination, true);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        this.sink.flush();
+    }
+
+    /**
+     * Completes all the destinations, waits for the background compression and closes the underlying sink
+     *
+     * @throws IOException if the segments can not be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            for (String file_name : new ArrayList<>(this.destinations.keySet()))
+                finish(file_name);
+        }
+
+        this.housekeeper.shutdown();
+
+        try {
+            this.housekeeper.awaitTermination(1, TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.sink.close();
+    }
+
+    private static boolean isRolled(String file_name) {
+        return file_name.endsWith(".txt");
+    }
+
+    private boolean isSegmentFull(Destination destination, int new_bytes) {
+        if (this.max_segment_bytes != 0 && destination.bytes + new_bytes > this.max_segment_bytes)
+            return true;
+
+        return this.max_segment_age != 0 && System.currentTimeMillis() - destination.opened >= this.max_segment_age;
+    }
+
+    /**
+     * Starts the next segment of a destination and writes the header to it
+     */
+    private void startSegment(Destination destination) throws IOException {
+        destination.index++;
+        destination.segment = String.format("%s.%04d%s", destination.base, destination.index, destination.extension);
+        destination.opened = System.currentTimeMillis();
+        destination.bytes = destination.header.length;
+
+        this.sink.write(destination.segment, destination.header);
+    }
+
+    /**
+     * Closes the current segment of a destination. Compression and retention are done by the background thread in the
+     * order the segments were completed.
+     *
+     * @param last true if no other segment will be started for the destination
+     */
+    private void completeSegment(Destination destination, boolean last) throws IOException {
+        this.sink.finish(destination.segment);
+
+        final String segment = destination.segment;
+        final Deque<String> completed = destination.completed;
+        final int limit = last ? this.max_segments : this.max_segments - 1;
+
+        this.housekeeper.execute(() -> {
+            String kept = this.compress ? compress(segment) : segment;
+            completed.addLast(kept);
+
+            // The segment being written counts in the retention limit
+            while (this.max_segments != 0 && completed.size() > limit) {
+                String oldest = completed.removeFirst();
+
+                if (!new File(oldest).delete())
+                    System.out.println("Failed to delete old segment: " + oldest);
+            }
+        });
+    }
+
+    /**
+     * Compresses a file to file + .gz and deletes the original
+     *
+     * @param file_name the file to compress
+     * @return the name of the file that should be kept
+     */
+    private static String compress(String file_name) {
+        String compressed = file_name + ".gz";
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file_name));
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed), 1 << 16)) {
+            byte[] buffer = new byte[1 << 16];
+            int length;
+
+            while ((length = in.read(buffer)) > 0)
+                out.write(buffer, 0, length);
+
+        } catch (IOException e) {
+            System.out.println("Failed to compress " + file_name + " with exception: " + e.toString());
+            new File(compressed).delete();
+            return file_name;
+        }
+
+        new File(file_name).delete();
+        return compressed;
+    }
+
+    /**
+     * The state of a destination
+     */
+    private static class Destination {
+        /**
+         * The file name without the extension
+         */
+        final String base;
+
+        /**
+         * The extension of the file name (including the .) or an empty String
+         */
+        final String extension;
+
+        /**
+         * The first record of the destination that starts every segment
+         */
+        final byte[] header;
+
+        /**
+         * The completed segments that are kept. Used only by the housekeeper thread
+         */
+        final Deque<String> completed = new ArrayDeque<>();
+
+        /**
+         * The number of the current segment
+         */
+        int index = 0;
+
+        /**
+         * The file name of the current segment
+         */
+        String segment;
+
+        /**
+         * The bytes written to the current segment
+         */
+        long bytes;
+
+        /**
+         * The time the current segment was started
+         */
+        long opened;
+
+        Destination(String file_name, byte[] header) {
+            int dot = file_name.lastIndexOf('.');
+
+            if (dot > file_name.lastIndexOf('/')) {
+                this.base = file_name.substring(0, dot);
+                this.extension = file_name.substring(dot);
+            } else {
+                this.base = file_name;
+                this.extension = "";
+            }
+
+            this.header = header;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package Structure;
+
+/**
+ * <h1>RunLimit Class</h1>
+ * Decides when a measurement run is over. A run can be limited by its duration, by the number of packets received or
+ * by both (whichever comes first). A limit of 0 means no limit.
+ * <br>
+ * The normal runs of the assignment last 5 minutes ({@link #DEFAULT_DURATION}). Soak runs that last hours or days use
+ * larger limits together with a streaming output (see {@link Structure.RollingOutputSink}).
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class RunLimit {
+
+    /**
+     * The duration of the normal runs in milliseconds (5 minutes)
+     */
+    public static final long DEFAULT_DURATION = 300000;
+
+    /**
+     * The maximum duration of the run in milliseconds
+     */
+    private final long duration;
+
+    /**
+     * The maximum number of packets of the run
+     */
+    private final long packets;
+
+    /**
+     * The time the run started
+     */
+    private long start_time;
+
+
+    /**
+     * Constructor
+     *
+     * @param duration {@link #duration} 0 for no limit
+     * @param packets  {@link #packets} 0 for no limit
+     */
+    public RunLimit(long duration, long packets) {
+        if (duration < 0 || packets < 0)
+            throw new IllegalArgumentException("The limits can not be negative");
+
+        this.duration = duration;
+        this.packets = packets;
+        this.start_time = System.currentTimeMillis();
+    }
+
+    /**
+     * Creates a limit on the duration of the run
+     *
+     * @param duration the duration in milliseconds
+     * @return the limit
+     */
+    public static RunLimit duration(long duration) {
+        return new RunLimit(duration, 0);
+    }
+
+    /**
+     * Creates a limit on the number of packets of the run
+     *
+     * @param packets the number of packets
+     * @return the limit
+     */
+    public static RunLimit packets(long packets) {
+        return new RunLimit(0, packets);
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getPackets() {
+        return packets;
+    }
+
+    /**
+     * Starts measuring the duration of the run
+     */
+    public void start() {
+        this.start_time = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks if the run is over
+     *
+     * @param packets_received the packets received since {@link #start()}
+     * @return true if any of the limits is reached
+     */
+    public boolean isReached(long packets_received) {
+        if (this.packets != 0 && packets_received >= this.packets)
+            return true;
+
+        return this.duration != 0 && System.currentTimeMillis() - this.start_time >= this.duration;
+    }
+
+    @Override
+    public String toString() {
+        return (this.duration == 0 ? "no time limit" : this.duration + " ms") + ", " +
+                (this.packets == 0 ? "no packet limit" : this.packets + " packets");
+    }
+}
@@ -0,0 +1,141 @@
+package Structure;
+
+/**
+ * <h1>SessionConfig Class</h1>
+ * The request codes and the link parameters of a session with the server. The configuration is immutable, so the same
+ * object can be shared by many {@link Structure.Connection}s and modules running at the same time. The extra parameters
+ * of a request (camera commands, GPS routes) are added by the module to its own copy of the code and never change the
+ * configuration.
+ * <br>
+ * A configuration with other parameters is created with the with methods: config.withSpeed(3800).
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public final class SessionConfig {
+
+    // The codes with the \r, ready to be written
+    private final String echo_code;
+    private final String image_code;
+    private final String image_code_error;
+    private final String gps_code;
+    private final String ack_code;
+    private final String nack_code;
+    private final int speed;
+    private final int timeout;
+
+
+    /**
+     * Constructor
+     *
+     * @param echo      Echo request code   : E_XXXX
+     * @param image     Image request code  : M_XXXX  (Tx/Rx error free)
+     * @param image_err Image request code  : G_XXXX  (Tx/Rx with errors)
+     * @param gps       GPS request code    : P_XXXX
+     * @param ack       ACK result code     : Q_XXXX
+     * @param nack      NACK result code    : R_XXXX
+     * @param speed     Speed of the connection
+     * @param timeout   Timeout time in milliseconds for the connection
+     */
+    public SessionConfig(String echo, String image, String image_err, String gps, String ack, String nack, int speed,
+                         int timeout) {
+        this.echo_code = echo.trim() + '\r';
+        this.image_code = image.trim() + '\r';
+        this.image_code_error = image_err.trim() + '\r';
+        this.gps_code = gps.trim() + '\r';
+        this.ack_code = ack.trim() + '\r';
+        this.nack_code = nack.trim() + '\r';
+        this.speed = speed;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Copies the codes of another configuration with other link parameters
+     */
+    private SessionConfig(SessionConfig config, int speed, int timeout) {
+        this.echo_code = config.echo_code;
+        this.image_code = config.image_code;
+        this.image_code_error = config.image_code_error;
+        this.gps_code = config.gps_code;
+        this.ack_code = config.ack_code;
+        this.nack_code = config.nack_code;
+        this.speed = speed;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Creates the configuration from the command line arguments of the application
+     *
+     * @param args    the six request codes in the order E M G P Q R
+     * @param speed   Speed of the connection
+     * @param timeout Timeout time in milliseconds for the connection
+     * @return the configuration
+     */
+    public static SessionConfig fromArgs(String[] args, int speed, int timeout) {
+        return new SessionConfig(args[0], args[1], args[2], args[3], args[4], args[5], speed, timeout);
+    }
+
+    public SessionConfig withSpeed(int speed) {
+        return new SessionConfig(this, speed, this.timeout);
+    }
+
+    public SessionConfig withTimeout(int timeout) {
+        return new SessionConfig(this, this.speed, timeout);
+    }
+
+    // Getters
+    public String getEcho_code() {
+        return echo_code;
+    }
+
+    public String getImage_code() {
+        return image_code;
+    }
+
+    public String getImage_code_error() {
+        return image_code_error;
+    }
+
+    public String getGps_code() {
+        return gps_code;
+    }
+
+    public String getAck_code() {
+        return ack_code;
+    }
+
+    public String getNack_code() {
+        return nack_code;
+    }
+
+    public int getSpeed() {
+        return speed;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Gets the request codes without the \r and the extra parameters
+     *
+     * @return the six request codes separated with spaces
+     */
+    public String getSessionCodes() {
+        String[] codes = {this.echo_code, this.image_code, this.image_code_error, this.gps_code, this.ack_code,
+                this.nack_code};
+
+        StringBuilder session_codes = new StringBuilder();
+
+        for (String code : codes) {
+            if (session_codes.length() != 0)
+                session_codes.append(' ');
+
+            code = code.trim();
+            session_codes.append(code, 0, Math.min(5, code.length()));
+        }
+
+        return session_codes.toString();
+    }
+}
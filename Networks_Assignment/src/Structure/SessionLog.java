@@ -0,0 +1,427 @@
+package Structure;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * <h1>SessionLog Class</h1>
+ * Append only binary log of everything that happens during a session. All the modules write typed records to the same
+ * file so that a session can be replayed and queried with {@link Structure.SessionLogReader} without parsing the
+ * different text formats of the saved data files.
+ * <br>
+ * File format (big endian):
+ * <ul>
+ *     <li>Header: magic "ITHK" (int), version (int), session start in epoch milliseconds (long)</li>
+ *     <li>Records: length of the rest of the record (int), {@link RecordType} id (byte), nanoseconds since the start of
+ *     the session (long), payload</li>
+ * </ul>
+ * Every {@link #INDEX_INTERVAL} records the record number, file offset and time are added to a sparse index that is
+ * saved next to the log (file name + ".idx") when the log is closed. The reader uses the index to jump close to a record
+ * or a time without reading the whole file.
+ * <br>
+ * The records are collected in a direct buffer and written to the file channel when the buffer is full, so an append
+ * costs a few puts in memory. A log created with {@link #disabled()} ignores all the records.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class SessionLog implements AutoCloseable {
+
+    /**
+     * Identifies the session log files
+     */
+    static final int FILE_MAGIC = 0x4954484B;  // "ITHK"
+
+    /**
+     * The version of the file format
+     */
+    static final int FILE_VERSION = 1;
+
+    /**
+     * The size of the file header in bytes
+     */
+    static final int HEADER_SIZE = 16;
+
+    /**
+     * The size of the fixed part of each record (length, type, time) in bytes
+     */
+    static final int RECORD_HEADER_SIZE = 13;
+
+    /**
+     * A sparse index entry is created every this many records
+     */
+    static final int INDEX_INTERVAL = 256;
+
+    /**
+     * The extension of the sparse index file
+     */
+    static final String INDEX_EXTENSION = ".idx";
+
+    /**
+     * The types of the records
+     */
+    public enum RecordType {
+        /**
+         * The request codes of the session. Payload: the codes (string)
+         */
+        SESSION_HEADER(0),
+        /**
+         * A completely received echo packet. Payload: packet number (int), response time in nanoseconds (long),
+         * retransmissions (int), packet (string)
+         */
+        ECHO_RESULT(1),
+        /**
+         * One request of the ARQ mechanism. Payload: packet number (int), attempt (int), checksum ok (byte),
+         * duration in nanoseconds (long)
+         */
+        ARQ_ATTEMPT(2),
+        /**
+         * A received NMEA line. Payload: the line (string)
+         */
+        GPS_SENTENCE(3),
+        /**
+         * A received image. Payload: size in bytes (int), has errors (byte), file name (string)
+         */
+        IMAGE_FRAME(4),
+        /**
+         * A reconnection to the server. Payload: success (byte), duration in nanoseconds (long)
+         */
+        RECONNECT(5);
+
+        private final byte id;
+
+        RecordType(int id) {
+            this.id = (byte) id;
+        }
+
+        public byte getId() {
+            return id;
+        }
+
+        /**
+         * Finds the type of an id
+         *
+         * @param id the id read from the file
+         * @return the type or null if the id is unknown
+         */
+        public static RecordType fromId(byte id) {
+            for (RecordType type : values()) {
+                if (type.id == id)
+                    return type;
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * The name of the log file
+     */
+    private final String file_name;
+
+    /**
+     * The channel of the log file. Null if the log is disabled.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The records that are not written to the channel yet
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * The nanoTime the session started. Record times are relative to this.
+     */
+    private final long start_nanos;
+
+    /**
+     * The file offset of the first byte of the {@link #buffer}
+     */
+    private long buffer_offset;
+
+    /**
+     * The number of records appended
+     */
+    private long record_count = 0;
+
+    /**
+     * The sparse index entries: record number, offset, time
+     */
+    private long[] index = new long[3 * 64];
+    private int index_size = 0;
+
+
+    /**
+     * Constructor. Creates a new log file.
+     *
+     * @param file_name {@link #file_name}
+     * @throws IOException if the file can not be created
+     */
+    public SessionLog(String file_name) throws IOException {
+        File file = new File(file_name);
+
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+
+        this.file_name = file_name;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(1 << 16);
+        this.start_nanos = System.nanoTime();
+
+        this.buffer.putInt(FILE_MAGIC);
+        this.buffer.putInt(FILE_VERSION);
+        this.buffer.putLong(System.currentTimeMillis());
+        this.buffer_offset = 0;
+    }
+
+    /**
+     * Constructor of the disabled log
+     */
+    private SessionLog() {
+        this.file_name = null;
+        this.channel = null;
+        this.buffer = null;
+        this.start_nanos = 0;
+    }
+
+    /**
+     * Gets the current date time and formats it in this form "yyyy-MM-dd HH-mm-ss". The final name of the file derives
+     * from the directory + session yyyy-MM-dd HH-mm-ss.log
+     *
+     * <b>Note: </b> The directory must end with /
+     *
+     * @param directory The directory the file will be saved.
+     * @return directory + name + date + .log
+     */
+    public static String createFileName(String directory) {
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss");
+
+        return directory + "session " + df.format(Calendar.getInstance().getTime()) + ".log";
+    }
+
+    /**
+     * Creates a log that ignores all the records
+     *
+     * @return a disabled log
+     */
+    public static SessionLog disabled() {
+        return new SessionLog();
+    }
+
+    /**
+     * Checks if the records are saved
+     *
+     * @return false if the log was created by {@link #disabled()}
+     */
+    public boolean isEnabled() {
+        return this.channel != null;
+    }
+
+    public String getFile_name() {
+        return file_name;
+    }
+
+    public long getRecord_count() {
+        return record_count;
+    }
+
+    /**
+     * Appends a {@link RecordType#SESSION_HEADER} record
+     *
+     * @param codes the request codes of the session
+     */
+    public synchronized void logSessionHeader(String codes) {
+        byte[] text = encode(codes);
+
+        if (begin(RecordType.SESSION_HEADER, 4 + text.length))
+            putString(text);
+    }
+
+    /**
+     * Appends a {@link RecordType#ECHO_RESULT} record
+     *
+     * @param packet_number   the number of the packet in the session
+     * @param response_nanos  the response time in nanoseconds
+     * @param retransmissions the number of retransmissions
+     * @param packet          the received packet
+     */
+    public synchronized void logEchoResult(int packet_number, long response_nanos, int retransmissions, String packet) {
+        byte[] text = encode(packet);
+
+        if (begin(RecordType.ECHO_RESULT, 16 + 4 + text.length)) {
+            this.buffer.putInt(packet_number);
+            this.buffer.putLong(response_nanos);
+            this.buffer.putInt(retransmissions);
+            putString(text);
+        }
+    }
+
+    /**
+     * Appends a {@link RecordType#ARQ_ATTEMPT} record
+     *
+     * @param packet_number the number of the packet in the session
+     * @param attempt       the attempt number. 0 is the ACK request and every NACK adds 1
+     * @param checksum_ok   true if the packet passed the checksum
+     * @param nanos         the duration of the attempt in nanoseconds
+     */
+    public synchronized void logArqAttempt(int packet_number, int attempt, boolean checksum_ok, long nanos) {
+        if (begin(RecordType.ARQ_ATTEMPT, 17)) {
+            this.buffer.putInt(packet_number);
+            this.buffer.putInt(attempt);
+            this.buffer.put((byte) (checksum_ok ? 1 : 0));
+            this.buffer.putLong(nanos);
+        }
+    }
+
+    /**
+     * Appends a {@link RecordType#GPS_SENTENCE} record
+     *
+     * @param line the NMEA line
+     */
+    public synchronized void logGpsSentence(String line) {
+        byte[] text = encode(line);
+
+        if (begin(RecordType.GPS_SENTENCE, 4 + text.length))
+            putString(text);
+    }
+
+    /**
+     * Appends a {@link RecordType#IMAGE_FRAME} record. The image itself is not copied to the log, only a reference to
+     * the file it was saved.
+     *
+     * @param size       the size of the image in bytes
+     * @param has_errors true if the image was requested with errors
+     * @param file_name  the file the image was saved
+     */
+    public synchronized void logImageFrame(int size, boolean has_errors, String file_name) {
+        byte[] text = encode(file_name);
+
+        if (begin(RecordType.IMAGE_FRAME, 5 + 4 + text.length)) {
+            this.buffer.putInt(size);
+            this.buffer.put((byte) (has_errors ? 1 : 0));
+            putString(text);
+        }
+    }
+
+    /**
+     * Appends a {@link RecordType#RECONNECT} record
+     *
+     * @param success true if the connection was established
+     * @param nanos   the time the reconnection took in nanoseconds
+     */
+    public synchronized void logReconnect(boolean success, long nanos) {
+        if (begin(RecordType.RECONNECT, 9)) {
+            this.buffer.put((byte) (success ? 1 : 0));
+            this.buffer.putLong(nanos);
+        }
+    }
+
+    /**
+     * Writes the buffered records to the file
+     *
+     * @throws IOException if the records can not be written
+     */
+    public synchronized void flush() throws IOException {
+        if (this.channel == null)
+            return;
+
+        this.buffer.flip();
+
+        while (this.buffer.hasRemaining())
+            this.buffer_offset += this.channel.write(this.buffer);
+
+        this.buffer.clear();
+    }
+
+    /**
+     * Writes the buffered records, closes the file and saves the sparse index
+     *
+     * @throws IOException if the log or the index can not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.channel == null || !this.channel.isOpen())
+            return;
+
+        try {
+            flush();
+        } finally {
+            this.channel.close();
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(this.file_name + INDEX_EXTENSION)))) {
+            for (int i = 0; i < this.index_size * 3; i++)
+                out.writeLong(this.index[i]);
+        }
+    }
+
+    /**
+     * Starts a new record. Makes space in the buffer, writes the fixed part of the record and updates the index.
+     *
+     * @param type           the type of the record
+     * @param payload_length the length of the payload in bytes
+     * @return false if the record must not be written (disabled log or write error)
+     */
+    private boolean begin(RecordType type, int payload_length) {
+        if (this.channel == null || !this.channel.isOpen())
+            return false;
+
+        int record_length = RECORD_HEADER_SIZE + payload_length;
+
+        try {
+            if (this.buffer.remaining() < record_length)
+                flush();
+        } catch (IOException e) {
+            System.out.println("Failed to write session log with exception: " + e.toString());
+            return false;
+        }
+
+        if (this.buffer.remaining() < record_length) {
+            System.out.println("Session log record too large: " + record_length + " bytes");
+            return false;
+        }
+
+        long offset = this.buffer_offset + this.buffer.position();
+        long time = System.nanoTime() - this.start_nanos;
+
+        if (this.record_count % INDEX_INTERVAL == 0) {
+            if (this.index_size * 3 == this.index.length)
+                this.index = Arrays.copyOf(this.index, this.index.length * 2);
+
+            this.index[this.index_size * 3] = this.record_count;
+            this.index[this.index_size * 3 + 1] = offset;
+            this.index[this.index_size * 3 + 2] = time;
+            this.index_size++;
+        }
+
+        this.buffer.putInt(record_length - 4);
+        this.buffer.put(type.getId());
+        this.buffer.putLong(time);
+        this.record_count++;
+
+        return true;
+    }
+
+    private void putString(byte[] text) {
+        this.buffer.putInt(text.length);
+        this.buffer.put(text);
+    }
+
+    private static byte[] encode(String text) {
+        return text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,332 @@
+package Structure;
+
+import java.io.DataInputStream;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <h1>SessionLogReader Class</h1>
+ * Reads the files created by {@link Structure.SessionLog}. The log file is memory mapped so the records are read
+ * directly from the page cache without copying them to the heap.
+ * <br>
+ * A mapping can not be larger than 2 GB, so the file is mapped in windows of {@link #MAP_WINDOW} bytes. When a record
+ * does not fit in the current window a new window is mapped starting at the record. The offsets in the file are longs,
+ * so logs of any size can be read.
+ * <br>
+ * The records are read in order with {@link #next()}. {@link #seekRecord(long)} and {@link #seekTime(long)} use the
+ * sparse index (if it exists) to start reading close to the requested record. A partly written record at the end of the
+ * file (e.g. after a crash) is ignored.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class SessionLogReader implements AutoCloseable {
+
+    /**
+     * The size of a mapped window of the file in bytes
+     */
+    public static final long MAP_WINDOW = 1L << 30;
+
+    /**
+     * The channel of the log file
+     */
+    private final FileChannel channel;
+
+    /**
+     * The size of the log file when it was opened
+     */
+    private final long size;
+
+    /**
+     * The mapped window of the log file
+     */
+    private MappedByteBuffer map = null;
+
+    /**
+     * The offset in the file of the first byte of {@link #map}
+     */
+    private long map_start = 0;
+
+    /**
+     * The offset in the file of the record {@link #next()} will return
+     */
+    private long position = SessionLog.HEADER_SIZE;
+
+    /**
+     * The session start in epoch milliseconds
+     */
+    private final long session_start;
+
+    /**
+     * The sparse index entries: record number, offset, time. Empty if the index file does not exist.
+     */
+    private final long[] index;
+
+    /**
+     * The number of the record {@link #next()} will return
+     */
+    private long record_number = 0;
+
+
+    /**
+     * Constructor. Maps the log file and loads the sparse index.
+     *
+     * @param file_name the name of the log file
+     * @throws IOException if the file can not be read or it is not a session log
+     */
+    public SessionLogReader(String file_name) throws IOException {
+        this.channel = FileChannel.open(new File(file_name).toPath(), StandardOpenOption.READ);
+        this.size = this.channel.size();
+
+        try {
+            ByteBuffer header = this.size < SessionLog.HEADER_SIZE ? null : map(0, SessionLog.HEADER_SIZE);
+
+            if (header == null || header.getInt() != SessionLog.FILE_MAGIC ||
+                    header.getInt() != SessionLog.FILE_VERSION)
+                throw new IOException("Not a session log file: " + file_name);
+
+            this.session_start = header.getLong();
+            this.index = readIndex(file_name + SessionLog.INDEX_EXTENSION);
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the time the session started
+     *
+     * @return epoch milliseconds
+     */
+    public long getSessionStart() {
+        return session_start;
+    }
+
+    /**
+     * Reads the next record
+     *
+     * @return the record or null if there are no more complete records
+     */
+    public Record next() {
+        if (this.size - this.position < SessionLog.RECORD_HEADER_SIZE)
+            return null;
+
+        try {
+            int length = map(this.position, 4).getInt();
+
+            if (length < SessionLog.RECORD_HEADER_SIZE - 4 || this.size - this.position - 4 < length) {
+                // Partly written record
+                return null;
+            }
+
+            ByteBuffer buffer = map(this.position + 4, length);
+            byte type = buffer.get();
+            long time = buffer.getLong();
+
+            int payload_length = length - (SessionLog.RECORD_HEADER_SIZE - 4);
+            ByteBuffer payload = buffer.slice();
+            payload.limit(payload_length);
+
+            this.position += 4 + length;
+
+            return new Record(this.record_number++, SessionLog.RecordType.fromId(type), time, payload);
+        } catch (IOException e) {
+            System.out.println("Failed to read session log with exception: " + e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the next record of a specific type
+     *
+     * @param type the type of the record
+     * @return the record or null if there are no more records of the type
+     */
+    public Record next(SessionLog.RecordType type) {
+        Record record;
+
+        while ((record = next()) != null) {
+            if (record.getType() == type)
+                return record;
+        }
+
+        return null;
+    }
+
+    /**
+     * Moves to a record so that the next call of {@link #next()} returns it
+     *
+     * @param record_number the number of the record (0 is the first record)
+     */
+    public void seekRecord(long record_number) {
+        rewind();
+
+        // Jump to the last indexed record before the requested one
+        for (int i = 0; i < this.index.length; i += 3) {
+            if (this.index[i] > record_number)
+                break;
+
+            this.record_number = this.index[i];
+            this.position = this.index[i + 1];
+        }
+
+        while (this.record_number < record_number && next() != null) {
+            // skip
+        }
+    }
+
+    /**
+     * Moves to the first record with time greater or equal to the specified time
+     *
+     * @param nanos nanoseconds since the start of the session
+     */
+    public void seekTime(long nanos) {
+        rewind();
+
+        for (int i = 0; i < this.index.length; i += 3) {
+            if (this.index[i + 2] > nanos)
+                break;
+
+            this.record_number = this.index[i];
+            this.position = this.index[i + 1];
+        }
+
+        while (true) {
+            long position = this.position;
+            long number = this.record_number;
+            Record record = next();
+
+            if (record == null || record.getTime() >= nanos) {
+                this.position = position;
+                this.record_number = number;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves back to the first record
+     */
+    public void rewind() {
+        this.position = SessionLog.HEADER_SIZE;
+        this.record_number = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Makes sure that a range of the file is in the mapped window. If it is not, a new window that starts at the range
+     * is mapped. The buffers of the records that were already returned stay valid.
+     *
+     * @param offset the offset of the range in the file
+     * @param length the length of the range
+     * @return the mapped window positioned at the offset
+     * @throws IOException if the window can not be mapped
+     */
+    private ByteBuffer map(long offset, int length) throws IOException {
+        if (this.map == null || offset < this.map_start || offset + length > this.map_start + this.map.capacity()) {
+            long window = Math.min(Math.max(MAP_WINDOW, length), this.size - offset);
+
+            this.map = this.channel.map(FileChannel.MapMode.READ_ONLY, offset, window);
+            this.map_start = offset;
+        }
+
+        this.map.position((int) (offset - this.map_start));
+        return this.map;
+    }
+
+    private static long[] readIndex(String file_name) throws IOException {
+        File file = new File(file_name);
+
+        if (!file.exists())
+            return new long[0];
+
+        long[] index = new long[(int) (file.length() / 24) * 3];
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            for (int i = 0; i < index.length; i++)
+                index[i] = in.readLong();
+        }
+
+        return index;
+    }
+
+    /**
+     * A record of the log. The payload getters read the fields in the order they were written by
+     * {@link Structure.SessionLog}.
+     */
+    public static class Record {
+        private final long number;
+        private final SessionLog.RecordType type;
+        private final long time;
+        private final ByteBuffer payload;
+
+        Record(long number, SessionLog.RecordType type, long time, ByteBuffer payload) {
+            this.number = number;
+            this.type = type;
+            this.time = time;
+            this.payload = payload;
+        }
+
+        public long getNumber() {
+            return number;
+        }
+
+        /**
+         * Gets the type of the record
+         *
+         * @return the type or null if the type is unknown to this version
+         */
+        public SessionLog.RecordType getType() {
+            return type;
+        }
+
+        /**
+         * Gets the time of the record
+         *
+         * @return nanoseconds since the start of the session
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Gets the payload. The position of the buffer advances as the fields are read.
+         *
+         * @return the payload
+         */
+        public ByteBuffer getPayload() {
+            return payload;
+        }
+
+        public int readInt() {
+            return this.payload.getInt();
+        }
+
+        public long readLong() {
+            return this.payload.getLong();
+        }
+
+        public boolean readBoolean() {
+            return this.payload.get() != 0;
+        }
+
+        public String readString() {
+            byte[] text = new byte[this.payload.getInt()];
+            this.payload.get(text);
+
+            return new String(text, StandardCharsets.UTF_8);
+        }
+    }
+}
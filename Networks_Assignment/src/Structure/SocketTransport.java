@@ -0,0 +1,173 @@
+package Structure;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>SocketTransport Class</h1>
+ * A {@link Structure.Transport} over a TCP connection to the local simulator ({@link Simulator.IthakiSimulator}).
+ * <br>
+ * {@link #open(String)} connects and sends the mode followed by \r, after that the simulator answers like the real
+ * server. The reads are paced to the speed of the connection (8 bits per byte) like the virtual modem, so the speed
+ * settings of the modules have the same effect as with the real server.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class SocketTransport implements Transport {
+
+    private final String host;
+    private final int port;
+
+    // Volatile because close() may be called by another thread (e.g. a cancelled job) while a read blocks. Every
+    // method reads a field once into a local variable.
+    private volatile Socket socket;
+    private volatile InputStream in;
+    private volatile OutputStream out;
+
+    /**
+     * The speed of the connection in bits per second. 0 reads as fast as the bytes arrive.
+     */
+    private int speed = 0;
+
+    /**
+     * The timeout in milliseconds
+     */
+    private int timeout = 10000;
+
+    /**
+     * The nanoTime the next byte can be read according to the {@link #speed}
+     */
+    private long next_read = 0;
+
+
+    /**
+     * Constructor. The connection is made by {@link #open(String)}.
+     *
+     * @param host the host of the simulator
+     * @param port the port of the simulator
+     */
+    public SocketTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public boolean setSpeed(int speed) {
+        this.speed = Math.max(0, speed);
+        return true;
+    }
+
+    @Override
+    public boolean setTimeout(int timeout) {
+        this.timeout = timeout;
+
+        Socket socket = this.socket;
+
+        try {
+            if (socket != null)
+                socket.setSoTimeout(timeout);
+        } catch (IOException e) {
+            System.out.println("Failed to set timeout with exception: " + e.toString());
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean open(String mode) {
+        try {
+            Socket socket = new Socket();
+            this.socket = socket;
+
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(this.host, this.port), this.timeout);
+            socket.setSoTimeout(this.timeout);
+
+            this.next_read = System.nanoTime();
+            this.in = new BufferedInputStream(socket.getInputStream(), 1 << 14);
+            this.out = socket.getOutputStream();
+
+            return write((mode + "\r").getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            System.out.println("Failed to connect to " + this.host + ":" + this.port + " with exception: " +
+                    e.toString());
+            close();
+            return false;
+        }
+    }
+
+    @Override
+    public int read() {
+        InputStream in = this.in;
+
+        if (in == null)
+            return -1;
+
+        try {
+            int k = in.read();
+
+            if (k != -1 && this.speed > 0) {
+                // Wait until the byte would have arrived at the speed of the connection
+                long now = System.nanoTime();
+                this.next_read = Math.max(this.next_read, now - 1000000L) + 8000000000L / this.speed;
+
+                if (this.next_read > now)
+                    LockSupport.parkNanos(this.next_read - now);
+            }
+
+            return k;
+        } catch (SocketTimeoutException e) {
+            return -1;
+        } catch (IOException e) {
+            System.out.println("Failed to read with exception: " + e.toString());
+            return -1;
+        }
+    }
+
+    @Override
+    public boolean write(byte[] data) {
+        OutputStream out = this.out;
+
+        if (out == null)
+            return false;
+
+        try {
+            out.write(data);
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Failed to write with exception: " + e.toString());
+            return false;
+        }
+    }
+
+    @Override
+    public boolean close() {
+        Socket socket = this.socket;
+
+        if (socket == null)
+            return true;
+
+        this.socket = null;
+        this.in = null;
+        this.out = null;
+
+        try {
+            socket.close();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Failed to close socket with exception: " + e.toString());
+            return false;
+        }
+    }
+}
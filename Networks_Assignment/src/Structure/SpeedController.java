@@ -0,0 +1,399 @@
+package Structure;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <h1>SpeedController Class</h1>
+ * Chooses the speed of the connection for every module instead of the fixed speeds (3800 for the echo packets, 80000
+ * for the rest).
+ * <br>
+ * {@link #probe(String, Runnable)} runs a short workload of a module at every candidate speed and measures with the
+ * {@link Structure.TrafficMeter} of the connection the bytes per second and the error rate (NACK retransmissions and
+ * timeouts per request). The speed with the highest throughput among the stable speeds (error rate up to
+ * {@link #down_error_rate}) is chosen for the module.
+ * <br>
+ * While a module runs it calls {@link #observe(String)} after every response. The traffic is evaluated in windows of
+ * {@link #window_requests} requests (or {@link #window_bytes} bytes for the long responses) and the speed changes with
+ * hysteresis:
+ * <ul>
+ *     <li>{@link #down_windows} consecutive windows with error rate above {@link #down_error_rate} step the speed down
+ *     to the next slower candidate</li>
+ *     <li>{@link #up_windows} consecutive windows with error rate up to {@link #up_error_rate} step the speed up to the
+ *     next faster candidate. Every step down doubles the windows needed to step up again so that the speed does not
+ *     keep flapping between two candidates.</li>
+ *     <li>windows between the two rates keep the current speed</li>
+ * </ul>
+ * Every decision is printed and kept for {@link #getDecisions()}. The controller of a connection is disabled unless
+ * one is set with {@link Structure.Connection#setSpeedController(SpeedController)}; a disabled controller does nothing
+ * and the modules run at the speed set by the application.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class SpeedController {
+
+    // The names of the modules
+    public static final String ECHO = "echo";
+    public static final String ECHO_ERRORS = "echo_errors";
+    public static final String IMAGE = "image";
+    public static final String GPS = "gps";
+
+    /**
+     * The default candidate speeds in bits per second
+     */
+    private static final int[] DEFAULT_SPEEDS = {80000, 40000, 19200, 9600, 3800};
+
+    private final Connection connection;
+    private final boolean enabled;
+
+    /**
+     * The candidate speeds from the fastest to the slowest
+     */
+    private final int[] speeds;
+
+    // Windows and hysteresis
+    private int window_requests = 20;
+    private long window_bytes = 32768;
+    private double down_error_rate = 0.10;
+    private double up_error_rate = 0.02;
+    private int down_windows = 2;
+    private int up_windows = 5;
+
+    /**
+     * True while a probe runs. The workload of a probe must not change the speed.
+     */
+    private boolean probing = false;
+
+    private final Map<String, ModuleState> states = new LinkedHashMap<>();
+    private final List<String> decisions = new ArrayList<>();
+
+
+    /**
+     * Constructor with the {@link #DEFAULT_SPEEDS}
+     *
+     * @param connection the connection whose speed is controlled
+     */
+    public SpeedController(Connection connection) {
+        this(connection, DEFAULT_SPEEDS);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param connection the connection whose speed is controlled
+     * @param speeds     the candidate speeds in bits per second (any order)
+     */
+    public SpeedController(Connection connection, int[] speeds) {
+        this.connection = connection;
+        this.enabled = connection != null;
+
+        // Sort from the fastest to the slowest
+        int[] sorted = speeds.clone();
+        Arrays.sort(sorted);
+
+        this.speeds = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++)
+            this.speeds[i] = sorted[sorted.length - 1 - i];
+    }
+
+    /**
+     * Creates a controller that does nothing
+     *
+     * @return the disabled controller
+     */
+    public static SpeedController disabled() {
+        return new SpeedController(null, DEFAULT_SPEEDS);
+    }
+
+    // Getters Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setWindow(int window_requests, long window_bytes) {
+        this.window_requests = window_requests;
+        this.window_bytes = window_bytes;
+    }
+
+    /**
+     * Sets the error rates and the number of windows of the hysteresis
+     *
+     * @param down_error_rate {@link #down_error_rate}
+     * @param down_windows    {@link #down_windows}
+     * @param up_error_rate   {@link #up_error_rate} must be lower than the down_error_rate
+     * @param up_windows      {@link #up_windows}
+     */
+    public void setHysteresis(double down_error_rate, int down_windows, double up_error_rate, int up_windows) {
+        this.down_error_rate = down_error_rate;
+        this.down_windows = down_windows;
+        this.up_error_rate = Math.min(up_error_rate, down_error_rate);
+        this.up_windows = up_windows;
+    }
+
+    public List<String> getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Gets the speed chosen for a module
+     *
+     * @param module the name of the module
+     * @return the speed or the current speed of the connection if the module has no speed yet
+     */
+    public int getSpeed(String module) {
+        ModuleState state = this.states.get(module);
+
+        if (state == null)
+            return this.enabled ? this.connection.getModemSpeed() : 0;
+
+        return this.speeds[state.index];
+    }
+
+    /**
+     * Runs a workload of a module at every candidate speed and chooses the speed with the highest throughput among the
+     * stable ones. If no speed is stable the slowest is chosen.
+     *
+     * @param module   the name of the module
+     * @param workload a short run of the module e.g. 20 echo packets
+     * @return the chosen speed
+     */
+    public int probe(String module, Runnable workload) {
+        if (!this.enabled)
+            return 0;
+
+        TrafficMeter meter = this.connection.getTrafficMeter();
+        int best = this.speeds.length - 1;
+        double best_throughput = -1;
+
+        this.probing = true;
+
+        for (int i = 0; i < this.speeds.length; i++) {
+            this.connection.setModemSpeed(this.speeds[i]);
+
+            long bytes = meter.getBytes_read();
+            long writes = meter.getWrites();
+            long errors = meter.getNacks() + meter.getTimeouts();
+            long start = System.nanoTime();
+
+            workload.run();
+
+            long elapsed = System.nanoTime() - start;
+            bytes = meter.getBytes_read() - bytes;
+            writes = meter.getWrites() - writes;
+            errors = meter.getNacks() + meter.getTimeouts() - errors;
+
+            double throughput = bytes * 1e9 / Math.max(1, elapsed);
+            double error_rate = (double) errors / Math.max(1, writes);
+            boolean stable = bytes > 0 && writes > 0 && error_rate <= this.down_error_rate;
+
+            decide(module, String.format(Locale.US, "probe %d bps: %.0f B/s, error rate %.3f%s", this.speeds[i],
+                    throughput, error_rate, stable ? "" : " (unstable)"));
+
+            if (stable && throughput > best_throughput) {
+                best = i;
+                best_throughput = throughput;
+            }
+        }
+
+        this.probing = false;
+
+        ModuleState state = getState(module);
+        state.index = best;
+        state.resetWindows();
+
+        this.connection.setModemSpeed(this.speeds[best]);
+        decide(module, "chose " + this.speeds[best] + " bps");
+
+        return this.speeds[best];
+    }
+
+    /**
+     * Sets the speed of a module to the connection before the module runs. Does nothing if the module has no speed
+     * yet.
+     *
+     * @param module the name of the module
+     */
+    public void apply(String module) {
+        if (!this.enabled || this.probing)
+            return;
+
+        ModuleState state = this.states.get(module);
+
+        if (state != null && this.connection.getModemSpeed() != this.speeds[state.index])
+            this.connection.setModemSpeed(this.speeds[state.index]);
+
+        if (state != null)
+            startWindow(state);
+    }
+
+    /**
+     * Updates the window of a module after a response and changes the speed when a window is complete and the
+     * hysteresis allows it
+     *
+     * @param module the name of the module
+     */
+    public void observe(String module) {
+        if (!this.enabled || this.probing)
+            return;
+
+        ModuleState state = getState(module);
+        TrafficMeter meter = this.connection.getTrafficMeter();
+
+        if (state.window_start == 0) {
+            startWindow(state);
+            return;
+        }
+
+        long writes = meter.getWrites() - state.window_writes;
+        long bytes = meter.getBytes_read() - state.window_bytes;
+
+        if (writes < this.window_requests && bytes < this.window_bytes)
+            return;
+
+        long errors = meter.getNacks() + meter.getTimeouts() - state.window_errors;
+        double error_rate = (double) errors / Math.max(1, writes);
+        double throughput = bytes * 1e9 / Math.max(1, System.nanoTime() - state.window_start);
+
+        state.last_throughput = throughput;
+        state.last_error_rate = error_rate;
+
+        String window = String.format(Locale.US, "error rate %.3f, %.0f B/s", error_rate, throughput);
+
+        if (error_rate > this.down_error_rate) {
+            state.good = 0;
+
+            if (++state.bad >= this.down_windows && state.index < this.speeds.length - 1) {
+                state.penalty++;
+                change(module, state, state.index + 1, window + " for " + state.bad + " windows");
+            }
+        } else if (error_rate <= this.up_error_rate) {
+            state.bad = 0;
+
+            if (++state.good >= this.up_windows << Math.min(state.penalty, 4) && state.index > 0) {
+                state.penalty = Math.max(0, state.penalty - 1);
+                change(module, state, state.index - 1, window + " for " + state.good + " windows");
+            }
+        } else {
+            // Between the rates: keep the speed
+            state.good = 0;
+            state.bad = 0;
+        }
+
+        startWindow(state);
+    }
+
+    /**
+     * Changes the speed of a module and of the connection
+     */
+    private void change(String module, ModuleState state, int index, String reason) {
+        decide(module, this.speeds[state.index] + " -> " + this.speeds[index] + " bps (" + reason + ")");
+
+        state.index = index;
+        state.resetWindows();
+        this.connection.setModemSpeed(this.speeds[index]);
+    }
+
+    /**
+     * Starts a new window from the current counters of the meter
+     */
+    private void startWindow(ModuleState state) {
+        TrafficMeter meter = this.connection.getTrafficMeter();
+
+        state.window_start = System.nanoTime();
+        state.window_writes = meter.getWrites();
+        state.window_bytes = meter.getBytes_read();
+        state.window_errors = meter.getNacks() + meter.getTimeouts();
+    }
+
+    /**
+     * Gets the state of a module. A new module starts from the candidate closest to the current speed.
+     */
+    private ModuleState getState(String module) {
+        ModuleState state = this.states.get(module);
+
+        if (state == null) {
+            state = new ModuleState();
+            int speed = this.connection.getModemSpeed();
+
+            state.index = this.speeds.length - 1;
+            for (int i = 0; i < this.speeds.length; i++) {
+                if (this.speeds[i] <= speed) {
+                    state.index = i;
+                    break;
+                }
+            }
+
+            this.states.put(module, state);
+        }
+
+        return state;
+    }
+
+    /**
+     * Prints and keeps a decision
+     */
+    private void decide(String module, String decision) {
+        DateFormat df = new SimpleDateFormat("HH:mm:ss");
+        String line = df.format(Calendar.getInstance().getTime()) + " " + module + ": " + decision;
+
+        System.out.println("Speed control " + line);
+        this.decisions.add(line);
+    }
+
+    /**
+     * Creates the report of the controller: the speed of every module and the last window
+     *
+     * @return the report in one line
+     */
+    public String getReport() {
+        if (!this.enabled)
+            return "disabled";
+
+        StringBuilder report = new StringBuilder();
+
+        for (Map.Entry<String, ModuleState> entry : this.states.entrySet()) {
+            ModuleState state = entry.getValue();
+
+            if (report.length() != 0)
+                report.append(' ');
+
+            report.append(String.format(Locale.US, "%s=%d(error_rate=%.3f, %.0f B/s)", entry.getKey(),
+                    this.speeds[state.index], state.last_error_rate, state.last_throughput));
+        }
+
+        return report.append(" decisions=").append(this.decisions.size()).toString();
+    }
+
+    /**
+     * The speed and the current window of a module
+     */
+    private static class ModuleState {
+        private int index;  // The index of the speed in the candidates
+        private int good = 0;  // Consecutive windows below the up rate
+        private int bad = 0;  // Consecutive windows above the down rate
+        private int penalty = 0;  // Doubles the windows needed to step up
+
+        private long window_start = 0;
+        private long window_writes;
+        private long window_bytes;
+        private long window_errors;
+
+        private double last_throughput = 0;
+        private double last_error_rate = 0;
+
+        void resetWindows() {
+            this.good = 0;
+            this.bad = 0;
+            this.window_start = 0;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package Structure;
+
+import Analytics.Histogram;
+
+import java.util.Locale;
+
+/**
+ * <h1>SteadyStateDetector Class</h1>
+ * Finds where the measurements of a run stop being affected by the start of the run (class loading, JIT compilation,
+ * connection warm up). The measurements go through two phases before they are used:
+ * <ul>
+ *     <li><b>Warm up:</b> the first {@link #warmup} measurements are always excluded.</li>
+ *     <li><b>Transient:</b> after the warm up the last 2 * {@link #window} measurements are kept in a ring buffer and
+ *     split in two adjacent windows with running sums. The run is steady when the means of the windows do not
+ *     differ significantly (Welch t statistic below {@link #t_threshold}) and their variances are within
+ *     {@link #variance_ratio} of each other.</li>
+ * </ul>
+ * The steady state starts at the first measurement of the older window and lasts until the end of the run. Every
+ * measurement is added in O(1).
+ * <br>
+ * The modules summarise their measurements with a {@link Series} of the detector (e.g. the response times) and save the
+ * phase of every measurement with {@link #fillPhases(ColumnarExport.Column)}, so they do not need to keep the
+ * measurements of the run.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class SteadyStateDetector {
+
+    /**
+     * The phases of a measurement
+     */
+    public enum Phase {
+        WARMUP, TRANSIENT, STEADY
+    }
+
+    /**
+     * The number of measurements excluded at the start of the run
+     */
+    private final int warmup;
+
+    /**
+     * The number of measurements of each of the two windows compared
+     */
+    private final int window;
+
+    /**
+     * The maximum t statistic of the difference of the means
+     */
+    private final double t_threshold;
+
+    /**
+     * The maximum ratio of the variances of the windows
+     */
+    private final double variance_ratio;
+
+    /**
+     * The last 2 * window measurements. The older window is followed by the newer.
+     */
+    private final double[] values;
+
+    private int next = 0;
+    private long count = 0;
+
+    // Running sums of the windows
+    private double old_sum, old_squares;
+    private double new_sum, new_squares;
+
+    /**
+     * The index of the first steady measurement or -1
+     */
+    private long steady_start = -1;
+
+
+    /**
+     * Constructor
+     *
+     * @param warmup         {@link #warmup}
+     * @param window         {@link #window}
+     * @param t_threshold    {@link #t_threshold}
+     * @param variance_ratio {@link #variance_ratio}
+     * @throws IllegalArgumentException if the warm up is negative, the window has less than 2 measurements (the
+     *                                  variance of a window needs 2) or a threshold is not positive
+     */
+    public SteadyStateDetector(int warmup, int window, double t_threshold, double variance_ratio) {
+        if (warmup < 0)
+            throw new IllegalArgumentException("Invalid warm up: " + warmup);
+
+        if (window < 2)
+            throw new IllegalArgumentException("Invalid window: " + window);
+
+        if (t_threshold <= 0 || variance_ratio <= 0)
+            throw new IllegalArgumentException("Invalid thresholds: t " + t_threshold + " variance ratio " +
+                    variance_ratio);
+
+        this.warmup = warmup;
+        this.window = window;
+        this.t_threshold = t_threshold;
+        this.variance_ratio = variance_ratio;
+        this.values = new double[2 * window];
+    }
+
+    /**
+     * Constructor with a t threshold of 2 and a variance ratio of 4
+     *
+     * @param warmup {@link #warmup}
+     * @param window {@link #window}
+     * @throws IllegalArgumentException if the warm up is negative or the window has less than 2 measurements
+     */
+    public SteadyStateDetector(int warmup, int window) {
+        this(warmup, window, 2.0, 4.0);
+    }
+
+    /**
+     * Adds the next measurement of the run
+     *
+     * @param value the measurement
+     * @return the phase of the measurement
+     */
+    public Phase add(double value) {
+        long index = this.count++;
+
+        if (index < this.warmup)
+            return Phase.WARMUP;
+
+        if (this.steady_start >= 0)
+            return Phase.STEADY;
+
+        long seen = index - this.warmup;
+        int slot = this.next;
+        this.next = (this.next + 1) % this.values.length;
+
+        if (seen >= this.values.length) {
+            // The oldest value leaves the old window
+            double oldest = this.values[slot];
+            this.old_sum -= oldest;
+            this.old_squares -= oldest * oldest;
+        }
+
+        if (seen >= this.window) {
+            // The value that was window places back moves from the new window to the old
+            double moved = this.values[(slot + this.window) % this.values.length];
+            this.new_sum -= moved;
+            this.new_squares -= moved * moved;
+            this.old_sum += moved;
+            this.old_squares += moved * moved;
+        }
+
+        this.values[slot] = value;
+        this.new_sum += value;
+        this.new_squares += value * value;
+
+        if (seen + 1 >= this.values.length && isStable()) {
+            this.steady_start = index - this.values.length + 1;
+            return Phase.STEADY;
+        }
+
+        return Phase.TRANSIENT;
+    }
+
+    /**
+     * Adds the next measurement of the run like {@link #add(double)} and prints the measurement the steady state began
+     *
+     * @param value the measurement
+     * @return the phase of the measurement
+     */
+    public Phase update(double value) {
+        boolean was_steady = isSteady();
+        Phase phase = add(value);
+
+        if (phase == Phase.STEADY && !was_steady)
+            System.out.println("Steady state began at packet " + (this.steady_start + 1));
+
+        return phase;
+    }
+
+    /**
+     * Creates a series of values that is summarised over the steady state of the detector. Create the series of a run
+     * after the {@link #reset()} at the start of the run.
+     *
+     * @return the empty series
+     */
+    public Series newSeries() {
+        return new Series();
+    }
+
+    /**
+     * Adds the phase of every measurement of the run to a column. Called at the end of the run when the start of the
+     * steady state is known. The phases are {@link Phase#ordinal()} values.
+     *
+     * @param column the phases column
+     */
+    public void fillPhases(ColumnarExport.Column column) {
+        for (long i = 0; i < this.count; i++) {
+            Phase phase = i < this.warmup ? Phase.WARMUP :
+                    (this.steady_start < 0 || i < this.steady_start ? Phase.TRANSIENT : Phase.STEADY);
+
+            column.add(phase.ordinal());
+        }
+    }
+
+    /**
+     * Compares the two windows
+     */
+    private boolean isStable() {
+        double n = this.window;
+        double old_mean = this.old_sum / n;
+        double new_mean = this.new_sum / n;
+        double old_variance = Math.max(0, (this.old_squares - n * old_mean * old_mean) / (n - 1));
+        double new_variance = Math.max(0, (this.new_squares - n * new_mean * new_mean) / (n - 1));
+
+        double error = Math.sqrt((old_variance + new_variance) / n);
+        double difference = Math.abs(new_mean - old_mean);
+
+        // Constant measurements are steady only if they are equal
+        if (error == 0)
+            return difference == 0;
+
+        double ratio = Math.max(old_variance, new_variance) / Math.max(Math.min(old_variance, new_variance), 1e-12);
+
+        return difference / error < this.t_threshold && ratio <= this.variance_ratio;
+    }
+
+    /**
+     * Clears the detector for a new run
+     */
+    public void reset() {
+        this.next = 0;
+        this.count = 0;
+        this.old_sum = this.old_squares = 0;
+        this.new_sum = this.new_squares = 0;
+        this.steady_start = -1;
+    }
+
+    /**
+     * Checks if the steady state was reached
+     *
+     * @return true if the steady state was reached
+     */
+    public boolean isSteady() {
+        return this.steady_start >= 0;
+    }
+
+    /**
+     * Gets the index (from 0) of the first measurement of the steady state
+     *
+     * @return the index or -1 if the steady state was not reached
+     */
+    public long getSteadyStart() {
+        return steady_start;
+    }
+
+    /**
+     * Gets the number of measurements that are always excluded at the start of the run
+     *
+     * @return {@link #warmup}
+     */
+    public int getWarmup() {
+        return warmup;
+    }
+
+    /**
+     * Creates the report line of the detector
+     *
+     * @return the warm up and the start of the steady state (from 1) or "none"
+     */
+    public String getReport() {
+        return String.format(Locale.US, "warmup=%d steady_state_start=%s measurements=%d", this.warmup,
+                this.steady_start < 0 ? "none" : String.valueOf(this.steady_start + 1), this.count);
+    }
+
+    /**
+     * The values of one measurement of the run (e.g. the response times) summarised over the steady state. The last
+     * 2 * {@link #window} values are kept, so the values from the start of the steady state until it is detected are
+     * still available when the detector finds it. Memory does not grow with the length of the run.
+     * <br>
+     * Call {@link #add(long)} after the {@link #add(double)} or {@link #update(double)} of the detector for the same
+     * measurement.
+     */
+    public class Series {
+        private final long[] recent = new long[2 * window];
+        private long count = 0;
+
+        private final Histogram after_warmup = new Histogram(1);
+        private final Histogram steady = new Histogram(1);
+        private boolean steady_filled = false;
+
+        private Series() {
+        }
+
+        /**
+         * Adds the value of the last measurement of the detector
+         *
+         * @param value the value
+         */
+        public void add(long value) {
+            long index = this.count++;
+            this.recent[(int) (index % this.recent.length)] = value;
+
+            if (index < warmup)
+                return;
+
+            this.after_warmup.add(value);
+
+            if (steady_start >= 0 && index >= steady_start) {
+                if (!this.steady_filled) {
+                    // The values from the start of the steady state until now were added before it was detected
+                    for (long i = Math.max(steady_start, index - this.recent.length + 1); i < index; i++)
+                        this.steady.add(this.recent[(int) (i % this.recent.length)]);
+
+                    this.steady_filled = true;
+                }
+
+                this.steady.add(value);
+            }
+        }
+
+        /**
+         * Creates the summary of the values excluding the warm up and the transient measurements
+         *
+         * @return the summary of the steady (or after the warm up if the steady state was not reached) values
+         */
+        public String getSummary() {
+            boolean is_steady = steady_start >= 0;
+            long first = is_steady ? steady_start : Math.min(warmup, this.count);
+
+            return "(" + (is_steady ? "steady from" : "steady state not reached, from") + " packet " + (first + 1) +
+                    ") " + (is_steady ? this.steady : this.after_warmup).getSummary();
+        }
+    }
+}
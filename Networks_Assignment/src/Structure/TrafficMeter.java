@@ -0,0 +1,129 @@
+package Structure;
+
+import java.util.Arrays;
+
+/**
+ * <h1>TrafficMeter Class</h1>
+ * Counts the traffic of all the transports of a {@link Structure.Connection}: the bytes read, the requests written, the
+ * NACK requests (retransmissions) and the reads that returned -1 (timeouts or drops). The connection wraps every
+ * transport it creates with {@link #wrap(Transport)}, so the counters continue over the reconnections.
+ * <br>
+ * The counters only increase. To measure a part of a session keep the values at the start and subtract them at the
+ * end, like the {@link Structure.SpeedController} does.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class TrafficMeter {
+
+    /**
+     * The bytes of the NACK request. The writes with these bytes are counted as retransmissions.
+     */
+    private final byte[] nack;
+
+    private long bytes_read = 0;
+    private long writes = 0;
+    private long nacks = 0;
+    private long timeouts = 0;
+
+
+    /**
+     * Constructor
+     *
+     * @param nack_code the NACK request code with the \r
+     */
+    public TrafficMeter(String nack_code) {
+        this.nack = nack_code.getBytes();
+    }
+
+    /**
+     * Wraps a transport so that its traffic is counted by this meter
+     *
+     * @param transport the transport
+     * @return the counting transport
+     */
+    public Transport wrap(Transport transport) {
+        return new MeteredTransport(transport);
+    }
+
+    // Getters
+    public long getBytes_read() {
+        return bytes_read;
+    }
+
+    public long getWrites() {
+        return writes;
+    }
+
+    public long getNacks() {
+        return nacks;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Creates the statistics of the meter
+     *
+     * @return the statistics in one line
+     */
+    public String getStatistics() {
+        return "bytes_read=" + this.bytes_read + " writes=" + this.writes + " nacks=" + this.nacks + " timeouts=" +
+                this.timeouts;
+    }
+
+    /**
+     * Passes everything to the wrapped transport and updates the counters of the meter
+     */
+    private class MeteredTransport implements Transport {
+        private final Transport transport;
+
+        MeteredTransport(Transport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public boolean setSpeed(int speed) {
+            return this.transport.setSpeed(speed);
+        }
+
+        @Override
+        public boolean setTimeout(int timeout) {
+            return this.transport.setTimeout(timeout);
+        }
+
+        @Override
+        public boolean open(String mode) {
+            return this.transport.open(mode);
+        }
+
+        @Override
+        public int read() {
+            int k = this.transport.read();
+
+            if (k == -1)
+                timeouts++;
+            else
+                bytes_read++;
+
+            return k;
+        }
+
+        @Override
+        public boolean write(byte[] data) {
+            writes++;
+
+            if (Arrays.equals(data, nack))
+                nacks++;
+
+            return this.transport.write(data);
+        }
+
+        @Override
+        public boolean close() {
+            return this.transport.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package Structure;
+
+/**
+ * <h1>Transport Interface</h1>
+ * The byte channel to the server used by the {@link Structure.Connection} and all the modules. It has the same methods
+ * as the ithakimodem Modem so that the modules work the same way over the virtual modem
+ * ({@link Structure.ModemTransport}) and over a TCP connection to the local simulator
+ * ({@link Structure.SocketTransport}).
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public interface Transport {
+
+    /**
+     * Sets the speed of the connection
+     *
+     * @param speed the speed in bits per second
+     * @return true if the speed was set
+     */
+    boolean setSpeed(int speed);
+
+    /**
+     * Sets the time with no activity after which {@link #read()} returns -1
+     *
+     * @param timeout the timeout in milliseconds
+     * @return true if the timeout was set
+     */
+    boolean setTimeout(int timeout);
+
+    /**
+     * Opens the connection with the server in a mode
+     *
+     * @param mode the mode e.g. {@link Structure.Constants#DATA_MODE}
+     * @return true if the connection was opened
+     */
+    boolean open(String mode);
+
+    /**
+     * Reads the next byte from the server
+     *
+     * @return the byte (0 - 255) or -1 if the connection timed out or dropped
+     */
+    int read();
+
+    /**
+     * Writes a request to the server
+     *
+     * @param data the bytes of the request
+     * @return true if the request was written
+     */
+    boolean write(byte[] data);
+
+    /**
+     * Closes the connection
+     *
+     * @return true if the connection was closed
+     */
+    boolean close();
+}
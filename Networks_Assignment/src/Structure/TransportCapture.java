@@ -0,0 +1,325 @@
+package Structure;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+
+/**
+ * <h1>TransportCapture Class</h1>
+ * Records every byte read from and written to the server by one or more {@link Structure.CapturingTransport}s with the
+ * time it happened, so that a session can be replayed byte for byte by a {@link Structure.ReplayTransport}.
+ * <br>
+ * File format:
+ * <ul>
+ *     <li>Header (big endian): magic "ITHC" (int), version (int), capture start in epoch milliseconds (long)</li>
+ *     <li>Events: {@link EventType} id (byte), microseconds since the previous event (varint), payload</li>
+ * </ul>
+ * The consecutive bytes read are kept in memory and saved as one READ event: the number of bytes (varint), the bytes
+ * and the microseconds between every byte and the previous one (varint). The gaps are usually 0 or a few
+ * microseconds, so a byte of a response costs about 2 bytes in the file. The varints are unsigned LEB128.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class TransportCapture implements AutoCloseable {
+
+    /**
+     * Identifies the capture files
+     */
+    static final int FILE_MAGIC = 0x49544843;  // "ITHC"
+
+    /**
+     * The version of the file format
+     */
+    static final int FILE_VERSION = 1;
+
+    /**
+     * A READ event is saved when it has this many bytes even if the response continues
+     */
+    static final int MAX_READ_EVENT = 4096;
+
+    /**
+     * The types of the events
+     */
+    enum EventType {
+        /**
+         * The connection was opened. Payload: the mode (varint length and ASCII bytes)
+         */
+        OPEN(0),
+        /**
+         * A request was written. Payload: the bytes (varint length and bytes)
+         */
+        WRITE(1),
+        /**
+         * Bytes were read. Payload: count (varint), the bytes, count - 1 gaps in microseconds (varint)
+         */
+        READ(2),
+        /**
+         * A read returned -1 (timeout or drop). No payload.
+         */
+        TIMEOUT(3),
+        /**
+         * The connection was closed. No payload.
+         */
+        CLOSE(4);
+
+        private final byte id;
+
+        EventType(int id) {
+            this.id = (byte) id;
+        }
+
+        public byte getId() {
+            return id;
+        }
+
+        /**
+         * Finds the type of an id
+         *
+         * @param id the id read from the file
+         * @return the type or null if the id is unknown
+         */
+        public static EventType fromId(int id) {
+            for (EventType type : values()) {
+                if (type.id == id)
+                    return type;
+            }
+
+            return null;
+        }
+    }
+
+    private final DataOutputStream out;
+
+    /**
+     * The nanoTime the capture started
+     */
+    private final long start_nanos;
+
+    /**
+     * The time of the last saved event in microseconds since the start
+     */
+    private long last_event = 0;
+
+    // The READ event in progress
+    private final ByteArrayOutputStream read_bytes = new ByteArrayOutputStream(MAX_READ_EVENT);
+    private final ByteArrayOutputStream read_gaps = new ByteArrayOutputStream(MAX_READ_EVENT);
+    private long read_start = 0;
+    private long read_last = 0;
+
+    // Statistics
+    private long events = 0;
+    private long bytes_read = 0;
+    private long bytes_written = 0;
+
+
+    /**
+     * Constructor. Creates a new capture file.
+     *
+     * @param file_name the name of the file
+     * @throws IOException if the file can not be created
+     */
+    public TransportCapture(String file_name) throws IOException {
+        File file = new File(file_name);
+
+        if (file.getParentFile() != null)
+            file.getParentFile().mkdirs();
+
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        this.start_nanos = System.nanoTime();
+
+        this.out.writeInt(FILE_MAGIC);
+        this.out.writeInt(FILE_VERSION);
+        this.out.writeLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the current date time and formats it in this form "yyyy-MM-dd HH-mm-ss". The final name of the file derives
+     * from the directory + capture yyyy-MM-dd HH-mm-ss.cap
+     *
+     * <b>Note: </b> The directory must end with /
+     *
+     * @param directory The directory the file will be saved.
+     * @return directory + name + date + .cap
+     */
+    public static String createFileName(String directory) {
+        DateFormat df = new SimpleDateFormat("yyyy-MM-dd HH-mm-ss");
+
+        return directory + "capture " + df.format(Calendar.getInstance().getTime()) + ".cap";
+    }
+
+    private long now() {
+        return (System.nanoTime() - this.start_nanos) / 1000;
+    }
+
+    /**
+     * Records the opening of a connection
+     *
+     * @param mode the mode of the connection
+     */
+    public synchronized void open(String mode) {
+        writeEvent(EventType.OPEN, now(), mode.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Records a request
+     *
+     * @param data the bytes of the request
+     */
+    public synchronized void write(byte[] data) {
+        writeEvent(EventType.WRITE, now(), data);
+        this.bytes_written += data.length;
+    }
+
+    /**
+     * Records a byte read
+     *
+     * @param k the byte
+     */
+    public synchronized void read(int k) {
+        long time = now();
+
+        if (this.read_bytes.size() == 0)
+            this.read_start = time;
+        else
+            writeVarint(this.read_gaps, time - this.read_last);
+
+        this.read_bytes.write(k);
+        this.read_last = time;
+        this.bytes_read++;
+
+        if (this.read_bytes.size() >= MAX_READ_EVENT)
+            flushRead();
+    }
+
+    /**
+     * Records a read that returned -1
+     */
+    public synchronized void timeout() {
+        writeEvent(EventType.TIMEOUT, now(), null);
+    }
+
+    /**
+     * Records the closing of a connection
+     */
+    public synchronized void closed() {
+        writeEvent(EventType.CLOSE, now(), null);
+    }
+
+    /**
+     * Saves an event. The bytes read before the event are saved first.
+     */
+    private void writeEvent(EventType type, long time, byte[] payload) {
+        flushRead();
+
+        try {
+            this.out.writeByte(type.getId());
+            writeVarint(this.out, time - this.last_event);
+
+            if (payload != null) {
+                writeVarint(this.out, payload.length);
+                this.out.write(payload);
+            }
+
+            this.last_event = time;
+            this.events++;
+        } catch (IOException e) {
+            System.out.println("Failed to write capture with exception: " + e.toString());
+        }
+    }
+
+    /**
+     * Saves the READ event in progress
+     */
+    private void flushRead() {
+        if (this.read_bytes.size() == 0)
+            return;
+
+        try {
+            this.out.writeByte(EventType.READ.getId());
+            writeVarint(this.out, this.read_start - this.last_event);
+            writeVarint(this.out, this.read_bytes.size());
+            this.read_bytes.writeTo(this.out);
+            this.read_gaps.writeTo(this.out);
+
+            this.last_event = this.read_start;
+            this.events++;
+        } catch (IOException e) {
+            System.out.println("Failed to write capture with exception: " + e.toString());
+        }
+
+        this.read_bytes.reset();
+        this.read_gaps.reset();
+    }
+
+    /**
+     * Saves everything to the file and closes it
+     *
+     * @throws IOException if the file can not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flushRead();
+        this.out.close();
+    }
+
+    /**
+     * Creates the statistics of the capture
+     *
+     * @return the statistics in one line
+     */
+    public synchronized String getStatistics() {
+        return "events=" + this.events + " bytes_read=" + this.bytes_read + " bytes_written=" + this.bytes_written +
+                " file_bytes=" + this.out.size();
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint
+     */
+    static void writeVarint(OutputStream out, long value) {
+        try {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+
+            out.write((int) value);
+        } catch (IOException e) {
+            System.out.println("Failed to write capture with exception: " + e.toString());
+        }
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint
+     *
+     * @return the value
+     * @throws IOException if the stream ends in the middle of the varint
+     */
+    static long readVarint(InputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int k;
+
+        do {
+            k = in.read();
+
+            if (k == -1)
+                throw new IOException("Unexpected end of capture");
+
+            value |= (long) (k & 0x7F) << shift;
+            shift += 7;
+        } while ((k & 0x80) != 0);
+
+        return value;
+    }
+}
@@ -0,0 +1,83 @@
+package Structure;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>VirtualThreads Class</h1>
+ * Creates the threads of the sessions and the jobs. On Java 21 and later the threads are virtual, so a thread that
+ * blocks on a read of the modem or the socket does not hold an OS thread and hundreds of sessions cost little. On
+ * older runtimes (the project is compiled for Java 17) the threads are daemon platform threads.
+ * <br>
+ * The virtual thread builder is found with reflection, so the same jar runs on both.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public final class VirtualThreads {
+
+    // Thread.ofVirtual(), Thread.Builder.name(String, long) and Thread.Builder.factory() or null if the runtime can
+    // not create virtual threads
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+
+    static {
+        Method of_virtual = null, name = null, factory = null;
+
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+
+            of_virtual = Thread.class.getMethod("ofVirtual");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+
+            // Java 19 and 20 have the methods but fail without --enable-preview. Create (not start) a real thread.
+            ((ThreadFactory) factory.invoke(name.invoke(of_virtual.invoke(null), "probe", 0L))).newThread(() -> {
+            });
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            of_virtual = null;
+        }
+
+        OF_VIRTUAL = of_virtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if a virtual thread could be created, so the threads of {@link #factory(String)} are virtual
+     */
+    public static boolean isAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Creates a factory of named threads
+     *
+     * @param prefix the name of the threads is the prefix and a counter e.g. ithaki-session-0
+     * @return the factory of virtual threads or of daemon platform threads
+     */
+    public static ThreadFactory factory(String prefix) {
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 0L);
+                return (ThreadFactory) FACTORY.invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                System.out.println("Failed to create virtual threads with exception: " + e.toString());
+            }
+        }
+
+        AtomicLong counter = new AtomicLong();
+
+        return task -> {
+            Thread thread = new Thread(task, prefix + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
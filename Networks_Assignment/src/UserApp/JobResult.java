@@ -0,0 +1,81 @@
+package UserApp;
+
+import java.util.Locale;
+
+/**
+ * <h1>JobResult Class</h1>
+ * The result of a job of the {@link UserApp.JobRunner}: the value returned by the job (e.g. the module with its
+ * received data) and the traffic of the connection of the job.
+ *
+ * @param <T> the type of the value of the job
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public final class JobResult<T> {
+
+    private final String name;
+    private final T value;
+    private final long bytes;
+    private final long requests;
+    private final long timeouts;
+    private final long elapsed_nanos;
+
+
+    /**
+     * Constructor
+     *
+     * @param name          the name of the job
+     * @param value         the value returned by the job
+     * @param bytes         the bytes read by the connection of the job
+     * @param requests      the requests written by the connection of the job
+     * @param timeouts      the reads that timed out
+     * @param elapsed_nanos the time from the start of the connection to the end of the job
+     */
+    JobResult(String name, T value, long bytes, long requests, long timeouts, long elapsed_nanos) {
+        this.name = name;
+        this.value = value;
+        this.bytes = bytes;
+        this.requests = requests;
+        this.timeouts = timeouts;
+        this.elapsed_nanos = elapsed_nanos;
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getElapsed_nanos() {
+        return elapsed_nanos;
+    }
+
+    /**
+     * @return the bytes per second of the job
+     */
+    public double getThroughput() {
+        return this.bytes * 1e9 / Math.max(1, this.elapsed_nanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: time=%.1f s bytes=%d requests=%d timeouts=%d throughput=%.0f B/s",
+                this.name, this.elapsed_nanos / 1e9, this.bytes, this.requests, this.timeouts, getThroughput());
+    }
+}
@@ -0,0 +1,498 @@
+package UserApp;
+
+import Echo.EchoErrors;
+import Echo.EchoPackets;
+import GPS.GPSPackets;
+import Image.ImagePackets;
+import Structure.Connection;
+import Structure.ModemTransport;
+import Structure.OutputSink;
+import Structure.ReconnectPolicy;
+import Structure.RunLimit;
+import Structure.SessionConfig;
+import Structure.TrafficMeter;
+import Structure.Transport;
+import Structure.VirtualThreads;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <h1>JobRunner Class</h1>
+ * Runs workloads of the modules (an echo run, a burst of images, a GPS route) as jobs on virtual threads. Every job
+ * opens its own {@link Structure.Connection} with the {@link Structure.SessionConfig} of the runner, so hundreds of
+ * simulated or real sessions can run at the same time without a platform thread for every blocking read. The threads
+ * come from {@link Structure.VirtualThreads}, so before Java 21 the jobs run on platform threads.
+ * <br>
+ * A job is a function from the connection to a typed value and its future gives a {@link UserApp.JobResult} with the
+ * value and the traffic of the job:
+ * <pre>
+ * try (JobRunner runner = new JobRunner(transportFactory, config);
+ *      JobRunner.Group group = runner.group("images", Duration.ofMinutes(2))) {
+ *     CompletableFuture&lt;JobResult&lt;ImagePackets&gt;&gt; clear = group.fork("clear", JobRunner.imageBurst(10, false));
+ *     CompletableFuture&lt;JobResult&lt;GPSPackets&gt;&gt; route = group.fork("route", JobRunner.gpsRoute("R=1000199"));
+ *     group.join();
+ *     System.out.println(clear.join().getValue().getRequestTimer().getSummary());
+ * }
+ * </pre>
+ * The jobs are grouped the way structured concurrency does it: a {@link Group} owns the jobs it forks and no job
+ * outlives the group. {@link Group#join()} waits for all the jobs until the deadline of the group. When a job fails or
+ * the deadline is reached the other jobs of the group are cancelled: their threads are interrupted and their transports
+ * closed so that a blocked read returns at once. The deadline is a scheduled cancel, so it is kept even if nobody
+ * joins the group. The future of a cancelled job completes when its thread has stopped. {@link Group#close()} cancels
+ * what is left and waits for the threads to end. (The StructuredTaskScope of Java 21 is a preview API, so the group
+ * is built on plain threads.)
+ * <br>
+ * <b>Note:</b> The names of the group and the job are added to the file names of the modules of the job (see
+ * {@link Structure.Connection#setFile_tag(String)}), so the jobs of a group need different names. For a large fan out
+ * a sink that drops the output can be set with {@link #setOutputSink(OutputSink)}. A shared sink with synchronized
+ * methods pins the virtual threads to their carrier threads while they write, so prefer a sink that only queues the
+ * records (e.g. {@link Structure.AsyncOutputSink}).
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class JobRunner implements AutoCloseable {
+
+    /**
+     * Runs the deadlines of all the groups
+     */
+    private static final ScheduledExecutorService DEADLINES = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "JobRunner deadlines");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Supplier<Transport> transportFactory;
+    private final SessionConfig config;
+
+    /**
+     * The sink shared by all the jobs. When null every job writes its files with its own sink.
+     */
+    private volatile OutputSink outputSink = null;
+
+    /**
+     * The group of the jobs submitted directly to the runner
+     */
+    private final Group jobs;
+
+
+    /**
+     * Constructor with the virtual modem
+     *
+     * @param config the request codes and link parameters of every job
+     */
+    public JobRunner(SessionConfig config) {
+        this(ModemTransport::new, config);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param transportFactory creates the transports of the jobs e.g. () -&gt; new SocketTransport("localhost", port)
+     * @param config           the request codes and link parameters of every job
+     */
+    public JobRunner(Supplier<Transport> transportFactory, SessionConfig config) {
+        this.transportFactory = transportFactory;
+        this.config = config;
+        this.jobs = new Group("jobs", null);
+    }
+
+    /**
+     * Sets a sink shared by all the jobs. It must be thread safe (e.g. {@link Structure.AsyncOutputSink}) and it is
+     * not closed by the runner.
+     *
+     * @param outputSink the shared sink
+     */
+    public void setOutputSink(OutputSink outputSink) {
+        this.outputSink = outputSink;
+    }
+
+    /**
+     * Creates a group of jobs without deadline
+     *
+     * @param name the name of the group
+     * @return the group
+     */
+    public Group group(String name) {
+        return new Group(name, null);
+    }
+
+    /**
+     * Creates a group of jobs
+     *
+     * @param name     the name of the group
+     * @param deadline the time the jobs of the group have from now. The jobs that are still running are cancelled.
+     * @return the group
+     */
+    public Group group(String name, Duration deadline) {
+        return new Group(name, deadline);
+    }
+
+    /**
+     * Runs a job outside of any group. The job ends at the latest when the runner is closed.
+     *
+     * @param name the name of the job
+     * @param job  the workload
+     * @param <T>  the type of the value of the job
+     * @return the future result
+     */
+    public <T> CompletableFuture<JobResult<T>> submit(String name, Function<Connection, T> job) {
+        return this.jobs.fork(name, job);
+    }
+
+    /**
+     * Waits for the jobs submitted to the runner
+     */
+    @Override
+    public void close() {
+        this.jobs.join();
+        this.jobs.close();
+    }
+
+    /**
+     * Opens the connection of a job, runs the job and closes the connection. Runs in the virtual thread of the job.
+     */
+    private <T> JobResult<T> execute(Job<T> handle, Function<Connection, T> job) throws IOException {
+        long start = System.nanoTime();
+        Connection connection = new Connection(this.transportFactory, this.config);
+        OutputSink sink = this.outputSink;
+
+        connection.setFile_tag(handle.file_tag);
+
+        handle.connection = connection;
+
+        try {
+            // Cancelled while connecting
+            if (Thread.currentThread().isInterrupted())
+                throw new CancellationException("Job " + handle.name + " was cancelled");
+
+            if (!connection.isConnected() && connection.recover() != ReconnectPolicy.Status.RECOVERED)
+                throw new IOException("Connection of job " + handle.name + " failed");
+
+            if (sink != null)
+                connection.setOutputSink(sink);
+
+            T value = job.apply(connection);
+
+            if (Thread.currentThread().isInterrupted())
+                throw new CancellationException("Job " + handle.name + " was cancelled");
+
+            TrafficMeter meter = connection.getTrafficMeter();
+
+            return new JobResult<>(handle.name, value, meter.getBytes_read(), meter.getWrites(), meter.getTimeouts(),
+                    System.nanoTime() - start);
+        } finally {
+            connection.setHotStandby(false);
+            connection.getTransport().close();
+
+            if (sink == null) {
+                try {
+                    connection.getOutputSink().close();
+                } catch (IOException e) {
+                    System.out.println("Failed to write output files with exception: " + e.toString());
+                }
+            }
+        }
+    }
+
+    // ======================================   Jobs   ======================================
+
+    /**
+     * An echo run
+     *
+     * @param runLimit the limit of the run e.g. RunLimit.packets(100)
+     * @return the job. Its value is the module with the received packets.
+     */
+    public static Function<Connection, EchoPackets> echoRun(RunLimit runLimit) {
+        return connection -> {
+            EchoPackets echoPackets = new EchoPackets(connection, 0);
+            echoPackets.setRunLimit(runLimit);
+            echoPackets.getPackets();
+            return echoPackets;
+        };
+    }
+
+    /**
+     * An echo run with errors
+     *
+     * @param runLimit the limit of the run e.g. RunLimit.packets(100)
+     * @return the job. Its value is the module with the received packets.
+     */
+    public static Function<Connection, EchoErrors> errorEchoRun(RunLimit runLimit) {
+        return connection -> {
+            EchoErrors echoErrors = new EchoErrors(connection, 0);
+            echoErrors.setRunLimit(runLimit);
+            echoErrors.getPackets();
+            return echoErrors;
+        };
+    }
+
+    /**
+     * A burst of images
+     *
+     * @param images     the number of images
+     * @param has_errors true for the images with errors
+     * @return the job. Its value is the module with the request phases of the images.
+     */
+    public static Function<Connection, ImagePackets> imageBurst(int images, boolean has_errors) {
+        return connection -> {
+            ImagePackets imagePackets = new ImagePackets(connection, has_errors);
+
+            for (int i = 0; i < images && !Thread.currentThread().isInterrupted(); i++)
+                imagePackets.getPackets();
+
+            return imagePackets;
+        };
+    }
+
+    /**
+     * The GPS data of a route and its images
+     *
+     * @param route the route parameter e.g. R=1000199
+     * @return the job. Its value is the module with the points of the route.
+     */
+    public static Function<Connection, GPSPackets> gpsRoute(String route) {
+        return connection -> {
+            GPSPackets gpsPackets = new GPSPackets(connection, route);
+            gpsPackets.getPackets();
+            return gpsPackets;
+        };
+    }
+
+    // ======================================   Groups   ======================================
+
+    /**
+     * A job and its virtual thread
+     */
+    private static class Job<T> {
+        private final String name;
+        private final String file_tag;
+        private final CompletableFuture<JobResult<T>> result = new CompletableFuture<>();
+        private Thread thread;
+        private volatile Connection connection;
+        private volatile boolean cancelled = false;
+
+        Job(String name, String file_tag) {
+            this.name = name;
+            this.file_tag = file_tag;
+        }
+
+        /**
+         * Interrupts the thread and closes the transport so that a blocked read returns. The thread completes the
+         * {@link #result} when it stops.
+         */
+        void cancel() {
+            if (this.result.isDone() || this.cancelled)
+                return;
+
+            this.cancelled = true;
+            this.thread.interrupt();
+
+            Connection connection = this.connection;
+            if (connection != null)
+                connection.getTransport().close();
+        }
+    }
+
+    /**
+     * A group of jobs with a common deadline. The first job that fails cancels the others.
+     */
+    public class Group implements AutoCloseable {
+
+        private final String name;
+
+        /**
+         * The nanoTime the jobs are cancelled. 0 for no deadline.
+         */
+        private final long deadline;
+
+        /**
+         * Cancels the jobs at the deadline. null for no deadline.
+         */
+        private final ScheduledFuture<?> deadline_task;
+
+        private final ThreadFactory threads;
+        private final List<Job<?>> group_jobs = new ArrayList<>();
+        private volatile Throwable failure = null;
+        private boolean closed = false;
+        private boolean expired = false;
+
+
+        private Group(String name, Duration deadline) {
+            this.name = name;
+            this.threads = VirtualThreads.factory(name + "/");
+            this.deadline = deadline == null ? 0 : System.nanoTime() + deadline.toNanos();
+            this.deadline_task = deadline == null ? null :
+                    DEADLINES.schedule(this::expire, deadline.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * Starts a job of the group in a new virtual thread (a platform thread before Java 21)
+         *
+         * @param name the name of the job
+         * @param job  the workload
+         * @param <T>  the type of the value of the job
+         * @return the future result. Completes exceptionally if the job fails or is cancelled.
+         */
+        public <T> CompletableFuture<JobResult<T>> fork(String name, Function<Connection, T> job) {
+            Job<T> handle = new Job<>(name, this.name + " " + name);
+
+            synchronized (this) {
+                if (this.closed)
+                    throw new IllegalStateException("Group " + this.name + " is closed");
+
+                handle.thread = this.threads.newThread(() -> {
+                    try {
+                        JobResult<T> result = execute(handle, job);
+
+                        // Cancelled after the workload returned
+                        if (handle.cancelled)
+                            throw new CancellationException("Job " + handle.name + " was cancelled");
+
+                        handle.result.complete(result);
+                    } catch (Throwable e) {
+                        // A cancelled job fails with whatever its closed transport caused. Report the cancellation.
+                        if (handle.cancelled && !(e instanceof CancellationException))
+                            e = new CancellationException("Job " + handle.name + " was cancelled");
+
+                        handle.result.completeExceptionally(e);
+                        failed(handle, e);
+                    }
+                });
+                handle.thread.setName(this.name + "/" + name);
+
+                this.group_jobs.add(handle);
+            }
+
+            handle.thread.start();
+
+            // Forked after the deadline
+            synchronized (this) {
+                if (this.expired)
+                    handle.cancel();
+            }
+
+            return handle.result;
+        }
+
+        /**
+         * Cancels the other jobs when the first job fails
+         */
+        private void failed(Job<?> job, Throwable e) {
+            synchronized (this) {
+                if (this.failure != null || e instanceof CancellationException)
+                    return;
+
+                this.failure = e;
+            }
+
+            System.out.println("Job " + job.name + " failed with exception: " + e.toString() +
+                    ". Cancelling the group " + this.name);
+            cancel();
+        }
+
+        /**
+         * Cancels the running jobs when the deadline is reached. Runs in the scheduler thread or in {@link #join()}.
+         */
+        private void expire() {
+            synchronized (this) {
+                if (this.expired)
+                    return;
+
+                this.expired = true;
+            }
+
+            System.out.println("Deadline of group " + this.name + " reached. Cancelling the running jobs");
+            cancel();
+        }
+
+        /**
+         * Cancels all the jobs of the group that are still running
+         */
+        public void cancel() {
+            for (Job<?> job : snapshot())
+                job.cancel();
+        }
+
+        private synchronized List<Job<?>> snapshot() {
+            return new ArrayList<>(this.group_jobs);
+        }
+
+        /**
+         * Waits for all the jobs of the group. When the deadline is reached the running jobs are cancelled.
+         *
+         * @return true if every job completed, false if a job failed or was cancelled
+         */
+        public boolean join() {
+            boolean completed = true;
+
+            for (Job<?> job : snapshot()) {
+                try {
+                    if (this.deadline == 0) {
+                        job.result.get();
+                    } else {
+                        job.result.get(Math.max(0, this.deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    }
+                } catch (TimeoutException e) {
+                    // The scheduled cancel may run a moment later
+                    expire();
+                    completed = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancel();
+                    return false;
+                } catch (ExecutionException | CancellationException e) {
+                    completed = false;
+                }
+            }
+
+            return completed;
+        }
+
+        /**
+         * @return the exception of the first job that failed or null
+         */
+        public Throwable getFailure() {
+            return failure;
+        }
+
+        /**
+         * Cancels the jobs that are still running and waits for all the threads of the group to end
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                this.closed = true;
+            }
+
+            if (this.deadline_task != null)
+                this.deadline_task.cancel(false);
+
+            cancel();
+
+            for (Job<?> job : snapshot()) {
+                try {
+                    job.thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
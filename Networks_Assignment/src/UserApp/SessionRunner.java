@@ -0,0 +1,233 @@
+package UserApp;
+
+import Structure.Connection;
+import Structure.ModemTransport;
+import Structure.OutputSink;
+import Structure.ReconnectPolicy;
+import Structure.SessionConfig;
+import Structure.TrafficMeter;
+import Structure.Transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * <h1>SessionRunner Class</h1>
+ * Runs the modules concurrently over many sessions with the server instead of one after the other over a single
+ * {@link Structure.Connection}, so a full run takes about as long as the longest module and not the sum of all.
+ * <br>
+ * Every session has its own connection (and transport) created from an immutable {@link Structure.SessionConfig} and
+ * runs its workload in its own thread:
+ * <pre>
+ * SessionRunner runner = new SessionRunner();
+ * runner.addSession("echo", config.withSpeed(3800), connection -&gt; new EchoPackets(connection, 5000).getPackets());
+ * runner.addSession("image", config, connection -&gt; new ImagePackets(connection, false).getPackets());
+ * runner.run();
+ * System.out.println(runner.getReport());
+ * </pre>
+ * The report has the time, bytes and requests of every session with its throughput and the aggregate throughput of all
+ * the sessions (total bytes / wall time).
+ * <br>
+ * <b>Note:</b> The server must accept many sessions with the same codes at the same time. The name of the session is
+ * added to the file names of its modules (see {@link Structure.Connection#setFile_tag(String)}), so give every session
+ * a different name.
+ *
+ * @author Vasilis Kyriafinis
+ * @version 1.0
+ * @since 1.0
+ */
+public class SessionRunner {
+
+    private final List<Session> sessions = new ArrayList<>();
+
+    /**
+     * The sink shared by all the sessions. When null every session writes its files with its own sink.
+     */
+    private OutputSink outputSink = null;
+
+    private long wall_nanos = 0;
+
+
+    /**
+     * Sets a sink shared by all the sessions. It must be thread safe (e.g. {@link Structure.AsyncOutputSink}) and it
+     * is not closed by the runner.
+     *
+     * @param outputSink the shared sink
+     */
+    public void setOutputSink(OutputSink outputSink) {
+        this.outputSink = outputSink;
+    }
+
+    /**
+     * Adds a session with the virtual modem
+     *
+     * @param name     the name of the session in the report
+     * @param config   the request codes and link parameters
+     * @param workload the modules to run with the connection of the session
+     */
+    public void addSession(String name, SessionConfig config, Consumer<Connection> workload) {
+        addSession(name, ModemTransport::new, config, workload);
+    }
+
+    /**
+     * Adds a session
+     *
+     * @param name             the name of the session in the report
+     * @param transportFactory creates the transports of the session
+     * @param config           the request codes and link parameters
+     * @param workload         the modules to run with the connection of the session
+     */
+    public void addSession(String name, Supplier<Transport> transportFactory, SessionConfig config,
+                           Consumer<Connection> workload) {
+        this.sessions.add(new Session(name, transportFactory, config, workload));
+    }
+
+    /**
+     * Runs all the sessions at the same time and waits for them to finish
+     *
+     * @return true if every session completed its workload
+     */
+    public boolean run() {
+        List<Thread> threads = new ArrayList<>();
+        long start = System.nanoTime();
+
+        for (Session session : this.sessions) {
+            Thread thread = new Thread(() -> runSession(session), "Session " + session.name);
+            threads.add(thread);
+            thread.start();
+        }
+
+        boolean completed = true;
+
+        for (int i = 0; i < threads.size(); i++) {
+            try {
+                threads.get(i).join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.out.println("Interrupted while waiting for the sessions");
+                return false;
+            }
+
+            completed &= this.sessions.get(i).status.equals("completed");
+        }
+
+        this.wall_nanos = System.nanoTime() - start;
+        return completed;
+    }
+
+    /**
+     * Connects a session, runs its workload and closes it. Runs in the thread of the session.
+     */
+    private void runSession(Session session) {
+        long start = System.nanoTime();
+        Connection connection;
+
+        try {
+            connection = new Connection(session.transportFactory, session.config);
+        } catch (RuntimeException e) {
+            // e.g. the transport factory could not create the transport
+            session.status = "failed: " + e.toString();
+            session.elapsed_nanos = System.nanoTime() - start;
+            System.out.println("Session " + session.name + " failed with exception: " + e.toString());
+            return;
+        }
+
+        connection.setFile_tag(session.name);
+
+        if (!connection.isConnected() && connection.recover() != ReconnectPolicy.Status.RECOVERED) {
+            session.status = "connection failed";
+            session.elapsed_nanos = System.nanoTime() - start;
+            return;
+        }
+
+        if (this.outputSink != null)
+            connection.setOutputSink(this.outputSink);
+
+        try {
+            session.workload.accept(connection);
+            session.status = "completed";
+        } catch (Exception e) {
+            session.status = "failed: " + e.toString();
+            System.out.println("Session " + session.name + " failed with exception: " + e.toString());
+        }
+
+        session.elapsed_nanos = System.nanoTime() - start;
+
+        TrafficMeter meter = connection.getTrafficMeter();
+        session.bytes = meter.getBytes_read();
+        session.requests = meter.getWrites();
+        session.timeouts = meter.getTimeouts();
+
+        // Close the connection and the files of the session
+        connection.setHotStandby(false);
+        connection.getTransport().close();
+
+        if (this.outputSink == null) {
+            try {
+                connection.getOutputSink().close();
+            } catch (IOException e) {
+                System.out.println("Failed to write output files with exception: " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * Creates the report of the last run: a line for every session and the aggregate line
+     *
+     * @return the report lines
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        long total_bytes = 0, total_requests = 0, session_nanos = 0;
+
+        for (Session session : this.sessions) {
+            double seconds = Math.max(1, session.elapsed_nanos) / 1e9;
+
+            report.append(String.format(Locale.US, "Session %s: %s time=%.1f s bytes=%d requests=%d timeouts=%d " +
+                            "throughput=%.0f B/s %.2f requests/s", session.name, session.status, seconds, session.bytes,
+                    session.requests, session.timeouts, session.bytes / seconds, session.requests / seconds));
+            report.append(System.lineSeparator());
+
+            total_bytes += session.bytes;
+            total_requests += session.requests;
+            session_nanos += session.elapsed_nanos;
+        }
+
+        double wall = Math.max(1, this.wall_nanos) / 1e9;
+
+        report.append(String.format(Locale.US, "Aggregate: sessions=%d wall time=%.1f s bytes=%d requests=%d " +
+                        "throughput=%.0f B/s %.2f requests/s concurrency=%.2f", this.sessions.size(), wall, total_bytes,
+                total_requests, total_bytes / wall, total_requests / wall, session_nanos / 1e9 / wall));
+
+        return report.toString();
+    }
+
+    /**
+     * A session and its results
+     */
+    private static class Session {
+        private final String name;
+        private final Supplier<Transport> transportFactory;
+        private final SessionConfig config;
+        private final Consumer<Connection> workload;
+
+        // Results. Written by the thread of the session and read after it is joined.
+        private String status = "not run";
+        private long elapsed_nanos = 0;
+        private long bytes = 0;
+        private long requests = 0;
+        private long timeouts = 0;
+
+        Session(String name, Supplier<Transport> transportFactory, SessionConfig config,
+                Consumer<Connection> workload) {
+            this.name = name;
+            this.transportFactory = transportFactory;
+            this.config = config;
+            this.workload = workload;
+        }
+    }
+}
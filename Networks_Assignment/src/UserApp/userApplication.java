@@ -4,10 +4,19 @@ package UserApp;
 import Echo.EchoErrors;
 import Echo.EchoPackets;
 import GPS.GPSPackets;
+import GPS.MapImageCache;
+import GPS.RouteStitcher;
 import Image.ImagePackets;
 import Structure.Connection;
-import org.checkerframework.checker.units.qual.A;
-
+import Structure.AsyncOutputSink;
+import Structure.Constants;
+import Structure.FileOutputSink;
+import Structure.OutputSink;
+import Structure.ReconnectPolicy;
+import Structure.SessionConfig;
+import Structure.SessionLog;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -35,16 +44,107 @@ public class userApplication {
          * IMPORTANT NOTE!!  for the GPS module a 4 second delay is used at some points if the timeout parameter is
          * less that 5 the connection will time out.
          */
-        Connection connection = new Connection(args[0], args[1], args[2], args[3], args[4], args[5], 80000, 10000);
+        SessionConfig config = SessionConfig.fromArgs(args, 80000, 10000);
+        Connection connection = new Connection(config);
+
+        // To test without the Ithaki server replace the connection above with a connection to the local simulator
+        //Simulator.IthakiSimulator simulator = new Simulator.IthakiSimulator(0,
+        //        Simulator.LinkImpairment.parse(new String[]{"latency=40", "ber=0.0005"}));
+        //simulator.start();
+        //Connection connection = new Connection(
+        //        () -> new Structure.SocketTransport("localhost", simulator.getPort()), config);
+
+        // To record every byte of the session for a ReplayTransport replace the connection above with (close the
+        // capture at the end)
+        //Structure.TransportCapture capture;
+        //try {
+        //    capture = new Structure.TransportCapture(
+        //            Structure.TransportCapture.createFileName(Constants.CAPTURE_DIR.getStr()));
+        //} catch (IOException e) {
+        //    System.out.println("Failed to create capture with exception: " + e.toString());
+        //    return;
+        //}
+        //Connection connection = new Connection(
+        //        () -> new Structure.CapturingTransport(new Structure.ModemTransport(), capture), config);
+
+        // If the first connection failed try again with the backoff of the reconnect policy before giving up
+        if (!connection.isConnected() && connection.recover() != ReconnectPolicy.Status.RECOVERED) {
+            System.out.println("Connection failed. Terminating...");
+            return;
+        }
+
+        // All the files are written by a separate thread so that the receiving is never delayed by the disk
+        OutputSink files = new FileOutputSink(OutputSink.FsyncPolicy.ON_FINISH);
+
+        // Uncomment to save the text files compressed (.txt.gz). The compression also runs in the writer thread
+        //files = Structure.CompressingOutputSink.gzip(files, java.util.zip.Deflater.DEFAULT_COMPRESSION);
+
+        AsyncOutputSink outputSink = new AsyncOutputSink(files);
+        connection.setOutputSink(outputSink);
+
+        // Every event of the session is also appended to a binary log
+        try {
+            connection.setSessionLog(new SessionLog(SessionLog.createFileName(Constants.SESSION_LOG_DIR.getStr())));
+        } catch (IOException e) {
+            System.out.println("Failed to create session log with exception: " + e.toString());
+        }
+
+        // Uncomment to choose the speed of every module by probing the candidate speeds instead of the fixed speeds
+        // below. The speeds also adapt while the modules run and every decision is printed.
+        //Structure.SpeedController speedController = new Structure.SpeedController(connection);
+        //connection.setSpeedController(speedController);
+        //
+        //EchoPackets probeEcho = new EchoPackets(connection, 0);
+        //probeEcho.setRunLimit(Structure.RunLimit.packets(20));
+        //speedController.probe(Structure.SpeedController.ECHO, probeEcho::getPackets);
+        //speedController.probe(Structure.SpeedController.IMAGE, new ImagePackets(connection, false)::getPackets);
+
+        // Uncomment to query and change the link parameters in place with AT commands instead of reconnecting
+        //Structure.ATChannel atChannel = new Structure.ATChannel(connection);
+        //System.out.println("Modem: " + atChannel.info() + " speed: " + atChannel.querySpeed());
+        //atChannel.setSpeed(80000);
+
+        // Uncomment to keep a second session open in the background so that a timed out connection is replaced at
+        // once. The server must accept two sessions with the same codes.
+        //connection.setHotStandby(true);
 
 
         // Comment or uncomment one or more of the following sections to run the tests you like!!
 
+        // ===================================   Concurrent sessions   ===================================
+        // Uncomment to run the echo, image and GPS modules at the same time, each over its own session, instead of the
+        // sections below. The server must accept many sessions with the same codes.
+        //SessionRunner runner = new SessionRunner();
+        //runner.setOutputSink(outputSink);
+        //runner.addSession("echo", config.withSpeed(3800), c -> new EchoPackets(c, 5000).getPackets());
+        //runner.addSession("echo errors", config.withSpeed(3800), c -> new EchoErrors(c, 5000).getPackets());
+        //runner.addSession("image", config, c -> new ImagePackets(c, false).getPackets());
+        //runner.addSession("corrupted image", config, c -> new ImagePackets(c, true).getPackets());
+        //runner.addSession("gps", config, c -> new GPSPackets(c, "R=1000199").getPackets());
+        //runner.run();
+        //System.out.println(runner.getReport());
+
+        // ===================================   Jobs on virtual threads   ===================================
+        // Uncomment to run many sessions as jobs on virtual threads. The group cancels all the jobs if one fails or
+        // after 10 minutes. The name of every job is added to the names of its files.
+        //try (JobRunner jobs = new JobRunner(config);
+        //     JobRunner.Group group = jobs.group("echo", java.time.Duration.ofMinutes(10))) {
+        //    java.util.List<java.util.concurrent.CompletableFuture<JobResult<EchoPackets>>> results =
+        //            new ArrayList<>();
+        //    for (int i = 0; i < 100; i++)
+        //        results.add(group.fork("echo " + i, JobRunner.echoRun(Structure.RunLimit.packets(100))));
+        //    group.join();
+        //    results.stream().filter(r -> !r.isCompletedExceptionally()).forEach(r -> System.out.println(r.join()));
+        //}
+
         // ===================================   Echo packets   ===================================
         EchoPackets echoPackets = new EchoPackets(connection, 5000);
         connection.setModemSpeed(3800);
 
-        // Get 5 minutes of echo packets
+        // Uncomment to request 2 packets per second (open loop) instead of one after the other
+        //echoPackets.setOpen_loop_rate(2);
+
+        // Get 5 minutes (at most 5000 packets) of echo packets
         echoPackets.getPackets();
 
 
@@ -53,11 +153,33 @@ public class userApplication {
         EchoErrors echoErrors = new EchoErrors(connection, 5000);
         connection.setModemSpeed(3800);
 
-        // Get 5 minutes of echo packets with errors
+        // Get 5 minutes (at most 5000 packets) of echo packets with errors
         echoErrors.getPackets();
 
 
 
+        // ===================================   Echo soak run   ===================================
+        // The packets are streamed to 10 MB or 1 hour segments. The last 48 segments are kept compressed.
+        //AsyncOutputSink soakSink = new AsyncOutputSink(new Structure.RollingOutputSink(new FileOutputSink(),
+        //        10L * 1024 * 1024, 3600000, 48, true));
+        //connection.setOutputSink(soakSink);
+        //
+        //EchoPackets soakPackets = new EchoPackets(connection, 5000);
+        //connection.setModemSpeed(3800);
+        //
+        //// Get 24 hours of echo packets
+        //soakPackets.setSoakMode(24 * 3600000L, 0);
+        //soakPackets.getPackets();
+        //
+        //try {
+        //    soakSink.close();
+        //} catch (IOException e) {
+        //    System.out.println("Failed to close output with exception: " + e.toString());
+        //}
+        //connection.setOutputSink(outputSink);
+
+
+
         // ===================================   Image   ===================================
         ImagePackets clear_image = new ImagePackets(connection, false);
         connection.setModemSpeed(80000);
@@ -70,6 +192,8 @@ public class userApplication {
         for (int i = 0; i < 10; i++)
             clear_image.getPackets();
 
+        clear_image.saveRequestPhases();
+
 
 
         // ===================================   Corrupted image   ===================================
@@ -78,11 +202,17 @@ public class userApplication {
 
         // Get a corrupted image
         corrupted_image.getPackets();
+        corrupted_image.saveRequestPhases();
 
 
 
         // ===================================   GPS data   ===================================
+        // Map images of points that were already requested are taken from the cache
+        MapImageCache mapImageCache = new MapImageCache(Constants.GPS_IMAGE_CACHE_DIR.getStr(),
+                MapImageCache.DEFAULT_MAX_BYTES);
+
         GPSPackets gpsData = new GPSPackets(connection, "R=1000199");
+        gpsData.setMapImageCache(mapImageCache);
         connection.setModemSpeed(80000);
 
         // Get the gps data and the gps image
@@ -94,18 +224,56 @@ public class userApplication {
         ArrayList<String> codes = new ArrayList<>(Arrays.asList("R=1000199", "R=1010099", "R=1020099", "R=1030099",
                 "R=1040099", "R=1050099", "R=1060099", "R=1070099", "R=1080099", "R=1090099", "R=1100099"));
 
+        // The routes overlap so they are merged into one continuous track
+        RouteStitcher stitcher = new RouteStitcher(1);
+        GPSPackets gpsRoute = null;
+
         for (String code: codes) {
             // GPS packets
-            GPSPackets gpsRoute = new GPSPackets(connection, code);
+            gpsRoute = new GPSPackets(connection, code);
+            gpsRoute.setMapImageCache(mapImageCache);
             gpsRoute.getPackets();
+
+            stitcher.addRoute(code, gpsRoute.getRoutePoints());
+        }
+
+        stitcher.stitch();
+        System.out.println(stitcher.getStatistics());
+        stitcher.saveToFile(connection.getOutputSink(),
+                gpsRoute.createFileName(Constants.GPS_STITCHED_DIR.getStr(), ".txt"));
+
+        System.out.println("Map image cache " + mapImageCache.getStatistics());
+        System.out.println("Traffic " + connection.getTrafficMeter().getStatistics());
+        System.out.println("Speed control " + connection.getSpeedController().getReport());
+
+        System.out.println("Reconnections " + connection.getReconnectPolicy().getStatistics());
+
+        if (connection.getHotStandby() != null) {
+            System.out.println("Hot standby " + connection.getHotStandby().getStatistics());
+            connection.setHotStandby(false);
         }
 
 
 
 
-        // Finally close the connection with the server
+        // Write all the remaining data to the files
+        try {
+            outputSink.close();
+            System.out.println("Output " + outputSink.getStatistics());
+        } catch (IOException e) {
+            System.out.println("Failed to write output files with exception: " + e.toString());
+        }
+
+        try {
+            connection.getSessionLog().close();
+        } catch (IOException e) {
+            System.out.println("Failed to write session log with exception: " + e.toString());
+        }
+
+        // Finally close the connection with the server. To hang up the line cleanly replace the close below with
+        //new Structure.ATChannel(connection).hangUp();
         try {
-            connection.getModem().close();
+            connection.getTransport().close();
         }
         catch (Exception e){
             System.out.println("Exception caught while trying to close the modem connection");